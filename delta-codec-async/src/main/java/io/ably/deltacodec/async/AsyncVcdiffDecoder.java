@@ -0,0 +1,189 @@
+package io.ably.deltacodec.async;
+
+import io.ably.deltacodec.CheckedVcdiffDecoder;
+import io.ably.deltacodec.DeltaApplicationResult;
+import io.ably.deltacodec.SequenceContinuityException;
+import io.ably.deltacodec.VcdiffDecoder;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Decodes the deltas of one stream, e.g. one channel, on an executor instead of the calling thread, so that network
+ * callbacks are not held up by decoding.
+ *
+ * <p>
+ * Deltas and bases are applied one at a time, in the order the methods are called, whatever the executor. Each
+ * method returns a future completed with the result, or exceptionally with the exception the synchronous
+ * {@link CheckedVcdiffDecoder} method would have thrown. A failed delta leaves the base unchanged, so the calls
+ * made after it still run. Results are copies owned by the caller.
+ */
+public class AsyncVcdiffDecoder {
+    private final CheckedVcdiffDecoder decoder;
+    private final SerialExecutor executor;
+
+    /**
+     * Creates a decoder running on {@link AsyncVcdiffDecoder#defaultExecutor()}
+     */
+    public AsyncVcdiffDecoder() {
+        this(defaultExecutor());
+    }
+
+    /**
+     * @param executor The executor deltas are decoded on, which may be shared by many decoders
+     * @throws IllegalArgumentException The provided {@code executor} parameter is null
+     */
+    public AsyncVcdiffDecoder(Executor executor) throws IllegalArgumentException {
+        this(new CheckedVcdiffDecoder(), executor);
+    }
+
+    /**
+     * @param decoder The decoder applying the deltas, e.g. configured with a buffer pool. It must not be used
+     *                directly afterwards.
+     * @param executor The executor deltas are decoded on, which may be shared by many decoders
+     * @throws IllegalArgumentException The provided {@code decoder} or {@code executor} parameter is null
+     */
+    public AsyncVcdiffDecoder(CheckedVcdiffDecoder decoder, Executor executor) throws IllegalArgumentException {
+        if (decoder == null) {
+            throw new IllegalArgumentException("decoder cannot be null");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null");
+        }
+        this.decoder = decoder;
+        this.executor = new SerialExecutor(executor);
+    }
+
+    /**
+     * Returns an executor starting a virtual thread per task when running on Java 21 or later, and the common
+     * {@link ForkJoinPool} otherwise
+     * @return The executor
+     */
+    public static Executor defaultExecutor() {
+        try {
+            // Looked up reflectively, as the module is compiled for Java 11
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor)factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return ForkJoinPool.commonPool();
+        }
+    }
+
+    /**
+     * Applies the {@code delta} to the result of the previous delta or to the base
+     * @param delta The delta to be applied
+     * @return A future completed with the {@link DeltaApplicationResult}
+     */
+    public CompletableFuture<DeltaApplicationResult> applyDeltaAsync(byte[] delta) {
+        return this.applyDeltaAsync(delta, null, null);
+    }
+
+    /**
+     * Applies the {@code delta} to the result of the previous delta or to the base, checking the sequence
+     * continuity like {@link CheckedVcdiffDecoder#applyDelta(byte[], String, String)}
+     * @param delta The delta to be applied
+     * @param deltaId (Optional) Sequence ID of the current delta application result
+     * @param baseId (Optional) Sequence ID of the expected previous delta application result
+     * @return A future completed with the {@link DeltaApplicationResult}, or exceptionally with
+     * {@link SequenceContinuityException} when {@code baseId} does not match
+     */
+    public CompletableFuture<DeltaApplicationResult> applyDeltaAsync(byte[] delta, String deltaId, String baseId) {
+        return this.submit(() -> this.decoder.applyDelta(delta, deltaId, baseId));
+    }
+
+    /**
+     * Applies the base64 encoded {@code delta} to the result of the previous delta or to the base
+     * @param delta The delta to be applied as base64 string
+     * @return A future completed with the {@link DeltaApplicationResult}
+     */
+    public CompletableFuture<DeltaApplicationResult> applyBase64DeltaAsync(String delta) {
+        return this.applyBase64DeltaAsync(delta, null, null);
+    }
+
+    /**
+     * Applies the base64 encoded {@code delta} to the result of the previous delta or to the base, checking the
+     * sequence continuity like {@link CheckedVcdiffDecoder#applyBase64Delta(String, String, String)}
+     * @param delta The delta to be applied as base64 string
+     * @param deltaId (Optional) Sequence ID of the current delta application result
+     * @param baseId (Optional) Sequence ID of the expected previous delta application result
+     * @return A future completed with the {@link DeltaApplicationResult}
+     */
+    public CompletableFuture<DeltaApplicationResult> applyBase64DeltaAsync(String delta, String deltaId, String baseId) {
+        return this.submit(() -> this.decoder.applyBase64Delta(delta, deltaId, baseId));
+    }
+
+    /**
+     * Sets the base used for the deltas applied after this call
+     * @param newBase The byte[] to be set as new base. The array is retained, so it must not be modified afterwards.
+     * @param newBaseId (Optional) The {@code newBase}'s sequence ID, to be used for sequence continuity checking
+     * @return A future completed once the base is set
+     */
+    public CompletableFuture<Void> setBaseAsync(byte[] newBase, String newBaseId) {
+        return this.submit(() -> {
+            this.decoder.setBase(newBase, newBaseId);
+            return null;
+        });
+    }
+
+    /**
+     * Sets the base used for the deltas applied after this call
+     * @param newBase The base64 encoded string to be set as new base
+     * @param newBaseId (Optional) The {@code newBase}'s sequence ID, to be used for sequence continuity checking
+     * @return A future completed once the base is set
+     */
+    public CompletableFuture<Void> setBase64BaseAsync(String newBase, String newBaseId) {
+        return this.submit(() -> {
+            this.decoder.setBase64Base(newBase, newBaseId);
+            return null;
+        });
+    }
+
+    /**
+     * Applies the {@code payload} if it is a delta, and otherwise sets it as the base, as a subscriber receiving
+     * both full payloads and deltas on the same stream does
+     * @param payload The payload received
+     * @return A future completed with the decoded payload, or with a copy of the payload when it is a base
+     */
+    public CompletableFuture<byte[]> decodeAsync(byte[] payload) {
+        return this.submit(() -> decode(this.decoder, payload));
+    }
+
+    /**
+     * @return The number of calls whose future has not been completed yet. Callers can stop reading from the
+     * network while it is too high.
+     */
+    public int getPendingCount() {
+        return this.executor.getPendingCount();
+    }
+
+    static byte[] decode(CheckedVcdiffDecoder decoder, byte[] payload) throws SequenceContinuityException, IOException {
+        if (VcdiffDecoder.isDelta(payload)) {
+            return decoder.applyDelta(payload, null, null).asByteArray();
+        }
+        if (payload == null) {
+            throw new IllegalArgumentException("payload cannot be null");
+        }
+        decoder.setBase(payload, null);
+        return payload.clone();
+    }
+
+    /**
+     * @param task The call to the decoder, which may throw any of the exceptions of the synchronous methods
+     */
+    private <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        this.executor.execute(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }, future::completeExceptionally);
+        return future;
+    }
+}
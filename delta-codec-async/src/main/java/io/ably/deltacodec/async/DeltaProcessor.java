@@ -0,0 +1,226 @@
+package io.ably.deltacodec.async;
+
+import io.ably.deltacodec.CheckedVcdiffDecoder;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * {@link Flow.Processor} decoding a stream of raw payloads, each either a delta or a full base as with
+ * {@link AsyncVcdiffDecoder#decodeAsync(byte[])}, into a stream of decoded payloads.
+ *
+ * <p>
+ * Payloads are decoded one at a time on the executor and the results are published in the order the payloads were
+ * received. Every payload produces one result, so the processor requests from upstream exactly what its subscriber
+ * requests: payloads are only received once the subscriber is ready for their results, and a slow subscriber slows
+ * down the upstream publisher instead of letting results pile up.
+ *
+ * <p>
+ * A payload failing to decode is published to the subscriber with {@link Flow.Subscriber#onError(Throwable)} and
+ * cancels the upstream subscription, as the following deltas cannot be applied anymore. The processor supports a
+ * single subscriber.
+ */
+public class DeltaProcessor implements Flow.Processor<byte[], byte[]> {
+    private final CheckedVcdiffDecoder decoder;
+    private final SerialExecutor executor;
+    private Flow.Subscription upstream;
+    private Flow.Subscriber<? super byte[]> downstream;
+    /* Requested by the subscriber before the upstream subscription was received */
+    private long pendingDemand;
+    /* Terminal signal received from upstream before the subscriber subscribed; a null error meaning completion */
+    private boolean upstreamTerminated;
+    private Throwable upstreamError;
+    /* Set once no more signal is published, only accessed from the executor */
+    private boolean done;
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a processor running on {@link AsyncVcdiffDecoder#defaultExecutor()}
+     */
+    public DeltaProcessor() {
+        this(new CheckedVcdiffDecoder(), AsyncVcdiffDecoder.defaultExecutor());
+    }
+
+    /**
+     * @param decoder The decoder applying the deltas. It must not be used directly afterwards.
+     * @param executor The executor payloads are decoded on, which may be shared by many processors
+     * @throws IllegalArgumentException The provided {@code decoder} or {@code executor} parameter is null
+     */
+    public DeltaProcessor(CheckedVcdiffDecoder decoder, Executor executor) throws IllegalArgumentException {
+        if (decoder == null) {
+            throw new IllegalArgumentException("decoder cannot be null");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null");
+        }
+        this.decoder = decoder;
+        this.executor = new SerialExecutor(executor);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super byte[]> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber cannot be null");
+        }
+        boolean accepted;
+        boolean terminated;
+        synchronized (this) {
+            accepted = this.downstream == null;
+            if (accepted) {
+                this.downstream = subscriber;
+            }
+            terminated = this.upstreamTerminated;
+        }
+        if (!accepted) {
+            rejectSubscriber(subscriber);
+            return;
+        }
+        this.executor.execute(() -> this.downstream.onSubscribe(new Subscription()));
+        if (terminated) {
+            this.publishTermination(this.upstreamError);
+        }
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        long demand;
+        synchronized (this) {
+            if (this.upstream != null || this.cancelled) {
+                subscription.cancel();
+                return;
+            }
+            this.upstream = subscription;
+            demand = this.pendingDemand;
+            this.pendingDemand = 0;
+        }
+        if (demand > 0) {
+            subscription.request(demand);
+        }
+    }
+
+    @Override
+    public void onNext(byte[] payload) {
+        this.executor.execute(() -> {
+            if (this.done || this.cancelled) {
+                return;
+            }
+            byte[] result;
+            try {
+                result = AsyncVcdiffDecoder.decode(this.decoder, payload);
+            } catch (Exception e) {
+                this.cancelUpstream();
+                this.publishError(e);
+                return;
+            }
+            this.downstream.onNext(result);
+        });
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        this.terminate(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        this.terminate(null);
+    }
+
+    private void terminate(Throwable error) {
+        synchronized (this) {
+            if (this.downstream == null) {
+                // Published once the subscriber subscribes
+                this.upstreamTerminated = true;
+                this.upstreamError = error;
+                return;
+            }
+        }
+        this.publishTermination(error);
+    }
+
+    /**
+     * Publishes the completion, or the error if any, after the results of the payloads already received
+     */
+    private void publishTermination(Throwable error) {
+        this.executor.execute(() -> {
+            if (this.done || this.cancelled) {
+                return;
+            }
+            this.done = true;
+            if (error == null) {
+                this.downstream.onComplete();
+            } else {
+                this.downstream.onError(error);
+            }
+        });
+    }
+
+    /**
+     * Publishes an error from the executor
+     */
+    private void publishError(Throwable error) {
+        if (this.done) {
+            return;
+        }
+        this.done = true;
+        this.downstream.onError(error);
+    }
+
+    private void request(long n) {
+        if (n <= 0) {
+            this.cancelUpstream();
+            this.executor.execute(() -> this.publishError(new IllegalArgumentException("Requests must be positive, got " + n)));
+            return;
+        }
+        Flow.Subscription subscription;
+        synchronized (this) {
+            subscription = this.upstream;
+            if (subscription == null) {
+                this.pendingDemand = addCapped(this.pendingDemand, n);
+                return;
+            }
+        }
+        subscription.request(n);
+    }
+
+    private void cancelUpstream() {
+        Flow.Subscription subscription;
+        synchronized (this) {
+            this.cancelled = true;
+            subscription = this.upstream;
+        }
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    private static long addCapped(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    private static void rejectSubscriber(Flow.Subscriber<?> subscriber) {
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onError(new IllegalStateException("DeltaProcessor supports a single subscriber"));
+    }
+
+    private final class Subscription implements Flow.Subscription {
+        @Override
+        public void request(long n) {
+            DeltaProcessor.this.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            DeltaProcessor.this.cancelUpstream();
+        }
+    }
+}
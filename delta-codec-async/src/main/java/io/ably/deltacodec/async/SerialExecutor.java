@@ -0,0 +1,110 @@
+package io.ably.deltacodec.async;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Runs tasks one at a time, in submission order, on an underlying executor which may run tasks concurrently.
+ * Each task happens-before the next one, so state confined to the tasks needs no further synchronization.
+ */
+final class SerialExecutor implements Executor {
+    private final Executor executor;
+    private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+    private boolean running;
+
+    SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @throws RuntimeException The underlying executor rejected the task when it was submitted
+     */
+    @Override
+    public void execute(Runnable task) {
+        this.execute(task, null);
+    }
+
+    /**
+     * Runs the task after the tasks submitted before it
+     * @param rejected Called instead of running the task when the underlying executor rejects it, which may happen
+     *                 on a later task's thread once the tasks queued before it have run. If null, a rejection on
+     *                 submission is thrown to the caller and a later one drops the task.
+     */
+    void execute(Runnable task, Consumer<RuntimeException> rejected) {
+        synchronized (this) {
+            this.tasks.addLast(new Task(task, rejected));
+            if (this.running) {
+                return;
+            }
+            this.running = true;
+        }
+        RuntimeException e = this.schedule();
+        if (e != null && rejected == null) {
+            throw e;
+        }
+    }
+
+    /**
+     * @return The number of tasks submitted and not yet completed
+     */
+    synchronized int getPendingCount() {
+        return this.tasks.size();
+    }
+
+    /**
+     * @return The exception the underlying executor rejected the next task with, or null if it was accepted
+     */
+    private RuntimeException schedule() {
+        try {
+            this.executor.execute(this::runNext);
+            return null;
+        } catch (RuntimeException e) {
+            // The queued tasks will never run, so each of them is told about the rejection
+            List<Task> dropped;
+            synchronized (this) {
+                dropped = new ArrayList<>(this.tasks);
+                this.tasks.clear();
+                this.running = false;
+            }
+            for (Task task : dropped) {
+                if (task.rejected != null) {
+                    task.rejected.accept(e);
+                }
+            }
+            return e;
+        }
+    }
+
+    private void runNext() {
+        Task task;
+        synchronized (this) {
+            task = this.tasks.peekFirst();
+        }
+        try {
+            task.runnable.run();
+        } finally {
+            boolean more;
+            synchronized (this) {
+                this.tasks.pollFirst();
+                more = !this.tasks.isEmpty();
+                this.running = more;
+            }
+            if (more) {
+                this.schedule();
+            }
+        }
+    }
+
+    private static final class Task {
+        final Runnable runnable;
+        final Consumer<RuntimeException> rejected;
+
+        Task(Runnable runnable, Consumer<RuntimeException> rejected) {
+            this.runnable = runnable;
+            this.rejected = rejected;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package io.ably.deltacodec.async;
+
+import io.ably.deltacodec.DeltaApplicationResult;
+import io.ably.deltacodec.SequenceContinuityException;
+import io.ably.deltacodec.VcdiffEncoder;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncVcdiffDecoderTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    @Test
+    public void deltasAreAppliedInOrder() throws Exception {
+        List<byte[]> documents = documents(50);
+        List<byte[]> deltas = deltas(documents);
+        AsyncVcdiffDecoder decoder = new AsyncVcdiffDecoder(this.executor);
+        decoder.setBaseAsync(documents.get(0), "0");
+        List<CompletableFuture<DeltaApplicationResult>> results = new ArrayList<>();
+        for (int i = 1; i < documents.size(); i++) {
+            results.add(decoder.applyDeltaAsync(deltas.get(i - 1), String.valueOf(i), String.valueOf(i - 1)));
+        }
+        for (int i = 1; i < documents.size(); i++) {
+            assertArrayEquals(documents.get(i), results.get(i - 1).get().asByteArray());
+        }
+        assertEquals(0, decoder.getPendingCount());
+    }
+
+    @Test
+    public void failedDeltasDoNotStopTheFollowingOnes() throws Exception {
+        List<byte[]> documents = documents(2);
+        AsyncVcdiffDecoder decoder = new AsyncVcdiffDecoder(this.executor);
+        decoder.setBaseAsync(documents.get(0), "0");
+        CompletableFuture<DeltaApplicationResult> invalid = decoder.applyDeltaAsync(documents.get(1), "1", "0");
+        CompletableFuture<DeltaApplicationResult> discontinuous = decoder.applyDeltaAsync(deltas(documents).get(0), "1", "5");
+        CompletableFuture<DeltaApplicationResult> valid = decoder.applyDeltaAsync(deltas(documents).get(0), "1", "0");
+
+        assertEquals(IllegalArgumentException.class, cause(invalid).getClass());
+        assertEquals(SequenceContinuityException.class, cause(discontinuous).getClass());
+        assertArrayEquals(documents.get(1), valid.get().asByteArray());
+    }
+
+    @Test
+    public void decodeAsyncSetsBasesAndAppliesDeltas() throws Exception {
+        List<byte[]> documents = documents(3);
+        List<byte[]> deltas = deltas(documents);
+        AsyncVcdiffDecoder decoder = new AsyncVcdiffDecoder(this.executor);
+        CompletableFuture<byte[]> base = decoder.decodeAsync(documents.get(0));
+        CompletableFuture<byte[]> first = decoder.decodeAsync(deltas.get(0));
+        CompletableFuture<byte[]> second = decoder.decodeAsync(deltas.get(1));
+        assertArrayEquals(documents.get(0), base.get());
+        assertArrayEquals(documents.get(1), first.get());
+        assertArrayEquals(documents.get(2), second.get());
+    }
+
+    @Test
+    public void base64DeltasAreApplied() throws Exception {
+        List<byte[]> documents = documents(2);
+        AsyncVcdiffDecoder decoder = new AsyncVcdiffDecoder(this.executor);
+        decoder.setBase64BaseAsync(Base64.getEncoder().encodeToString(documents.get(0)), "0");
+        String delta = Base64.getEncoder().encodeToString(deltas(documents).get(0));
+        assertArrayEquals(documents.get(1), decoder.applyBase64DeltaAsync(delta, "1", "0").get().asByteArray());
+    }
+
+    @Test
+    public void rejectedTasksCompleteTheFutureExceptionally() throws Exception {
+        ExecutorService stopped = Executors.newSingleThreadExecutor();
+        stopped.shutdown();
+        AsyncVcdiffDecoder decoder = new AsyncVcdiffDecoder(stopped);
+        assertTrue(cause(decoder.setBaseAsync(new byte[1], null)) instanceof RejectedExecutionException);
+    }
+
+    @Test
+    public void tasksQueuedWhenTheExecutorStopsCompleteTheFutureExceptionally() throws Exception {
+        ExecutorService stopping = Executors.newSingleThreadExecutor();
+        CountDownLatch blocked = new CountDownLatch(1);
+        stopping.execute(() -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        AsyncVcdiffDecoder decoder = new AsyncVcdiffDecoder(stopping);
+        // The first task is accepted by the executor, the second one waits behind it and is rejected once it has run
+        CompletableFuture<Void> accepted = decoder.setBaseAsync(new byte[1], null);
+        CompletableFuture<byte[]> queued = decoder.decodeAsync(new byte[1]);
+        stopping.shutdown();
+        blocked.countDown();
+        accepted.get(10, TimeUnit.SECONDS);
+        assertTrue(cause(queued) instanceof RejectedExecutionException);
+        assertEquals(0, decoder.getPendingCount());
+    }
+
+    @Test
+    public void defaultExecutorRunsTasks() throws Exception {
+        AsyncVcdiffDecoder decoder = new AsyncVcdiffDecoder();
+        byte[] base = "{}".getBytes(StandardCharsets.UTF_8);
+        assertNotNull(AsyncVcdiffDecoder.defaultExecutor());
+        assertArrayEquals(base, decoder.decodeAsync(base).get());
+    }
+
+    static List<byte[]> documents(int count) {
+        List<byte[]> documents = new ArrayList<>();
+        StringBuilder document = new StringBuilder("{\"items\":[");
+        for (int i = 0; i < count; i++) {
+            document.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"name\":\"item-").append(i).append("\"}");
+            documents.add((document + "]}").getBytes(StandardCharsets.UTF_8));
+        }
+        return documents;
+    }
+
+    static List<byte[]> deltas(List<byte[]> documents) throws Exception {
+        VcdiffEncoder encoder = new VcdiffEncoder();
+        encoder.setBase(documents.get(0));
+        List<byte[]> deltas = new ArrayList<>();
+        for (int i = 1; i < documents.size(); i++) {
+            deltas.add(encoder.encodeNext(documents.get(i)));
+        }
+        return deltas;
+    }
+
+    private static Throwable cause(CompletableFuture<?> future) throws InterruptedException, TimeoutException {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        fail("The future completed normally");
+        return null;
+    }
+}
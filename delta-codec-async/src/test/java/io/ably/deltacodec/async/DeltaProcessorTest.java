@@ -0,0 +1,190 @@
+package io.ably.deltacodec.async;
+
+import io.ably.deltacodec.CheckedVcdiffDecoder;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeltaProcessorTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    @Test
+    public void payloadsAreDecodedInOrder() throws Exception {
+        List<byte[]> documents = AsyncVcdiffDecoderTest.documents(100);
+        List<byte[]> deltas = AsyncVcdiffDecoderTest.deltas(documents);
+        DeltaProcessor processor = new DeltaProcessor(new CheckedVcdiffDecoder(), this.executor);
+        Collector collector = new Collector(1);
+        processor.subscribe(collector);
+        try (SubmissionPublisher<byte[]> publisher = new SubmissionPublisher<>(this.executor, 4)) {
+            publisher.subscribe(processor);
+            publisher.submit(documents.get(0));
+            for (byte[] delta : deltas) {
+                publisher.submit(delta);
+            }
+        }
+        assertTrue(collector.terminated.await(10, TimeUnit.SECONDS));
+        assertNull(collector.error);
+        assertEquals(documents.size(), collector.results.size());
+        for (int i = 0; i < documents.size(); i++) {
+            assertArrayEquals(documents.get(i), collector.results.get(i));
+        }
+    }
+
+    @Test
+    public void upstreamOnlyReceivesTheSubscriberDemand() throws Exception {
+        List<byte[]> documents = AsyncVcdiffDecoderTest.documents(10);
+        DeltaProcessor processor = new DeltaProcessor(new CheckedVcdiffDecoder(), this.executor);
+        Collector collector = new Collector(0);
+        processor.subscribe(collector);
+        Upstream upstream = new Upstream();
+        processor.onSubscribe(upstream);
+        collector.awaitSubscription().request(3);
+        assertEquals(3, upstream.requested);
+
+        processor.onNext(documents.get(0));
+        processor.onNext(documents.get(1));
+        processor.onNext(documents.get(2));
+        processor.onComplete();
+        assertTrue(collector.terminated.await(10, TimeUnit.SECONDS));
+        assertEquals(3, collector.results.size());
+    }
+
+    @Test
+    public void demandRequestedBeforeUpstreamSubscribesIsForwarded() throws Exception {
+        DeltaProcessor processor = new DeltaProcessor(new CheckedVcdiffDecoder(), this.executor);
+        Collector collector = new Collector(0);
+        processor.subscribe(collector);
+        collector.awaitSubscription().request(5);
+        Upstream upstream = new Upstream();
+        processor.onSubscribe(upstream);
+        assertEquals(5, upstream.requested);
+    }
+
+    @Test
+    public void decodingFailureIsPublishedAndCancelsUpstream() throws Exception {
+        List<byte[]> documents = AsyncVcdiffDecoderTest.documents(2);
+        DeltaProcessor processor = new DeltaProcessor(new CheckedVcdiffDecoder(), this.executor);
+        Collector collector = new Collector(Long.MAX_VALUE);
+        processor.subscribe(collector);
+        Upstream upstream = new Upstream();
+        processor.onSubscribe(upstream);
+        // A delta before any base
+        processor.onNext(AsyncVcdiffDecoderTest.deltas(documents).get(0));
+        processor.onNext(documents.get(0));
+        assertTrue(collector.terminated.await(10, TimeUnit.SECONDS));
+        assertEquals(IllegalStateException.class, collector.error.getClass());
+        assertTrue(upstream.cancelled);
+        assertTrue(collector.results.isEmpty());
+    }
+
+    @Test
+    public void completionBeforeSubscriptionIsPublished() throws Exception {
+        DeltaProcessor processor = new DeltaProcessor(new CheckedVcdiffDecoder(), this.executor);
+        processor.onSubscribe(new Upstream());
+        processor.onComplete();
+        Collector collector = new Collector(1);
+        processor.subscribe(collector);
+        assertTrue(collector.terminated.await(10, TimeUnit.SECONDS));
+        assertNull(collector.error);
+    }
+
+    @Test
+    public void secondSubscriberIsRejected() throws Exception {
+        DeltaProcessor processor = new DeltaProcessor(new CheckedVcdiffDecoder(), this.executor);
+        processor.subscribe(new Collector(1));
+        Collector second = new Collector(1);
+        processor.subscribe(second);
+        assertTrue(second.terminated.await(10, TimeUnit.SECONDS));
+        assertEquals(IllegalStateException.class, second.error.getClass());
+    }
+
+    /**
+     * Requests {@code batch} results at a time, whenever the previous batch has been received
+     */
+    private static final class Collector implements Flow.Subscriber<byte[]> {
+        private final long batch;
+        private final CountDownLatch subscribed = new CountDownLatch(1);
+        final CountDownLatch terminated = new CountDownLatch(1);
+        final List<byte[]> results = new ArrayList<>();
+        volatile Throwable error;
+        private volatile Flow.Subscription subscription;
+        private long outstanding;
+
+        Collector(long batch) {
+            this.batch = batch;
+        }
+
+        Flow.Subscription awaitSubscription() throws InterruptedException {
+            assertTrue(this.subscribed.await(10, TimeUnit.SECONDS));
+            return this.subscription;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            this.subscribed.countDown();
+            this.requestBatch();
+        }
+
+        @Override
+        public void onNext(byte[] item) {
+            synchronized (this.results) {
+                this.results.add(item);
+            }
+            if (--this.outstanding == 0) {
+                this.requestBatch();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.error = throwable;
+            this.terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            this.terminated.countDown();
+        }
+
+        private void requestBatch() {
+            if (this.batch > 0) {
+                this.outstanding = this.batch;
+                this.subscription.request(this.batch);
+            }
+        }
+    }
+
+    private static final class Upstream implements Flow.Subscription {
+        volatile long requested;
+        volatile boolean cancelled;
+
+        @Override
+        public synchronized void request(long n) {
+            this.requested += n;
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package io.ably.deltacodec.jmh;
+
+import io.ably.deltacodec.Base64Coder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes and decodes payloads with {@link Base64Coder}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Base64Benchmark {
+    @Param({ "100", "10240", "1048576", "10485760" })
+    public int size;
+
+    private byte[] data;
+    private String encoded;
+    private char[] encodedChars;
+    private byte[] decoded;
+
+    @Setup
+    public void setUp() {
+        this.data = Payload.json(new Random(1), this.size);
+        this.encoded = Base64Coder.encodeToString(this.data);
+        this.encodedChars = this.encoded.toCharArray();
+        this.decoded = new byte[this.data.length];
+    }
+
+    @Benchmark
+    public char[] encode() {
+        return Base64Coder.encode(this.data);
+    }
+
+    @Benchmark
+    public byte[] decodeString() {
+        return Base64Coder.decode(this.encoded);
+    }
+
+    @Benchmark
+    public byte[] decodeChars() {
+        return Base64Coder.decode(this.encodedChars, 0, this.encodedChars.length);
+    }
+
+    @Benchmark
+    public byte[] decodeIntoArray() {
+        Base64Coder.decode(this.encoded, 0, this.encoded.length(), this.decoded, 0);
+        return this.decoded;
+    }
+}
@@ -0,0 +1,50 @@
+package io.ably.deltacodec.jmh;
+
+import io.ably.deltacodec.CheckedVcdiffDecoder;
+import io.ably.deltacodec.SequenceContinuityException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies one delta to the same base with {@link CheckedVcdiffDecoder}, checking the sequence IDs on every call
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CheckedDecoderBenchmark {
+    @Param({ "100", "10240", "1048576", "10485760" })
+    public int size;
+
+    @Param({ "APPEND", "IN_PLACE", "REWRITE" })
+    public Edit edit;
+
+    private Payload payload;
+    private CheckedVcdiffDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        this.payload = new Payload(this.size, this.edit, 1);
+        this.decoder = new CheckedVcdiffDecoder();
+    }
+
+    @Benchmark
+    public byte[] applyDelta() throws IOException, SequenceContinuityException {
+        this.decoder.setBase(this.payload.base, "1");
+        return this.decoder.applyDelta(this.payload.delta, "2", "1").asByteArray();
+    }
+
+    @Benchmark
+    public byte[] applyBase64Delta() throws IOException, SequenceContinuityException {
+        this.decoder.setBase(this.payload.base, "1");
+        return this.decoder.applyBase64Delta(this.payload.base64Delta, "2", "1").asByteArray();
+    }
+}
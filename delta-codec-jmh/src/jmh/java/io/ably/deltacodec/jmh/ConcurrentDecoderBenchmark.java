@@ -0,0 +1,73 @@
+package io.ably.deltacodec.jmh;
+
+import io.ably.deltacodec.ConcurrentVcdiffDecoder;
+import io.ably.deltacodec.DecodingEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies one delta to the same base with a {@link ConcurrentVcdiffDecoder} shared by all the benchmark threads,
+ * each thread decoding its own channel. Comparing the single threaded benchmark with the one running a thread per
+ * processor shows how the throughput scales, and a single stripe shows the cost of serializing all the channels.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ConcurrentDecoderBenchmark {
+    @Param({ "10240", "1048576" })
+    public int size;
+
+    @Param({ "APPEND", "REWRITE" })
+    public Edit edit;
+
+    @Param({ "1", "64" })
+    public int stripes;
+
+    private final AtomicInteger channels = new AtomicInteger();
+    private Payload payload;
+    private ConcurrentVcdiffDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        this.payload = new Payload(this.size, this.edit, 1);
+        this.decoder = new ConcurrentVcdiffDecoder(this.stripes, Long.MAX_VALUE, DecodingEngine.NATIVE);
+    }
+
+    @State(Scope.Thread)
+    public static class Channel {
+        String id;
+
+        @Setup
+        public void setUp(ConcurrentDecoderBenchmark benchmark) {
+            this.id = "channel-" + benchmark.channels.getAndIncrement();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[] applyDeltaOnOneThread(Channel channel) throws IOException {
+        return this.applyDelta(channel);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] applyDeltaOnAllProcessors(Channel channel) throws IOException {
+        return this.applyDelta(channel);
+    }
+
+    private byte[] applyDelta(Channel channel) throws IOException {
+        this.decoder.setBase(channel.id, this.payload.base);
+        return this.decoder.applyDelta(channel.id, this.payload.delta).asByteArray();
+    }
+}
@@ -0,0 +1,54 @@
+package io.ably.deltacodec.jmh;
+
+import io.ably.deltacodec.DecodingEngine;
+import io.ably.deltacodec.VcdiffDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies one delta to the same base with {@link VcdiffDecoder}, from bytes and from base64
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DecoderBenchmark {
+    @Param({ "100", "10240", "1048576", "10485760" })
+    public int size;
+
+    @Param({ "APPEND", "IN_PLACE", "REWRITE" })
+    public Edit edit;
+
+    @Param({ "NATIVE", "VCDIFF_JAVA" })
+    public DecodingEngine engine;
+
+    private Payload payload;
+    private VcdiffDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        this.payload = new Payload(this.size, this.edit, 1);
+        this.decoder = new VcdiffDecoder(this.engine);
+    }
+
+    @Benchmark
+    public byte[] applyDelta() throws IOException {
+        // The decoder retains the base without copying it, so resetting it costs nothing
+        this.decoder.setBase(this.payload.base);
+        return this.decoder.applyDelta(this.payload.delta).asByteArray();
+    }
+
+    @Benchmark
+    public byte[] applyBase64Delta() throws IOException {
+        this.decoder.setBase(this.payload.base);
+        return this.decoder.applyBase64Delta(this.payload.base64Delta).asByteArray();
+    }
+}
@@ -0,0 +1,19 @@
+package io.ably.deltacodec.jmh;
+
+/**
+ * How the target of a benchmarked delta differs from its base
+ */
+public enum Edit {
+    /**
+     * A tenth of the base, at least 16 bytes, is appended to it, e.g. a growing list
+     */
+    APPEND,
+    /**
+     * 16 bytes in the middle of the base are changed, e.g. a single field update
+     */
+    IN_PLACE,
+    /**
+     * The target shares nothing with the base
+     */
+    REWRITE
+}
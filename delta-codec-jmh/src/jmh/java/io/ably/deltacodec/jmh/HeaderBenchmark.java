@@ -0,0 +1,48 @@
+package io.ably.deltacodec.jmh;
+
+import io.ably.deltacodec.Base64Coder;
+import io.ably.deltacodec.VcdiffDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells deltas from full payloads with {@link VcdiffDecoder#isDelta(byte[])} and
+ * {@link VcdiffDecoder#isBase64Delta(String)}, as done for every received message
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HeaderBenchmark {
+    @Param({ "100", "1048576" })
+    public int size;
+
+    private Payload payload;
+    private String base64Base;
+
+    @Setup
+    public void setUp() {
+        this.payload = new Payload(this.size, Edit.IN_PLACE, 1);
+        this.base64Base = Base64Coder.encodeToString(this.payload.base);
+    }
+
+    @Benchmark
+    public void isDelta(Blackhole blackhole) {
+        blackhole.consume(VcdiffDecoder.isDelta(this.payload.delta));
+        blackhole.consume(VcdiffDecoder.isDelta(this.payload.base));
+    }
+
+    @Benchmark
+    public void isBase64Delta(Blackhole blackhole) {
+        blackhole.consume(VcdiffDecoder.isBase64Delta(this.payload.base64Delta));
+        blackhole.consume(VcdiffDecoder.isBase64Delta(this.base64Base));
+    }
+}
@@ -0,0 +1,79 @@
+package io.ably.deltacodec.jmh;
+
+import io.ably.deltacodec.Base64Coder;
+import io.ably.deltacodec.VcdiffEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * A base, a target derived from it by an {@link Edit} and the delta between them, in binary and base64 form
+ */
+final class Payload {
+    private static final String[] WORDS = new String[] {
+            "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit", "sed", "do",
+            "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore", "magna", "aliqua"
+    };
+
+    final byte[] base;
+    final byte[] target;
+    final byte[] delta;
+    final String base64Delta;
+
+    /**
+     * @param size The size of the base in bytes
+     * @param edit How the target differs from the base
+     * @param seed The seed of the generated text, so that every trial decodes the same delta
+     */
+    Payload(int size, Edit edit, long seed) {
+        Random random = new Random(seed);
+        this.base = json(random, size);
+        this.target = edit(random, this.base, edit);
+        VcdiffEncoder encoder = new VcdiffEncoder();
+        encoder.setBase(this.base);
+        this.delta = encoder.encode(this.target);
+        this.base64Delta = Base64Coder.encodeToString(this.delta);
+    }
+
+    /**
+     * Generates JSON-like text of exactly {@code size} bytes, made of records with a few repeating field names
+     */
+    static byte[] json(Random random, int size) {
+        StringBuilder text = new StringBuilder(size + 64);
+        text.append('[');
+        while (text.length() < size) {
+            text.append("{\"id\":").append(random.nextInt(1000000))
+                    .append(",\"name\":\"").append(WORDS[random.nextInt(WORDS.length)])
+                    .append("\",\"text\":\"");
+            int words = 1 + random.nextInt(12);
+            for (int i = 0; i < words; i++) {
+                text.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            text.append("\"},");
+        }
+        text.setLength(size);
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] edit(Random random, byte[] base, Edit edit) {
+        switch (edit) {
+            case APPEND: {
+                byte[] appended = json(random, Math.max(16, base.length / 10));
+                byte[] target = new byte[base.length + appended.length];
+                System.arraycopy(base, 0, target, 0, base.length);
+                System.arraycopy(appended, 0, target, base.length, appended.length);
+                return target;
+            }
+            case IN_PLACE: {
+                byte[] target = base.clone();
+                byte[] changed = json(random, Math.min(16, base.length));
+                System.arraycopy(changed, 0, target, (base.length - changed.length) / 2, changed.length);
+                return target;
+            }
+            case REWRITE:
+                return json(random, base.length);
+            default:
+                throw new IllegalArgumentException("Unknown edit " + edit);
+        }
+    }
+}
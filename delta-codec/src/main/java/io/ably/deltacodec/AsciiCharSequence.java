@@ -0,0 +1,101 @@
+package io.ably.deltacodec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only {@link CharSequence} view of ASCII text held in bytes, so that Base64 text can be decoded where it was
+ * received without building a {@link String} first. Bytes above 127 are exposed as the Latin-1 characters they
+ * would decode to, which are never valid Base64.
+ */
+final class AsciiCharSequence implements CharSequence {
+    /* The bytes are read from the array if there is one, otherwise from the buffer with absolute gets */
+    private final byte[] array;
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    AsciiCharSequence(byte[] array, int offset, int length) {
+        this.array = array;
+        this.buffer = null;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @param buffer The buffer, read with absolute gets so that its position is left unchanged
+     * @param offset The index of the first byte in {@code buffer}
+     * @param length The number of bytes
+     */
+    AsciiCharSequence(ByteBuffer buffer, int offset, int length) {
+        if (buffer.hasArray()) {
+            this.array = buffer.array();
+            this.buffer = null;
+            this.offset = buffer.arrayOffset() + offset;
+        } else {
+            this.array = null;
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+        this.length = length;
+    }
+
+    private AsciiCharSequence(byte[] array, ByteBuffer buffer, int offset, int length) {
+        this.array = array;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Encodes an ASCII string into {@code destination}, which has room for all of its characters
+     * @return Whether the string is ASCII. If it is not, {@code destination} holds a partial encoding.
+     */
+    static boolean encodeAscii(String str, byte[] destination) {
+        int length = str.length();
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            if (c >= 0x80) {
+                return false;
+            }
+            destination[i] = (byte)c;
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return this.length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= this.length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + this.length);
+        }
+        if (this.array != null) {
+            return (char)(this.array[this.offset + index] & 0xff);
+        }
+        return (char)(this.buffer.get(this.offset + index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end < start || end > this.length) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + this.length);
+        }
+        return new AsciiCharSequence(this.array, this.buffer, this.offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        if (this.array != null) {
+            return new String(this.array, this.offset, this.length, StandardCharsets.ISO_8859_1);
+        }
+        byte[] bytes = new byte[this.length];
+        for (int i = 0; i < this.length; i++) {
+            bytes[i] = this.buffer.get(this.offset + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
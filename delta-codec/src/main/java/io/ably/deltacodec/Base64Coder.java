@@ -50,6 +50,12 @@ static {
  map2['-'] = map2['+']; map2['_'] = map2['/'];
 }
 
+//Mapping table from 8-bit characters to 6-bit nibbles, -1 for characters outside the alphabet.
+//Indexed with (c & 0xff) once the high byte is known to be zero, so the lookup needs no range check.
+private static final int[] map3 = new int[256];
+static {
+ for (int i=0; i<map3.length; i++) map3[i] = i < map2.length ? map2[i] : -1; }
+
 /**
 * Encodes a string into Base64 format.
 * No blanks or line breaks are inserted.
@@ -183,7 +189,9 @@ return decode(buf, 0, p); }
 * @throws   IllegalArgumentException If the input is not valid Base64 encoded data.
 */
 public static byte[] decode (String s) {
-return decode(s.toCharArray()); }
+byte[] out = new byte[decodedLength(s, 0, s.length())];
+decode(s, 0, s.length(), out, 0);
+return out; }
 
 /**
 * Decodes a byte array from Base64 format.
@@ -207,32 +215,126 @@ return decode(in, 0, in.length); }
 public static byte[] decode (char[] in, int iOff, int iLen) {
 if (iLen%4 != 0) throw new IllegalArgumentException ("Length of Base64 encoded input string is not a multiple of 4.");
 while (iLen > 0 && in[iOff+iLen-1] == '=') iLen--;
-int oLen = (iLen*3) / 4;
-byte[] out = new byte[oLen];
+if (iLen%4 == 1) throw new IllegalArgumentException ("Illegal padding in Base64 encoded data.");
+byte[] out = new byte[(iLen*3) / 4];
 int ip = iOff;
 int iEnd = iOff + iLen;
 int op = 0;
+// Whole blocks of 8 characters are decoded into a 48 bit word, with a single validity check per block
+int blockEnd = iOff + (iLen & ~7);
+while (ip < blockEnd) {
+ int c0 = in[ip  ], c1 = in[ip+1], c2 = in[ip+2], c3 = in[ip+3];
+ int c4 = in[ip+4], c5 = in[ip+5], c6 = in[ip+6], c7 = in[ip+7];
+ if (((c0|c1|c2|c3|c4|c5|c6|c7) & 0xff00) != 0)
+    throw new IllegalArgumentException ("Illegal character in Base64 encoded data.");
+ long word = decodeBlock(c0, c1, c2, c3, c4, c5, c6, c7);
+ out[op  ] = (byte)(word>>>40);
+ out[op+1] = (byte)(word>>>32);
+ out[op+2] = (byte)(word>>>24);
+ out[op+3] = (byte)(word>>>16);
+ out[op+4] = (byte)(word>>> 8);
+ out[op+5] = (byte) word;
+ ip += 8; op += 6; }
 while (ip < iEnd) {
  int i0 = in[ip++];
  int i1 = in[ip++];
  int i2 = ip < iEnd ? in[ip++] : 'A';
  int i3 = ip < iEnd ? in[ip++] : 'A';
- if (i0 > 127 || i1 > 127 || i2 > 127 || i3 > 127)
-    throw new IllegalArgumentException ("Illegal character in Base64 encoded data.");
- int b0 = map2[i0];
- int b1 = map2[i1];
- int b2 = map2[i2];
- int b3 = map2[i3];
- if (b0 < 0 || b1 < 0 || b2 < 0 || b3 < 0)
-    throw new IllegalArgumentException ("Illegal character in Base64 encoded data.");
- int o0 = ( b0       <<2) | (b1>>>4);
- int o1 = ((b1 & 0xf)<<4) | (b2>>>2);
- int o2 = ((b2 &   3)<<6) |  b3;
- out[op++] = (byte)o0;
- if (op<oLen) out[op++] = (byte)o1;
- if (op<oLen) out[op++] = (byte)o2; }
+ op = decodeTail(i0, i1, i2, i3, out, op, out.length); }
 return out; }
 
+/**
+* Returns the number of bytes Base64 encoded data decodes to, without decoding it.
+* @param in    A character sequence containing the Base64 encoded data.
+* @param iOff  Offset of the first character in <code>in</code> to be processed.
+* @param iLen  Number of characters to process in <code>in</code>, starting at <code>iOff</code>.
+* @return      The number of decoded bytes.
+* @throws      IllegalArgumentException If the length of the input is not a multiple of 4.
+*/
+public static int decodedLength (CharSequence in, int iOff, int iLen) {
+if (iLen%4 != 0) throw new IllegalArgumentException ("Length of Base64 encoded input string is not a multiple of 4.");
+while (iLen > 0 && in.charAt(iOff+iLen-1) == '=') iLen--;
+if (iLen%4 == 1) throw new IllegalArgumentException ("Illegal padding in Base64 encoded data.");
+return (iLen*3) / 4; }
+
+/**
+* Decodes Base64 data from a character sequence into an existing array.
+* No blanks or line breaks are allowed within the Base64 encoded input data.
+* Unlike {@link #decode(String)}, the input is read in place and no intermediate arrays are allocated.
+* @param in    A character sequence containing the Base64 encoded data.
+* @param iOff  Offset of the first character in <code>in</code> to be processed.
+* @param iLen  Number of characters to process in <code>in</code>, starting at <code>iOff</code>.
+* @param out   The array the decoded bytes are written to, with room for {@link #decodedLength(CharSequence, int, int)} bytes.
+* @param oOff  Offset in <code>out</code> of the first decoded byte.
+* @return      The number of decoded bytes.
+* @throws      IllegalArgumentException If the input is not valid Base64 encoded data.
+*/
+public static int decode (CharSequence in, int iOff, int iLen, byte[] out, int oOff) {
+int oLen = decodedLength(in, iOff, iLen);
+while (iLen > 0 && in.charAt(iOff+iLen-1) == '=') iLen--;
+if (out.length - oOff < oLen) throw new ArrayIndexOutOfBoundsException (oOff + oLen);
+int ip = iOff;
+int iEnd = iOff + iLen;
+int op = oOff;
+int oEnd = oOff + oLen;
+// Whole blocks of 8 characters are decoded into a 48 bit word, with a single validity check per block
+int blockEnd = iOff + (iLen & ~7);
+while (ip < blockEnd) {
+ int c0 = in.charAt(ip  ), c1 = in.charAt(ip+1), c2 = in.charAt(ip+2), c3 = in.charAt(ip+3);
+ int c4 = in.charAt(ip+4), c5 = in.charAt(ip+5), c6 = in.charAt(ip+6), c7 = in.charAt(ip+7);
+ if (((c0|c1|c2|c3|c4|c5|c6|c7) & 0xff00) != 0)
+    throw new IllegalArgumentException ("Illegal character in Base64 encoded data.");
+ long word = decodeBlock(c0, c1, c2, c3, c4, c5, c6, c7);
+ out[op  ] = (byte)(word>>>40);
+ out[op+1] = (byte)(word>>>32);
+ out[op+2] = (byte)(word>>>24);
+ out[op+3] = (byte)(word>>>16);
+ out[op+4] = (byte)(word>>> 8);
+ out[op+5] = (byte) word;
+ ip += 8; op += 6; }
+while (ip < iEnd) {
+ int i0 = in.charAt(ip++);
+ int i1 = in.charAt(ip++);
+ int i2 = ip < iEnd ? in.charAt(ip++) : 'A';
+ int i3 = ip < iEnd ? in.charAt(ip++) : 'A';
+ op = decodeTail(i0, i1, i2, i3, out, op, oEnd); }
+return oLen; }
+
+//Decodes 8 characters, each known to be below 256, into the 48 bits they encode.
+//Nibbles of invalid characters are -1, which makes the shifted and or-ed quantum negative.
+private static long decodeBlock (int c0, int c1, int c2, int c3, int c4, int c5, int c6, int c7) {
+int q0 = (map3[c0 & 0xff]<<18) | (map3[c1 & 0xff]<<12) | (map3[c2 & 0xff]<<6) | map3[c3 & 0xff];
+int q1 = (map3[c4 & 0xff]<<18) | (map3[c5 & 0xff]<<12) | (map3[c6 & 0xff]<<6) | map3[c7 & 0xff];
+if ((q0|q1) < 0) throw new IllegalArgumentException ("Illegal character in Base64 encoded data.");
+return ((long)q0 << 24) | q1; }
+
+//Decodes one quantum after the whole blocks, writing at most oEnd-op bytes. Returns the new output offset.
+private static int decodeTail (int i0, int i1, int i2, int i3, byte[] out, int op, int oEnd) {
+if (((i0|i1|i2|i3) & ~0xff) != 0)
+   throw new IllegalArgumentException ("Illegal character in Base64 encoded data.");
+int q = (map3[i0]<<18) | (map3[i1]<<12) | (map3[i2]<<6) | map3[i3];
+if (q < 0) throw new IllegalArgumentException ("Illegal character in Base64 encoded data.");
+out[op++] = (byte)(q>>>16);
+if (op<oEnd) out[op++] = (byte)(q>>>8);
+if (op<oEnd) out[op++] = (byte)q;
+return op; }
+
+/**
+* Decodes the 4 characters at <code>iOff</code> into the 24 bits they encode, without allocating.
+* Padding characters decode to zero bits.
+* @param in    A character sequence containing the Base64 encoded data, with at least 4 characters from <code>iOff</code>.
+* @param iOff  Offset of the first character of the quantum.
+* @return      The 3 decoded bytes, most significant first, or -1 if a character is not valid Base64.
+*/
+static int decodeQuantum (CharSequence in, int iOff) {
+int value = 0;
+for (int i = 0; i < 4; i++) {
+ int c = in.charAt(iOff+i);
+ int b = c == '=' ? 0 : c > 255 ? -1 : map3[c];
+ if (b < 0) return -1;
+ value = (value << 6) | b; }
+return value; }
+
 //Dummy constructor.
 private Base64Coder() {}
 
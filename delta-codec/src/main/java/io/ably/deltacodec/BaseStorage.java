@@ -0,0 +1,24 @@
+package io.ably.deltacodec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Storage for the bases retained by decoders, in place of the heap arrays used by default. A decoder with a storage
+ * copies each new base into a buffer allocated from it, releases the buffer once the base has been replaced, and
+ * reads the source data of the next delta directly from the buffer.
+ */
+public interface BaseStorage {
+    /**
+     * Allocates a buffer for a base
+     * @param length The length of the base
+     * @return A buffer with position 0 and limit {@code length}; its capacity may be larger
+     */
+    ByteBuffer allocate(int length);
+
+    /**
+     * Returns a buffer previously obtained from {@link #allocate(int)} to the storage. The caller must not use
+     * the buffer afterwards.
+     * @param buffer The buffer to release
+     */
+    void release(ByteBuffer buffer);
+}
@@ -1,38 +1,391 @@
 package io.ably.deltacodec;
 
-import com.davidehrmann.vcdiff.VCDiffDecoder;
-import com.davidehrmann.vcdiff.VCDiffDecoderBuilder;
-
-import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 abstract class BaseVcdiffDecoder {
-    private final VCDiffDecoder decoder = VCDiffDecoderBuilder.builder().buildSimple();
+    /**
+     * Notified whenever the base retained by a decoder changes
+     */
+    interface BaseListener {
+        void baseChanged(int previousRetainedBytes, int retainedBytes);
+    }
+
+    private final VcdiffEngine engine;
+    private BufferPool bufferPool;
+    private BufferOwnership bufferOwnership = BufferOwnership.TRANSFER;
+    private BaseStorage baseStorage;
+    private SharedBasePool sharedBasePool;
+    /* The base is held either in an array or, with a storage, in storedBase, or deflated in compressedBase */
     private byte[] base;
+    /* The pool entry holding the base array, with a shared base pool */
+    private SharedBasePool.SharedBase sharedBase;
+    private ByteBuffer storedBase;
+    private byte[] compressedBase;
+    private int baseLength;
+    private boolean baseReleasable;
+    private byte[] deltaScratch;
+    private DeltaComposer composer;
+    private BaseListener baseListener;
+    private DecoderMetrics metrics;
+
+    BaseVcdiffDecoder(DecodingEngine engine) throws IllegalArgumentException {
+        if (engine == null) {
+            throw new IllegalArgumentException("engine cannot be null");
+        }
+        this.engine = engine.newEngine();
+    }
+
+    /**
+     * Sets the pool the decoded targets are allocated from. Without a pool every target is allocated at its exact size.
+     * @param bufferPool The pool to use, or null to allocate every target
+     */
+    public void setBufferPool(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Sets how byte arrays are shared between the decoder and its caller, see {@link BufferOwnership}.
+     * The default is {@link BufferOwnership#TRANSFER}.
+     * @param bufferOwnership The ownership policy
+     * @throws IllegalArgumentException The provided {@code bufferOwnership} parameter is null
+     */
+    public void setBufferOwnership(BufferOwnership bufferOwnership) throws IllegalArgumentException {
+        if (bufferOwnership == null) {
+            throw new IllegalArgumentException("bufferOwnership cannot be null");
+        }
+        this.bufferOwnership = bufferOwnership;
+    }
+
+    /**
+     * Sets the pool used to decode large deltas made of several windows in parallel. Windows that only copy from the
+     * base are decoded on the pool; windows copying from the result decoded so far are decoded on the calling thread.
+     * Only the {@link DecodingEngine#NATIVE} engine decodes windows in parallel, and only for results of 1 MiB or more.
+     * Streamed deltas are always decoded on the calling thread.
+     * @param pool The pool to use, which may be shared by many decoders, or null to decode every window on the calling
+     *             thread
+     */
+    public void setForkJoinPool(ForkJoinPool pool) {
+        this.engine.setForkJoinPool(pool);
+    }
+
+    /**
+     * Sets the storage bases are kept in, e.g. a {@link DirectBaseStorage} to keep them off the Java heap.
+     * Without a storage bases are kept in arrays. A base that is already set is moved to the new storage.
+     * @param baseStorage The storage to use, or null to keep bases in arrays
+     */
+    public void setBaseStorage(BaseStorage baseStorage) {
+        this.inflateBase();
+        byte[] current = null;
+        int length = this.baseLength;
+        if (this.base != null || this.storedBase != null) {
+            current = this.allocate(length);
+            this.source().get(current, 0, length);
+            this.replaceBase(null, 0, false);
+        }
+        this.baseStorage = baseStorage;
+        if (current != null) {
+            this.replaceBase(current, length, true);
+        }
+    }
+
+    /**
+     * Sets the pool the bases are interned in, so that decoders using the same pool share a single copy of identical
+     * bases, and decode a delta applied to a shared base only once, see {@link SharedBasePool}. With a pool the bases
+     * are kept in it rather than in the base storage, and are never compressed. A base that is already set is moved
+     * to the new pool.
+     * @param sharedBasePool The pool to use, or null to keep a copy of the base in the decoder
+     */
+    public void setSharedBasePool(SharedBasePool sharedBasePool) {
+        this.inflateBase();
+        byte[] current = null;
+        int length = this.baseLength;
+        if (this.base != null || this.storedBase != null) {
+            current = this.allocate(length);
+            this.source().get(current, 0, length);
+            this.replaceBase(null, 0, false);
+        }
+        this.sharedBasePool = sharedBasePool;
+        if (current != null) {
+            this.replaceBase(current, length, true);
+        }
+    }
+
+    /**
+     * Sets the listener notified of every delta application and failure, see {@link DecoderMetrics}
+     * @param metrics The listener, or null to stop collecting metrics
+     */
+    public void setMetrics(DecoderMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    void setBaseListener(BaseListener baseListener) {
+        this.baseListener = baseListener;
+    }
+
+    /**
+     * @return The size of the array, stored buffer or compressed array holding the base, 0 if there is no base
+     */
+    int getRetainedBytes() {
+        if (this.compressedBase != null) {
+            return this.compressedBase.length;
+        }
+        if (this.storedBase != null) {
+            return this.storedBase.capacity();
+        }
+        return this.base == null ? 0 : this.base.length;
+    }
+
+    /**
+     * Drops the base and the replaced bases kept by {@link #keepsReplacedBase()}, returning them to the pool or
+     * storage if they are owned by the decoder. The decoder is uninitialized afterwards.
+     */
+    void clearBase() {
+        int previousRetainedBytes = this.getRetainedBytes();
+        this.releaseReplacedBases();
+        this.replaceBase(null, 0, false, previousRetainedBytes);
+    }
+
+    /**
+     * Compresses the base with Deflate and drops the replaced bases kept by {@link #keepsReplacedBase()}. The base is
+     * decompressed by the next delta application.
+     * @return Whether the base was compressed. Shared bases and bases which do not shrink by at least an eighth are
+     * left as they are.
+     */
+    boolean compressBase() {
+        if (this.compressedBase != null || this.sharedBase != null || (this.base == null && this.storedBase == null)) {
+            return false;
+        }
+        byte[] compressed = this.deflateBase();
+        if (compressed == null) {
+            return false;
+        }
+        int previousRetainedBytes = this.getRetainedBytes();
+        this.releaseReplacedBases();
+        if (this.storedBase != null) {
+            this.baseStorage.release(this.storedBase);
+            this.storedBase = null;
+        } else if (this.baseReleasable) {
+            this.release(this.base);
+        }
+        this.base = null;
+        this.baseReleasable = false;
+        this.compressedBase = compressed;
+        this.retainedBytesChanged(previousRetainedBytes);
+        return true;
+    }
+
+    /**
+     * @return Whether the base is compressed, see {@link #compressBase()}
+     */
+    boolean isBaseCompressed() {
+        return this.compressedBase != null;
+    }
+
+    /**
+     * @return Whether the base about to be replaced by a new one should be handed to {@link #baseReplaced} instead of
+     * being released. Subclasses keeping replaced bases count them in {@link #getRetainedBytes()}.
+     */
+    boolean keepsReplacedBase() {
+        return false;
+    }
+
+    /**
+     * Receives a replaced base, while the base is being replaced. Bases kept in a storage are copied into an array
+     * first. The receiver releases the array with {@link #releaseReplacedBase} once it drops it.
+     * @param base The array holding the replaced base
+     * @param length The length of the replaced base
+     * @param releasable Whether the array can be returned to the pool
+     */
+    void baseReplaced(byte[] base, int length, boolean releasable) {
+    }
+
+    /**
+     * Drops all the replaced bases kept, without notifying the base listener
+     */
+    void releaseReplacedBases() {
+    }
+
+    void releaseReplacedBase(byte[] base, boolean releasable) {
+        if (releasable) {
+            this.release(base);
+        }
+    }
+
+    /**
+     * Makes a replaced base the base again, keeping the current one as a replaced base if {@link #keepsReplacedBase()}
+     * @param previousRetainedBytes The bytes retained before the replaced base was dropped by the caller
+     */
+    void restoreBase(byte[] base, int length, boolean releasable, int previousRetainedBytes) {
+        this.replaceBase(base, length, releasable, previousRetainedBytes);
+    }
+
+    /**
+     * Notifies the base listener of a change of the retained bytes made outside of a base replacement
+     */
+    void retainedBytesChanged(int previousRetainedBytes) {
+        if (this.baseListener != null) {
+            this.baseListener.baseChanged(previousRetainedBytes, this.getRetainedBytes());
+        }
+    }
 
     public static boolean isDelta(byte[] data) {
         return hasVcdiffHeader(data);
     }
 
+    public static boolean isDelta(ByteBuffer data) {
+        return hasVcdiffHeader(data);
+    }
+
     public static boolean isBase64Delta(String data) {
-        return hasVcdiffHeader(tryConvertFromBase64String(data));
+        return hasBase64VcdiffHeader(data, 0, data == null ? 0 : data.length());
     }
 
     protected DeltaApplicationResult applyDeltaInternal(byte[] delta) throws IllegalStateException, IllegalArgumentException, IOException {
-        if (this.base == null) {
-            throw new IllegalStateException("Uninitialized decoder - setBase() should be called first");
-        }
+        this.checkInitialized();
 
         if (delta == null || !hasVcdiffHeader(delta)) {
-            throw new IllegalArgumentException("The provided delta is not a valid VCDIFF delta");
+            throw this.invalidDelta(null);
+        }
+
+        return this.createResult(this.doApplyDelta(delta, 0, delta.length, null));
+    }
+
+    protected DeltaApplicationResult applyDeltaInternal(ByteBuffer delta) throws IllegalStateException, IllegalArgumentException, IOException {
+        return this.createResult(this.doApplyDelta(delta, null));
+    }
+
+    protected int applyDeltaInternal(ByteBuffer delta, ByteBuffer target) throws IllegalStateException, IllegalArgumentException, BufferOverflowException, IOException {
+        if (target == null) {
+            throw new IllegalArgumentException("target cannot be null");
         }
 
-        return new DeltaApplicationResult(doApplyDelta(delta));
+        byte[] decoded = this.doApplyDelta(delta, target);
+        target.put(decoded, 0, this.baseLength);
+        if (this.storedBase != null) {
+            this.release(decoded);
+        }
+        return this.baseLength;
     }
 
-    protected DeltaApplicationResult applyBase64DeltaInternal(String delta) throws IllegalStateException, IllegalArgumentException, IOException {
-        return this.applyDeltaInternal(tryConvertFromBase64String(delta));
+    protected int applyDeltaInternal(InputStream delta, OutputStream target) throws IllegalStateException, IllegalArgumentException, IOException {
+        this.checkInitialized();
+
+        if (target == null) {
+            throw new IllegalArgumentException("target cannot be null");
+        }
+        byte[] header = delta == null ? null : readHeader(delta);
+        if (header == null || !hasVcdiffHeader(header)) {
+            throw this.invalidDelta(null);
+        }
+
+        TargetBuffer decoded = new TargetBuffer(this.bufferPool);
+        CountingInputStream counted = this.metrics == null ? null : new CountingInputStream(delta, header.length);
+        long start = this.metrics == null ? 0 : System.nanoTime();
+        try {
+            this.engine.decode(this.source(), header, counted == null ? delta : counted, target, decoded);
+        } catch (IOException | RuntimeException e) {
+            decoded.release();
+            this.reportFailure(DecoderMetrics.Failure.MALFORMED_DELTA);
+            throw e;
+        }
+        if (this.metrics != null) {
+            this.metrics.deltaApplied((int)Math.min(counted.count, Integer.MAX_VALUE), decoded.length(), this.baseLength, System.nanoTime() - start);
+        }
+        this.replaceBase(decoded.array(), decoded.length(), true);
+        return decoded.length();
+    }
+
+    protected DeltaApplicationResult applyDeltasInternal(List<byte[]> deltas) throws IllegalStateException, IllegalArgumentException, IOException {
+        this.checkInitialized();
+
+        if (deltas == null || deltas.isEmpty()) {
+            throw new IllegalArgumentException("deltas cannot be null or empty");
+        }
+        if (this.composer == null) {
+            this.composer = new DeltaComposer();
+        }
+        // The chain is merged into one delta, so only the last target is materialized
+        byte[] composed;
+        try {
+            composed = this.composer.compose(deltas);
+        } catch (IOException | IllegalArgumentException e) {
+            this.reportFailure(DecoderMetrics.Failure.MALFORMED_DELTA);
+            throw e;
+        }
+        return this.applyDeltaInternal(composed);
+    }
+
+    protected DeltaApplicationResult applyBase64DeltaInternal(CharSequence delta) throws IllegalStateException, IllegalArgumentException, IOException {
+        return this.applyBase64DeltaInternal(delta, 0, delta == null ? 0 : delta.length());
+    }
+
+    protected DeltaApplicationResult applyBase64DeltaInternal(char[] delta, int offset, int length) throws IllegalStateException, IllegalArgumentException, IOException {
+        this.checkInitialized();
+
+        if (delta != null) {
+            checkRange(delta.length, offset, length);
+        }
+        return this.applyBase64DeltaInternal(delta == null ? null : CharBuffer.wrap(delta), offset, length);
+    }
+
+    protected DeltaApplicationResult applyBase64DeltaInternal(byte[] delta, int offset, int length) throws IllegalStateException, IllegalArgumentException, IOException {
+        this.checkInitialized();
+
+        if (delta != null) {
+            checkRange(delta.length, offset, length);
+        }
+        return this.applyBase64DeltaInternal(delta == null ? null : new AsciiCharSequence(delta, offset, length), 0, length);
+    }
+
+    protected DeltaApplicationResult applyBase64DeltaInternal(ByteBuffer delta, int offset, int length) throws IllegalStateException, IllegalArgumentException, IOException {
+        this.checkInitialized();
+
+        if (delta != null) {
+            checkRange(delta.limit(), offset, length);
+        }
+        return this.applyBase64DeltaInternal(delta == null ? null : new AsciiCharSequence(delta, offset, length), 0, length);
+    }
+
+    /**
+     * Decodes the Base64 text in {@code delta} straight into a scratch buffer reused across deltas and applies it
+     */
+    protected DeltaApplicationResult applyBase64DeltaInternal(CharSequence delta, int offset, int length) throws IllegalStateException, IllegalArgumentException, IOException {
+        this.checkInitialized();
+
+        if (delta != null) {
+            checkRange(delta.length(), offset, length);
+        }
+        if (!hasBase64VcdiffHeader(delta, offset, length)) {
+            throw this.invalidDelta(null);
+        }
+
+        int decodedLength = Base64Coder.decodedLength(delta, offset, length);
+        byte[] scratch = this.acquireDeltaScratch(decodedLength);
+        try {
+            try {
+                Base64Coder.decode(delta, offset, length, scratch, 0);
+            } catch (IllegalArgumentException e) {
+                throw this.invalidDelta(e);
+            }
+            return this.createResult(this.doApplyDelta(scratch, 0, decodedLength, null));
+        } finally {
+            this.releaseDeltaScratch(scratch);
+        }
     }
 
     protected void setBaseInternal(byte[] newBase) throws IllegalArgumentException {
@@ -40,50 +393,484 @@ abstract class BaseVcdiffDecoder {
             throw new IllegalArgumentException("newBase cannot be null");
         }
 
-        this.base = newBase;
+        if (this.bufferOwnership == BufferOwnership.COPY) {
+            byte[] copy = this.allocate(newBase.length);
+            System.arraycopy(newBase, 0, copy, 0, newBase.length);
+            this.replaceBase(copy, newBase.length, true);
+        } else {
+            this.replaceBase(newBase, newBase.length, false);
+        }
+    }
+
+    protected void setBaseInternal(ByteBuffer newBase) throws IllegalArgumentException {
+        if (newBase == null) {
+            throw new IllegalArgumentException("newBase cannot be null");
+        }
+
+        // The base is kept in an array or in the storage, so the buffer contents are always copied
+        int length = newBase.remaining();
+        byte[] copy = this.allocate(length);
+        readFully(newBase, copy);
+        this.replaceBase(copy, length, true);
     }
 
     protected void setBaseInternal(String newBase) throws IllegalArgumentException {
-        this.setBaseInternal(tryConvertToByteArray(newBase));
+        if (newBase == null) {
+            throw new IllegalArgumentException("newBase cannot be null");
+        }
+
+        // ASCII strings are encoded straight into the base array, or the pooled array copied into the storage
+        int length = newBase.length();
+        byte[] encoded = this.allocate(length);
+        if (AsciiCharSequence.encodeAscii(newBase, encoded)) {
+            this.replaceBase(encoded, length, true);
+            return;
+        }
+        this.release(encoded);
+        this.setOwnedBase(newBase.getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected void setBase64BaseInternal(CharSequence newBase) throws IllegalArgumentException {
+        if (newBase == null) {
+            throw new IllegalArgumentException("newBase cannot be null");
+        }
+
+        int length;
+        try {
+            length = Base64Coder.decodedLength(newBase, 0, newBase.length());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("newBase is not valid Base64", e);
+        }
+        byte[] decoded = this.allocate(length);
+        try {
+            Base64Coder.decode(newBase, 0, newBase.length(), decoded, 0);
+        } catch (IllegalArgumentException e) {
+            this.release(decoded);
+            throw new IllegalArgumentException("newBase is not valid Base64", e);
+        }
+        this.replaceBase(decoded, length, true);
+    }
+
+    private void setOwnedBase(byte[] newBase) throws IllegalArgumentException {
+        if (newBase == null) {
+            throw new IllegalArgumentException("newBase cannot be null");
+        }
+
+        this.replaceBase(newBase, newBase.length, true);
+    }
+
+    /**
+     * Throws if there is no base, and decompresses a base compressed by {@link #compressBase()}
+     */
+    private void checkInitialized() throws IllegalStateException {
+        if (this.base == null && this.storedBase == null && this.compressedBase == null) {
+            this.reportFailure(DecoderMetrics.Failure.UNINITIALIZED);
+            throw new IllegalStateException("Uninitialized decoder - setBase() should be called first");
+        }
+        this.inflateBase();
+    }
+
+    private byte[] doApplyDelta(ByteBuffer delta, ByteBuffer output) throws IOException {
+        this.checkInitialized();
+
+        if (delta == null || !hasVcdiffHeader(delta)) {
+            throw this.invalidDelta(null);
+        }
+
+        if (delta.hasArray()) {
+            return this.doApplyDelta(delta.array(), delta.arrayOffset() + delta.position(), delta.remaining(), output);
+        }
+
+        // Direct and read-only buffers are copied into a scratch buffer reused across deltas
+        int length = delta.remaining();
+        byte[] scratch = this.acquireDeltaScratch(length);
+        try {
+            readFully(delta, scratch);
+            return this.doApplyDelta(scratch, 0, length, output);
+        } finally {
+            this.releaseDeltaScratch(scratch);
+        }
     }
 
-    protected void setBase64BaseInternal(String newBase) throws IllegalArgumentException {
-        this.setBaseInternal(tryConvertFromBase64String(newBase));
+    /**
+     * Decodes the delta into a new base
+     * @param output The buffer the caller will copy the target into, or null if the target is returned as a
+     *               {@link DeltaApplicationResult}
+     * @return The decoded target. Without a storage it is the new base; with a storage the base is a copy of it and
+     * the caller owns the array.
+     */
+    private byte[] doApplyDelta(byte[] delta, int offset, int length, ByteBuffer output) throws IOException {
+        int targetLength = VcdiffFormat.targetLength(delta, offset, length);
+        if (output != null && output.remaining() < targetLength) {
+            throw new BufferOverflowException();
+        }
+        long start = this.metrics == null ? 0 : System.nanoTime();
+        SharedBasePool.SharedBase source = this.sharedBase;
+        if (source != null) {
+            SharedBasePool.SharedBase cached = this.sharedBasePool.cachedTarget(source, delta, offset, length);
+            if (cached != null) {
+                // Another decoder applied the same delta to the same base, so its target is shared
+                if (this.metrics != null) {
+                    this.metrics.deltaApplied(length, targetLength, this.baseLength, System.nanoTime() - start);
+                }
+                this.replaceBase(cached.data, cached.length, false, this.getRetainedBytes(), cached);
+                return cached.data;
+            }
+        }
+        byte[] target = this.allocate(targetLength);
+        try {
+            this.engine.decode(this.source(), delta, offset, length, target, targetLength);
+        } catch (IOException | RuntimeException e) {
+            this.release(target);
+            this.reportFailure(DecoderMetrics.Failure.MALFORMED_DELTA);
+            throw e;
+        }
+        if (this.metrics != null) {
+            this.metrics.deltaApplied(length, targetLength, this.baseLength, System.nanoTime() - start);
+        }
+        if (source != null) {
+            SharedBasePool.SharedBase interned = this.sharedBasePool.intern(target, targetLength);
+            if (interned.data != target) {
+                this.release(target);
+            }
+            this.sharedBasePool.targetDecoded(source, delta, offset, length, interned);
+            this.replaceBase(interned.data, interned.length, false, this.getRetainedBytes(), interned);
+            return interned.data;
+        }
+        if (this.baseStorage != null && this.sharedBasePool == null) {
+            this.replaceBase(target, targetLength, false);
+            return target;
+        }
+        // A shared result is a view over the new base, so its buffer must never be recycled
+        boolean shared = output == null && this.bufferOwnership == BufferOwnership.SHARE;
+        this.replaceBase(target, targetLength, !shared);
+        return target;
+    }
+
+    /**
+     * Notifies the metrics, if any, of a failed delta application
+     */
+    void reportFailure(DecoderMetrics.Failure failure) {
+        if (this.metrics != null) {
+            this.metrics.deltaFailed(failure);
+        }
     }
 
-    private byte[] doApplyDelta(byte[] deltaAsByteArray) throws IOException {
-        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
-        this.decoder.decode(this.base, deltaAsByteArray, decoded);
-        this.base = decoded.toByteArray();
+    private IllegalArgumentException invalidDelta(Throwable cause) {
+        this.reportFailure(DecoderMetrics.Failure.MALFORMED_DELTA);
+        return new IllegalArgumentException("The provided delta is not a valid VCDIFF delta", cause);
+    }
+
+    private DeltaApplicationResult createResult(byte[] target) {
+        if (this.storedBase != null) {
+            // The base is a copy in the storage, so the decoded array is handed over without another copy
+            if (target.length == this.baseLength) {
+                return new DeltaApplicationResult(target);
+            }
+            byte[] result = Arrays.copyOf(target, this.baseLength);
+            this.release(target);
+            return new DeltaApplicationResult(result);
+        }
+        if (this.bufferOwnership == BufferOwnership.SHARE) {
+            return new DeltaApplicationResult(this.base, this.baseLength, true);
+        }
         // Return a copy to avoid future delta application failures if the returned array is modified
-        return decoded.toByteArray();
+        return new DeltaApplicationResult(Arrays.copyOf(this.base, this.baseLength));
+    }
+
+    private byte[] acquireDeltaScratch(int length) {
+        if (this.bufferPool != null) {
+            return this.bufferPool.acquire(length);
+        }
+        byte[] scratch = this.deltaScratch;
+        if (scratch == null || scratch.length < length) {
+            scratch = new byte[length];
+        }
+        this.deltaScratch = null;
+        return scratch;
+    }
+
+    private void releaseDeltaScratch(byte[] scratch) {
+        if (this.bufferPool != null) {
+            this.bufferPool.release(scratch);
+        } else {
+            this.deltaScratch = scratch;
+        }
+    }
+
+    private byte[] allocate(int length) {
+        return this.bufferPool == null ? new byte[length] : this.bufferPool.acquire(length);
+    }
+
+    private void release(byte[] buffer) {
+        if (this.bufferPool != null) {
+            this.bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * @param releasable Whether the buffer is owned by the decoder alone and can be returned to the pool
+     *                   once it is replaced
+     */
+    private void replaceBase(byte[] newBase, int newBaseLength, boolean releasable) {
+        this.replaceBase(newBase, newBaseLength, releasable, this.getRetainedBytes());
+    }
+
+    private void replaceBase(byte[] newBase, int newBaseLength, boolean releasable, int previousRetainedBytes) {
+        this.replaceBase(newBase, newBaseLength, releasable, previousRetainedBytes, null);
+    }
+
+    /**
+     * @param interned The pool entry holding {@code newBase} if it has already been interned, with a reference
+     *                 counted for this decoder
+     */
+    private void replaceBase(byte[] newBase, int newBaseLength, boolean releasable, int previousRetainedBytes, SharedBasePool.SharedBase interned) {
+        if (newBase != null && this.compressedBase != null && this.keepsReplacedBase()) {
+            // The replaced base is kept, so it has to be decompressed
+            this.inflateBase();
+            previousRetainedBytes = this.getRetainedBytes();
+        }
+        this.compressedBase = null;
+        if (newBase != null && (this.base != null || this.storedBase != null) && this.keepsReplacedBase()) {
+            if (this.storedBase != null) {
+                byte[] copy = this.allocate(this.baseLength);
+                this.storedBase.duplicate().get(copy, 0, this.baseLength);
+                this.baseReplaced(copy, this.baseLength, true);
+            } else {
+                this.baseReplaced(this.base, this.baseLength, this.baseReleasable);
+            }
+        } else if (this.baseReleasable) {
+            this.release(this.base);
+        }
+        if (this.storedBase != null) {
+            this.baseStorage.release(this.storedBase);
+            this.storedBase = null;
+        }
+        if (this.sharedBase != null) {
+            this.sharedBasePool.release(this.sharedBase);
+            this.sharedBase = null;
+        }
+        if (this.sharedBasePool != null && newBase != null) {
+            if (interned == null) {
+                interned = this.sharedBasePool.intern(newBase, newBaseLength);
+                if (interned.data != newBase && releasable) {
+                    this.release(newBase);
+                }
+            }
+            this.sharedBase = interned;
+            this.base = interned.data;
+            this.baseLength = newBaseLength;
+            this.baseReleasable = false;
+        } else if (this.baseStorage != null && newBase != null) {
+            ByteBuffer stored = this.baseStorage.allocate(newBaseLength);
+            stored.put(newBase, 0, newBaseLength);
+            ((Buffer)stored).position(0);
+            if (releasable) {
+                this.release(newBase);
+            }
+            this.storedBase = stored;
+            this.base = null;
+            this.baseLength = newBaseLength;
+            this.baseReleasable = false;
+        } else {
+            this.base = newBase;
+            this.baseLength = newBaseLength;
+            this.baseReleasable = releasable;
+        }
+        if (this.baseListener != null) {
+            this.baseListener.baseChanged(previousRetainedBytes, this.getRetainedBytes());
+        }
+    }
+
+    /**
+     * @return A read-only view of the base, null if there is no base
+     */
+    ByteBuffer getBase() {
+        if (this.compressedBase != null) {
+            // Decompressed into a copy, so that the base stays compressed
+            return ByteBuffer.wrap(this.inflate(new byte[this.baseLength])).asReadOnlyBuffer();
+        }
+        if (this.base == null && this.storedBase == null) {
+            return null;
+        }
+        return this.source().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return The deflated base, or null if it does not shrink by at least an eighth
+     */
+    private byte[] deflateBase() {
+        byte[] input = this.base;
+        if (this.storedBase != null) {
+            input = this.allocate(this.baseLength);
+            this.storedBase.duplicate().get(input, 0, this.baseLength);
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input, 0, this.baseLength);
+            deflater.finish();
+            byte[] output = new byte[this.baseLength - this.baseLength / 8];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == output.length) {
+                    return null;
+                }
+                length += deflater.deflate(output, length, output.length - length);
+            }
+            return Arrays.copyOf(output, length);
+        } finally {
+            deflater.end();
+            if (input != this.base) {
+                this.release(input);
+            }
+        }
+    }
+
+    /**
+     * Makes a base compressed by {@link #compressBase()} the base again, if there is one
+     */
+    private void inflateBase() {
+        if (this.compressedBase == null) {
+            return;
+        }
+        int previousRetainedBytes = this.getRetainedBytes();
+        int length = this.baseLength;
+        byte[] inflated = this.inflate(this.allocate(length));
+        this.compressedBase = null;
+        this.replaceBase(inflated, length, true, previousRetainedBytes);
+    }
+
+    private byte[] inflate(byte[] output) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(this.compressedBase);
+            int length = 0;
+            while (length < this.baseLength) {
+                int inflated = inflater.inflate(output, length, this.baseLength - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalStateException("The compressed base is truncated");
+                }
+                length += inflated;
+            }
+            return output;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("The compressed base is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @return The base as the source of the next delta, from index 0 to its limit
+     */
+    private ByteBuffer source() {
+        if (this.storedBase != null) {
+            return this.storedBase.duplicate();
+        }
+        return ByteBuffer.wrap(this.base, 0, this.baseLength);
     }
 
     private static boolean hasVcdiffHeader(byte[] delta) {
         if (delta == null || delta.length <= 4) {
             return false;
         }
-        return delta[0] == (byte)0xd6 &&
-                delta[1] == (byte)0xc3 &&
-                delta[2] == (byte)0xc4 &&
-                delta[3] == (byte)0;
+        return ByteArrays.getIntBigEndian(delta, 0) == VcdiffFormat.MAGIC;
     }
 
-    private static byte[] tryConvertToByteArray(String str) {
-        if (str == null) {
-            return null;
+    private static boolean hasVcdiffHeader(ByteBuffer delta) {
+        if (delta == null || delta.remaining() <= 4) {
+            return false;
         }
-        return str.getBytes(StandardCharsets.UTF_8);
+        // The int is read in the caller's byte order
+        int magic = delta.order() == ByteOrder.BIG_ENDIAN ? VcdiffFormat.MAGIC : Integer.reverseBytes(VcdiffFormat.MAGIC);
+        return delta.getInt(delta.position()) == magic;
     }
 
-    private static byte[] tryConvertFromBase64String(String str) {
-        if (str == null) {
-            return null;
+    /**
+     * Checks for the VCDIFF magic bytes and header indicator by decoding only the first 8 characters, which encode the
+     * first 6 bytes
+     */
+    private static boolean hasBase64VcdiffHeader(CharSequence delta, int offset, int length) {
+        if (delta == null || length < 8 || length % 4 != 0) {
+            return false;
         }
-        try {
-            return Base64Coder.decode(str);
-        } catch (IllegalArgumentException e) {
-            return null;
+        int end = offset + length;
+        int padding = delta.charAt(end - 1) != '=' ? 0 : delta.charAt(end - 2) != '=' ? 1 : 2;
+        if (length / 4 * 3 - padding <= VcdiffFormat.MAGIC_LENGTH) {
+            return false;
+        }
+        int first = Base64Coder.decodeQuantum(delta, offset);
+        int second = Base64Coder.decodeQuantum(delta, offset + 4);
+        return first == 0xd6c3c4 && second >= 0 && (second >>> 16) == 0;
+    }
+
+    private static void checkRange(int available, int offset, int length) throws IllegalArgumentException {
+        if (offset < 0 || length < 0 || offset > available - length) {
+            throw new IllegalArgumentException("offset and length must lie within delta");
+        }
+    }
+
+    /**
+     * Reads the VCDIFF file header prefix (magic bytes and header indicator) from a streamed delta
+     * @return The bytes read, shorter than the prefix if the stream ended early
+     */
+    private static byte[] readHeader(InputStream delta) throws IOException {
+        byte[] header = new byte[VcdiffFormat.MAGIC_LENGTH + 1];
+        int length = 0;
+        while (length < header.length) {
+            int read = delta.read(header, length, header.length - length);
+            if (read < 0) {
+                return Arrays.copyOf(header, length);
+            }
+            length += read;
+        }
+        return header;
+    }
+
+    /**
+     * Copies the remaining bytes of {@code buffer} into {@code destination} leaving the buffer position unchanged
+     */
+    private static void readFully(ByteBuffer buffer, byte[] destination) {
+        int position = buffer.position();
+        buffer.get(destination, 0, buffer.remaining());
+        // Cast for binary compatibility with Java 8 and Android, where ByteBuffer does not override position(int)
+        ((Buffer)buffer).position(position);
+    }
+
+    /**
+     * Counts the bytes of a streamed delta read by the engine, for the metrics
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in, long count) {
+            super(in);
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                this.count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                this.count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            this.count += skipped;
+            return skipped;
         }
     }
 }
@@ -0,0 +1,28 @@
+package io.ably.deltacodec;
+
+/**
+ * Policy for the byte arrays passed to {@code setBase} and returned as delta application results
+ */
+public enum BufferOwnership {
+    /**
+     * Arrays are copied in both directions. The decoder copies the array passed to {@code setBase}, and
+     * every {@link DeltaApplicationResult} holds its own copy of the target. The caller may modify any array.
+     */
+    COPY,
+
+    /**
+     * Arrays are shared read-only in both directions. The decoder retains the array passed to {@code setBase}
+     * without copying it, and every {@link DeltaApplicationResult} is a view over the retained base that is
+     * exposed through {@link DeltaApplicationResult#asByteBuffer()} and {@link DeltaApplicationResult#writeTo(java.io.OutputStream)}
+     * without copying. Neither side may modify a shared array. Buffers exposed this way are never returned
+     * to a {@link BufferPool}.
+     */
+    SHARE,
+
+    /**
+     * Ownership of arrays moves across the API. The array passed to {@code setBase} is retained without copying and
+     * the caller must not modify it afterwards, and every {@link DeltaApplicationResult} holds a copy of the target
+     * owned by the caller. This is the default.
+     */
+    TRANSFER
+}
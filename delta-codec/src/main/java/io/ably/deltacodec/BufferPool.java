@@ -0,0 +1,22 @@
+package io.ably.deltacodec;
+
+/**
+ * Source of the buffers decoders decode targets into. Buffers handed out may be longer than requested.
+ * A decoder releases a buffer it acquired once the base held in it has been replaced, so in steady state
+ * decoding recycles the same few buffers instead of allocating new ones.
+ */
+public interface BufferPool {
+    /**
+     * Returns a buffer at least {@code minimumLength} bytes long
+     * @param minimumLength The minimum length of the buffer
+     * @return The buffer
+     */
+    byte[] acquire(int minimumLength);
+
+    /**
+     * Returns a buffer previously obtained from {@link #acquire(int)} to the pool. The caller must not use
+     * the buffer afterwards.
+     * @param buffer The buffer to release
+     */
+    void release(byte[] buffer);
+}
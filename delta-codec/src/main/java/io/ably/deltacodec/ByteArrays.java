@@ -0,0 +1,72 @@
+package io.ably.deltacodec;
+
+/**
+ * Word-at-a-time helpers for the byte loops of the codec. This is the Java 7 implementation; the multi-release jar
+ * replaces it on Java 11 and newer with one reading words through var handles and comparing ranges through
+ * {@code Arrays.equals}, both of which the JIT turns into vector instructions. The two must behave the same, which
+ * {@code ByteArraysTest} checks on every JDK the jar is tested on.
+ */
+final class ByteArrays {
+    private ByteArrays() {}
+
+    /**
+     * @return The 4 bytes from {@code offset} as a big-endian int
+     */
+    static int getIntBigEndian(byte[] data, int offset) {
+        return (data[offset] & 0xff) << 24 |
+                (data[offset + 1] & 0xff) << 16 |
+                (data[offset + 2] & 0xff) << 8 |
+                (data[offset + 3] & 0xff);
+    }
+
+    /**
+     * @return The 8 bytes from {@code offset} as a little-endian long
+     */
+    static long getLongLittleEndian(byte[] data, int offset) {
+        return (data[offset] & 0xffL) |
+                (data[offset + 1] & 0xffL) << 8 |
+                (data[offset + 2] & 0xffL) << 16 |
+                (data[offset + 3] & 0xffL) << 24 |
+                (data[offset + 4] & 0xffL) << 32 |
+                (data[offset + 5] & 0xffL) << 40 |
+                (data[offset + 6] & 0xffL) << 48 |
+                (data[offset + 7] & 0xffL) << 56;
+    }
+
+    /**
+     * Checks 8 bytes at a time for a byte above 127
+     * @return Whether the {@code length} bytes from {@code offset} are all ASCII
+     */
+    static boolean isAscii(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        for (; i <= end - 8; i += 8) {
+            if ((data[i] | data[i + 1] | data[i + 2] | data[i + 3] |
+                    data[i + 4] | data[i + 5] | data[i + 6] | data[i + 7]) < 0) {
+                return false;
+            }
+        }
+        for (; i < end; i++) {
+            if (data[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether the {@code length} bytes from {@code aOffset} in {@code a} equal those from {@code bOffset}
+     * in {@code b}
+     */
+    static boolean equals(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        if (a == b && aOffset == bOffset) {
+            return true;
+        }
+        for (int i = 0; i < length; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,13 +1,79 @@
 package io.ably.deltacodec;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Objects;
 
 /**
  * VCDIFF decoder capable of processing continuous sequences of consecutively generated VCDIFFs
  */
 public class CheckedVcdiffDecoder extends BaseVcdiffDecoder {
+    /**
+     * A replaced base kept in the history, with its sequence ID
+     */
+    private static final class HistoricBase {
+        final String id;
+        final byte[] base;
+        final int length;
+        final boolean releasable;
+
+        HistoricBase(String id, byte[] base, int length, boolean releasable) {
+            this.id = id;
+            this.base = base;
+            this.length = length;
+            this.releasable = releasable;
+        }
+    }
+
+    /**
+     * A delta application, run by {@link #applyChecked} once the sequence continuity has been checked
+     */
+    private interface Decoding<T> {
+        T decode() throws IOException;
+    }
+
+    /**
+     * A base restored from the history for a delta, undone if the delta fails
+     */
+    private static final class Restore {
+        /* The base replaced by the restored one, kept in the history until the delta is applied */
+        final HistoricBase previous;
+        /* The position of the restored base in the history */
+        final int index;
+
+        Restore(HistoricBase previous, int index) {
+            this.previous = previous;
+            this.index = index;
+        }
+    }
+
     private String baseId;
+    private int baseHistorySize;
+    /* Replaced bases, most recent first */
+    private final ArrayList<HistoricBase> history = new ArrayList<>();
+    private int historyBytes;
+    /* Set while a base is restored, so the replaced base is kept even without an ID */
+    private boolean restoring;
+
+    /**
+     * Creates a decoder using the default {@link DecodingEngine#NATIVE} engine
+     */
+    public CheckedVcdiffDecoder() {
+        this(DecodingEngine.NATIVE);
+    }
+
+    /**
+     * Creates a decoder using the given engine
+     * @param engine The engine used to decode deltas
+     * @throws IllegalArgumentException The provided {@code engine} parameter is null
+     */
+    public CheckedVcdiffDecoder(DecodingEngine engine) throws IllegalArgumentException {
+        super(engine);
+    }
 
     /**
      * Applies the {@code delta} to the result of applying the previous delta or to the base data
@@ -22,11 +88,61 @@ public class CheckedVcdiffDecoder extends BaseVcdiffDecoder {
      * @throws IllegalArgumentException The provided {@code delta} is not a valid VCDIFF
      * @throws SequenceContinuityException The provided {@code baseId} does not match the last preserved sequence ID
      */
-    public DeltaApplicationResult applyDelta(byte[] delta, String deltaId, String baseId) throws SequenceContinuityException, IllegalStateException, IllegalArgumentException, IOException {
-        this.checkSequenceContinuity(baseId);
-        DeltaApplicationResult result = this.applyDeltaInternal(delta);
-        this.baseId = deltaId;
-        return result;
+    public DeltaApplicationResult applyDelta(final byte[] delta, String deltaId, String baseId) throws SequenceContinuityException, IllegalStateException, IllegalArgumentException, IOException {
+        return this.applyChecked(deltaId, baseId, new Decoding<DeltaApplicationResult>() {
+            @Override
+            public DeltaApplicationResult decode() throws IOException {
+                return CheckedVcdiffDecoder.this.applyDeltaInternal(delta);
+            }
+        });
+    }
+
+    /**
+     * Applies the {@code delta} like {@link VcdiffDecoder#applyDelta(ByteBuffer)}, checking the sequence continuity like
+     * {@link CheckedVcdiffDecoder#applyDelta(byte[], String, String)}
+     * @param deltaId (Optional) Sequence ID of the current delta application result
+     * @param baseId (Optional) Sequence ID of the expected previous delta application result
+     * @throws SequenceContinuityException The provided {@code baseId} does not match the last preserved sequence ID
+     */
+    public DeltaApplicationResult applyDelta(final ByteBuffer delta, String deltaId, String baseId) throws SequenceContinuityException, IllegalStateException, IllegalArgumentException, IOException {
+        return this.applyChecked(deltaId, baseId, new Decoding<DeltaApplicationResult>() {
+            @Override
+            public DeltaApplicationResult decode() throws IOException {
+                return CheckedVcdiffDecoder.this.applyDeltaInternal(delta);
+            }
+        });
+    }
+
+    /**
+     * Applies the {@code delta} like {@link VcdiffDecoder#applyDelta(ByteBuffer, ByteBuffer)}, checking the sequence continuity like
+     * {@link CheckedVcdiffDecoder#applyDelta(byte[], String, String)}
+     * @param deltaId (Optional) Sequence ID of the current delta application result
+     * @param baseId (Optional) Sequence ID of the expected previous delta application result
+     * @throws SequenceContinuityException The provided {@code baseId} does not match the last preserved sequence ID
+     */
+    public int applyDelta(final ByteBuffer delta, final ByteBuffer target, String deltaId, String baseId) throws SequenceContinuityException, IllegalStateException, IllegalArgumentException, BufferOverflowException, IOException {
+        return this.applyChecked(deltaId, baseId, new Decoding<Integer>() {
+            @Override
+            public Integer decode() throws IOException {
+                return CheckedVcdiffDecoder.this.applyDeltaInternal(delta, target);
+            }
+        });
+    }
+
+    /**
+     * Applies the {@code delta} like {@link VcdiffDecoder#applyDelta(InputStream, OutputStream)}, checking the sequence continuity like
+     * {@link CheckedVcdiffDecoder#applyDelta(byte[], String, String)}
+     * @param deltaId (Optional) Sequence ID of the current delta application result
+     * @param baseId (Optional) Sequence ID of the expected previous delta application result
+     * @throws SequenceContinuityException The provided {@code baseId} does not match the last preserved sequence ID
+     */
+    public int applyDelta(final InputStream delta, final OutputStream target, String deltaId, String baseId) throws SequenceContinuityException, IllegalStateException, IllegalArgumentException, IOException {
+        return this.applyChecked(deltaId, baseId, new Decoding<Integer>() {
+            @Override
+            public Integer decode() throws IOException {
+                return CheckedVcdiffDecoder.this.applyDeltaInternal(delta, target);
+            }
+        });
     }
 
     /**
@@ -42,11 +158,77 @@ public class CheckedVcdiffDecoder extends BaseVcdiffDecoder {
      * @throws IllegalArgumentException The provided {@code delta} is not a valid VCDIFF
      * @throws SequenceContinuityException The provided {@code baseId} does not match the last preserved sequence ID
      */
-    public DeltaApplicationResult applyBase64Delta(String delta, String deltaId, String baseId) throws SequenceContinuityException, IllegalStateException, IllegalArgumentException, IOException {
-        this.checkSequenceContinuity(baseId);
-        DeltaApplicationResult result = this.applyBase64DeltaInternal(delta);
-        this.baseId = deltaId;
-        return result;
+    public DeltaApplicationResult applyBase64Delta(final String delta, String deltaId, String baseId) throws SequenceContinuityException, IllegalStateException, IllegalArgumentException, IOException {
+        return this.applyChecked(deltaId, baseId, new Decoding<DeltaApplicationResult>() {
+            @Override
+            public DeltaApplicationResult decode() throws IOException {
+                return CheckedVcdiffDecoder.this.applyBase64DeltaInternal(delta);
+            }
+        });
+    }
+
+    /**
+     * Applies the {@code delta} like {@link VcdiffDecoder#applyBase64Delta(char[], int, int)}, checking the sequence continuity like
+     * {@link CheckedVcdiffDecoder#applyDelta(byte[], String, String)}
+     * @param deltaId (Optional) Sequence ID of the current delta application result
+     * @param baseId (Optional) Sequence ID of the expected previous delta application result
+     * @throws SequenceContinuityException The provided {@code baseId} does not match the last preserved sequence ID
+     */
+    public DeltaApplicationResult applyBase64Delta(final char[] delta, final int offset, final int length, String deltaId, String baseId) throws SequenceContinuityException, IllegalStateException, IllegalArgumentException, IOException {
+        return this.applyChecked(deltaId, baseId, new Decoding<DeltaApplicationResult>() {
+            @Override
+            public DeltaApplicationResult decode() throws IOException {
+                return CheckedVcdiffDecoder.this.applyBase64DeltaInternal(delta, offset, length);
+            }
+        });
+    }
+
+    /**
+     * Applies the {@code delta} like {@link VcdiffDecoder#applyBase64Delta(CharSequence, int, int)}, checking the sequence continuity like
+     * {@link CheckedVcdiffDecoder#applyDelta(byte[], String, String)}
+     * @param deltaId (Optional) Sequence ID of the current delta application result
+     * @param baseId (Optional) Sequence ID of the expected previous delta application result
+     * @throws SequenceContinuityException The provided {@code baseId} does not match the last preserved sequence ID
+     */
+    public DeltaApplicationResult applyBase64Delta(final CharSequence delta, final int offset, final int length, String deltaId, String baseId) throws SequenceContinuityException, IllegalStateException, IllegalArgumentException, IOException {
+        return this.applyChecked(deltaId, baseId, new Decoding<DeltaApplicationResult>() {
+            @Override
+            public DeltaApplicationResult decode() throws IOException {
+                return CheckedVcdiffDecoder.this.applyBase64DeltaInternal(delta, offset, length);
+            }
+        });
+    }
+
+    /**
+     * Applies the {@code delta} like {@link VcdiffDecoder#applyBase64Delta(byte[], int, int)}, checking the sequence continuity like
+     * {@link CheckedVcdiffDecoder#applyDelta(byte[], String, String)}
+     * @param deltaId (Optional) Sequence ID of the current delta application result
+     * @param baseId (Optional) Sequence ID of the expected previous delta application result
+     * @throws SequenceContinuityException The provided {@code baseId} does not match the last preserved sequence ID
+     */
+    public DeltaApplicationResult applyBase64Delta(final byte[] delta, final int offset, final int length, String deltaId, String baseId) throws SequenceContinuityException, IllegalStateException, IllegalArgumentException, IOException {
+        return this.applyChecked(deltaId, baseId, new Decoding<DeltaApplicationResult>() {
+            @Override
+            public DeltaApplicationResult decode() throws IOException {
+                return CheckedVcdiffDecoder.this.applyBase64DeltaInternal(delta, offset, length);
+            }
+        });
+    }
+
+    /**
+     * Applies the {@code delta} like {@link VcdiffDecoder#applyBase64Delta(ByteBuffer, int, int)}, checking the sequence continuity like
+     * {@link CheckedVcdiffDecoder#applyDelta(byte[], String, String)}
+     * @param deltaId (Optional) Sequence ID of the current delta application result
+     * @param baseId (Optional) Sequence ID of the expected previous delta application result
+     * @throws SequenceContinuityException The provided {@code baseId} does not match the last preserved sequence ID
+     */
+    public DeltaApplicationResult applyBase64Delta(final ByteBuffer delta, final int offset, final int length, String deltaId, String baseId) throws SequenceContinuityException, IllegalStateException, IllegalArgumentException, IOException {
+        return this.applyChecked(deltaId, baseId, new Decoding<DeltaApplicationResult>() {
+            @Override
+            public DeltaApplicationResult decode() throws IOException {
+                return CheckedVcdiffDecoder.this.applyBase64DeltaInternal(delta, offset, length);
+            }
+        });
     }
 
     /**
@@ -63,6 +245,21 @@ public class CheckedVcdiffDecoder extends BaseVcdiffDecoder {
         this.baseId = newBaseId;
     }
 
+    /**
+     * Sets the base object used for the next delta application (see {@link CheckedVcdiffDecoder#applyDelta(byte[], String, String)}
+     * and {@link CheckedVcdiffDecoder#applyBase64Delta(String, String, String)}).
+     * @param newBase The buffer to be set as new base, read from its position to its limit. Its contents are copied
+     *                and its position is left unchanged.
+     * @param newBaseId (Optional) The {@code newBase}'s sequence ID, to be used for sequence continuity checking
+     *                  when delta is applied using {@link CheckedVcdiffDecoder#applyDelta(byte[], String, String)} or
+     *                  {@link CheckedVcdiffDecoder#applyBase64Delta(String, String, String)}
+     * @throws IllegalArgumentException The provided {@code newBase} parameter is null
+     */
+    public void setBase(ByteBuffer newBase, String newBaseId) {
+        this.setBaseInternal(newBase);
+        this.baseId = newBaseId;
+    }
+
     /**
      * Sets the base object used for the next delta application (see {@link CheckedVcdiffDecoder#applyDelta(byte[], String, String)}
      * and {@link CheckedVcdiffDecoder#applyBase64Delta(String, String, String)}).
@@ -91,9 +288,182 @@ public class CheckedVcdiffDecoder extends BaseVcdiffDecoder {
         this.baseId = newBaseId;
     }
 
-    private void checkSequenceContinuity(String baseId) throws SequenceContinuityException {
-        if (!Objects.equals(this.baseId, baseId)) {
-            throw new SequenceContinuityException(this.baseId, baseId);
+    /**
+     * Applies the {@code delta} to the current base without checking the sequence continuity. The ID of the result
+     * is unknown, so the base ID is cleared.
+     */
+    DeltaApplicationResult applyUncheckedDelta(byte[] delta) throws IllegalStateException, IllegalArgumentException, IOException {
+        DeltaApplicationResult result = this.applyDeltaInternal(delta);
+        this.baseId = null;
+        return result;
+    }
+
+    /**
+     * Applies the base64 encoded {@code delta} like {@link #applyUncheckedDelta(byte[])}
+     */
+    DeltaApplicationResult applyUncheckedBase64Delta(String delta) throws IllegalStateException, IllegalArgumentException, IOException {
+        DeltaApplicationResult result = this.applyBase64DeltaInternal(delta);
+        this.baseId = null;
+        return result;
+    }
+
+    /**
+     * Sets how many replaced bases are kept, with their sequence IDs, besides the current base. A delta whose
+     * {@code baseId} matches one of them, e.g. one generated against an older message after a publisher failover, is
+     * applied to that base instead of failing the sequence continuity check. Kept bases are held in arrays, also when a
+     * {@link BaseStorage} is set, and count towards {@link DecoderRegistry} budgets. Bases without an ID are not kept.
+     * The default is 0, which only keeps the current base.
+     * @param baseHistorySize The number of replaced bases to keep
+     * @throws IllegalArgumentException The provided {@code baseHistorySize} parameter is negative
+     */
+    public void setBaseHistorySize(int baseHistorySize) throws IllegalArgumentException {
+        if (baseHistorySize < 0) {
+            throw new IllegalArgumentException("baseHistorySize cannot be negative");
+        }
+
+        this.baseHistorySize = baseHistorySize;
+        int previousRetainedBytes = this.getRetainedBytes();
+        if (this.trimHistory()) {
+            this.retainedBytesChanged(previousRetainedBytes);
+        }
+    }
+
+    /**
+     * @return The sequence ID of the retained base, which the base ID of the next delta has to match
+     */
+    String getBaseId() {
+        return this.baseId;
+    }
+
+    /**
+     * @return The size of the current base and of the replaced bases kept in the history
+     */
+    @Override
+    int getRetainedBytes() {
+        return super.getRetainedBytes() + this.historyBytes;
+    }
+
+    @Override
+    boolean keepsReplacedBase() {
+        return this.restoring || (this.baseHistorySize > 0 && this.baseId != null);
+    }
+
+    @Override
+    void baseReplaced(byte[] base, int length, boolean releasable) {
+        this.history.add(0, new HistoricBase(this.baseId, base, length, releasable));
+        this.historyBytes += base.length;
+        this.trimHistory();
+    }
+
+    @Override
+    void releaseReplacedBases() {
+        for (HistoricBase historic : this.history) {
+            this.releaseReplacedBase(historic.base, historic.releasable);
+        }
+        this.history.clear();
+        this.historyBytes = 0;
+    }
+
+    /**
+     * Drops the oldest bases beyond the history size
+     * @return Whether a base was dropped
+     */
+    private boolean trimHistory() {
+        boolean trimmed = false;
+        while (this.history.size() > this.baseHistorySize) {
+            HistoricBase oldest = this.history.remove(this.history.size() - 1);
+            this.historyBytes -= oldest.base.length;
+            this.releaseReplacedBase(oldest.base, oldest.releasable);
+            trimmed = true;
+        }
+        return trimmed;
+    }
+
+    /**
+     * Checks the sequence continuity, runs the decoding and moves the base ID on, or undoes a restore from the history
+     * if the decoding fails
+     */
+    private <T> T applyChecked(String deltaId, String baseId, Decoding<T> decoding) throws SequenceContinuityException, IOException {
+        Restore restore = this.checkSequenceContinuity(baseId);
+        T result;
+        try {
+            result = decoding.decode();
+        } catch (IOException | RuntimeException e) {
+            this.rollBack(restore);
+            throw e;
+        }
+        this.applied(restore, deltaId);
+        return result;
+    }
+
+    /**
+     * Checks that the delta applies to the current base, or to a base in the history, which then becomes the
+     * current base again until the delta is applied or fails
+     * @return The restored base, or null if the delta applies to the current base
+     */
+    private Restore checkSequenceContinuity(String baseId) throws SequenceContinuityException {
+        if (Objects.equals(this.baseId, baseId)) {
+            return null;
+        }
+        for (int index = 0; baseId != null && index < this.history.size(); index++) {
+            HistoricBase historic = this.history.get(index);
+            if (baseId.equals(historic.id)) {
+                int previousRetainedBytes = this.getRetainedBytes();
+                this.history.remove(index);
+                this.historyBytes -= historic.base.length;
+                // The current base moves into the history under its own ID, and is moved back if the delta fails
+                this.restore(historic, previousRetainedBytes);
+                this.baseId = historic.id;
+                return new Restore(this.history.isEmpty() ? null : this.history.get(0), index);
+            }
+        }
+        this.reportFailure(DecoderMetrics.Failure.SEQUENCE_DISCONTINUITY);
+        throw new SequenceContinuityException(this.baseId, baseId);
+    }
+
+    /**
+     * Completes a delta application, dropping the base replaced by a restored one if it would not have been kept
+     */
+    private void applied(Restore restore, String deltaId) {
+        this.baseId = deltaId;
+        if (restore == null || restore.previous == null || restore.previous.id != null) {
+            return;
+        }
+        // The replaced base may have been dropped already, if the history was full
+        if (this.history.remove(restore.previous)) {
+            int previousRetainedBytes = this.getRetainedBytes();
+            this.historyBytes -= restore.previous.base.length;
+            this.releaseReplacedBase(restore.previous.base, restore.previous.releasable);
+            this.retainedBytesChanged(previousRetainedBytes);
+        }
+    }
+
+    /**
+     * Makes the base replaced by a restored one the current base again after a delta failed, and puts the restored
+     * base back at its position in the history
+     */
+    private void rollBack(Restore restore) {
+        if (restore == null || restore.previous == null) {
+            return;
+        }
+        HistoricBase previous = restore.previous;
+        int previousRetainedBytes = this.getRetainedBytes();
+        this.history.remove(previous);
+        this.historyBytes -= previous.base.length;
+        this.restore(previous, previousRetainedBytes);
+        this.baseId = previous.id;
+        this.history.add(restore.index, this.history.remove(0));
+    }
+
+    /**
+     * Makes a base from the history the current base, keeping the current base in the history even without an ID
+     */
+    private void restore(HistoricBase historic, int previousRetainedBytes) {
+        this.restoring = true;
+        try {
+            this.restoreBase(historic.base, historic.length, historic.releasable, previousRetainedBytes);
+        } finally {
+            this.restoring = false;
         }
     }
 }
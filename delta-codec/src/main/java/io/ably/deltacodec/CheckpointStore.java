@@ -0,0 +1,410 @@
+package io.ably.deltacodec;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Local file keeping a checkpoint of the base and base ID of each channel, so that after a restart channels resume
+ * applying deltas instead of all being resynchronized with full payloads at once.
+ *
+ * <p>
+ * Checkpoints are appended to the file, the latest checkpoint of a channel superseding the earlier ones, and an index
+ * of the latest checkpoints is rebuilt when the file is opened. A checkpoint left incomplete by a crash is dropped
+ * when the file is opened, and a damaged one is detected by its checksum when it is restored. Checkpoints are read
+ * through memory mappings of the file, so bases are only read once their channel is restored. The file is compacted
+ * once superseded checkpoints take up more than half of it.
+ *
+ * <p>
+ * The store is thread-safe. Decoders must not be used by other threads while they are checkpointed or restored,
+ * which {@link ConcurrentVcdiffDecoder#checkpoint()} takes care of.
+ */
+public class CheckpointStore implements Closeable {
+    private static final int MAGIC = 0x44434b50;
+    private static final byte CHECKPOINT = 1;
+    private static final byte REMOVAL = 2;
+    /* Magic, record type, payload length and payload checksum */
+    private static final int HEADER_LENGTH = 4 + 1 + 4 + 4;
+    private static final int MIN_COMPACTION_LENGTH = 1 << 20;
+
+    /**
+     * Where the payload of the latest checkpoint of a channel lies in the file
+     */
+    private static final class Location {
+        final long offset;
+        final int length;
+        final String baseId;
+
+        Location(long offset, int length, String baseId) {
+            this.offset = offset;
+            this.length = length;
+            this.baseId = baseId;
+        }
+    }
+
+    private final File file;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private final Map<String, Location> index = new HashMap<>();
+    private long length;
+    /* The length of the records in the index, the rest of the file being superseded records */
+    private long liveLength;
+
+    /**
+     * Opens the store, creating the file if it does not exist
+     * @param file The file holding the checkpoints
+     * @throws IOException The file could not be opened or read
+     * @throws IllegalArgumentException The provided {@code file} parameter is null
+     */
+    public CheckpointStore(File file) throws IllegalArgumentException, IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file cannot be null");
+        }
+
+        this.file = file;
+        this.open();
+    }
+
+    /**
+     * Appends a checkpoint of the decoder's base and base ID, unless the latest checkpoint of the channel already has
+     * the same non-null base ID. Nothing is written for an uninitialized decoder.
+     * @param channelId The channel ID
+     * @param decoder The decoder of the channel
+     * @return Whether a checkpoint was written
+     * @throws IOException Writing to the file failed
+     * @throws IllegalArgumentException The provided {@code channelId} or {@code decoder} parameter is null
+     */
+    public synchronized boolean checkpoint(String channelId, CheckedVcdiffDecoder decoder) throws IllegalArgumentException, IOException {
+        if (channelId == null) {
+            throw new IllegalArgumentException("channelId cannot be null");
+        }
+        if (decoder == null) {
+            throw new IllegalArgumentException("decoder cannot be null");
+        }
+
+        this.checkOpen();
+        ByteBuffer base = decoder.getBase();
+        String baseId = decoder.getBaseId();
+        Location latest = this.index.get(channelId);
+        if (base == null || (baseId != null && latest != null && baseId.equals(latest.baseId))) {
+            return false;
+        }
+        this.append(CHECKPOINT, channelId, baseId, base);
+        this.compactIfNeeded();
+        return true;
+    }
+
+    /**
+     * Sets the base and base ID of the latest checkpoint of the channel on the decoder
+     * @param channelId The channel ID
+     * @param decoder The decoder of the channel
+     * @return Whether the channel had a checkpoint. A damaged checkpoint is dropped, as if there had been none.
+     * @throws IOException Reading the file failed
+     * @throws IllegalArgumentException The provided {@code channelId} or {@code decoder} parameter is null
+     */
+    public synchronized boolean restore(String channelId, CheckedVcdiffDecoder decoder) throws IllegalArgumentException, IOException {
+        if (channelId == null) {
+            throw new IllegalArgumentException("channelId cannot be null");
+        }
+        if (decoder == null) {
+            throw new IllegalArgumentException("decoder cannot be null");
+        }
+
+        this.checkOpen();
+        Location location = this.index.get(channelId);
+        if (location == null) {
+            return false;
+        }
+        MappedByteBuffer payload = this.channel.map(FileChannel.MapMode.READ_ONLY, location.offset, location.length);
+        int expectedChecksum = this.readChecksum(location.offset - HEADER_LENGTH);
+        if (checksum(payload) != expectedChecksum) {
+            this.index.remove(channelId);
+            this.liveLength -= HEADER_LENGTH + location.length;
+            return false;
+        }
+        skipString(payload);
+        skipString(payload);
+        decoder.setBase(payload, location.baseId);
+        return true;
+    }
+
+    /**
+     * Drops the checkpoint of a channel
+     * @param channelId The channel ID
+     * @return Whether the channel had a checkpoint
+     * @throws IOException Writing to the file failed
+     */
+    public synchronized boolean remove(String channelId) throws IOException {
+        this.checkOpen();
+        if (channelId == null || !this.index.containsKey(channelId)) {
+            return false;
+        }
+        this.append(REMOVAL, channelId, null, null);
+        this.compactIfNeeded();
+        return true;
+    }
+
+    /**
+     * @return The IDs of the channels with a checkpoint
+     */
+    public synchronized Set<String> getChannelIds() {
+        return Collections.unmodifiableSet(new HashSet<>(this.index.keySet()));
+    }
+
+    /**
+     * @return The length of the file in bytes
+     */
+    public synchronized long getLength() {
+        return this.length;
+    }
+
+    /**
+     * Writes the checkpoints to the storage device, so that they survive a crash of the operating system
+     * @throws IOException Writing to the storage device failed
+     */
+    public synchronized void flush() throws IOException {
+        this.checkOpen();
+        this.channel.force(false);
+    }
+
+    /**
+     * Rewrites the file with only the latest checkpoint of each channel
+     * @throws IOException Writing the new file or replacing the existing file with it failed. The existing file is
+     * then left unchanged and the store stays open.
+     */
+    public synchronized void compact() throws IOException {
+        this.checkOpen();
+        File compacted = new File(this.file.getPath() + ".compact");
+        RandomAccessFile output = new RandomAccessFile(compacted, "rw");
+        try {
+            output.setLength(0);
+            FileChannel outputChannel = output.getChannel();
+            for (Location location : this.index.values()) {
+                long recordOffset = location.offset - HEADER_LENGTH;
+                long recordLength = HEADER_LENGTH + location.length;
+                long transferred = 0;
+                while (transferred < recordLength) {
+                    transferred += this.channel.transferTo(recordOffset + transferred, recordLength - transferred, outputChannel);
+                }
+            }
+            outputChannel.force(true);
+        } finally {
+            output.close();
+        }
+        this.close();
+        try {
+            // On POSIX file systems the rename replaces the file in a single step, so a crash leaves either the old
+            // or the new file. java.nio.file is not used as Android only has it from API level 26.
+            if (!compacted.renameTo(this.file)) {
+                throw new IOException("Cannot replace " + this.file + " with " + compacted);
+            }
+        } finally {
+            this.open();
+        }
+    }
+
+    /**
+     * Closes the file, writing the checkpoints to the storage device
+     * @throws IOException Closing the file failed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.channel == null) {
+            return;
+        }
+        try {
+            this.channel.force(false);
+        } finally {
+            this.randomAccessFile.close();
+            this.randomAccessFile = null;
+            this.channel = null;
+            this.index.clear();
+        }
+    }
+
+    /**
+     * Opens the file and indexes the latest checkpoint of each channel, truncating an incomplete last record and
+     * skipping records whose IDs do not fit into their payload
+     */
+    private void open() throws IOException {
+        this.randomAccessFile = new RandomAccessFile(this.file, "rw");
+        this.channel = this.randomAccessFile.getChannel();
+        this.index.clear();
+        this.liveLength = 0;
+        long fileLength = this.channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        while (position + HEADER_LENGTH <= fileLength) {
+            ((Buffer)header).clear();
+            readFully(this.channel, header, position);
+            ((Buffer)header).flip();
+            byte type = header.get(4);
+            int payloadLength = header.getInt(5);
+            if (header.getInt(0) != MAGIC || (type != CHECKPOINT && type != REMOVAL) || payloadLength < 8 ||
+                    position + HEADER_LENGTH + payloadLength > fileLength) {
+                break;
+            }
+            long payloadOffset = position + HEADER_LENGTH;
+            position = payloadOffset + payloadLength;
+            // The header is complete, so a record whose IDs do not fit into its payload was damaged and is skipped
+            int channelIdLength = this.readInt(payloadOffset);
+            if (channelIdLength < 0 || channelIdLength > payloadLength - 8) {
+                continue;
+            }
+            long baseIdOffset = payloadOffset + 4 + channelIdLength;
+            int baseIdLength = this.readInt(baseIdOffset);
+            if (baseIdLength < -1 || baseIdLength > position - baseIdOffset - 4) {
+                continue;
+            }
+            String channelId = this.readString(payloadOffset + 4, channelIdLength);
+            Location previous;
+            if (type == CHECKPOINT) {
+                String baseId = baseIdLength < 0 ? null : this.readString(baseIdOffset + 4, baseIdLength);
+                previous = this.index.put(channelId, new Location(payloadOffset, payloadLength, baseId));
+                this.liveLength += HEADER_LENGTH + payloadLength;
+            } else {
+                previous = this.index.remove(channelId);
+            }
+            if (previous != null) {
+                this.liveLength -= HEADER_LENGTH + previous.length;
+            }
+        }
+        if (position < fileLength) {
+            // The rest is a record left incomplete when the process or the system stopped
+            this.channel.truncate(position);
+        }
+        this.length = position;
+    }
+
+    private void append(byte type, String channelId, String baseId, ByteBuffer base) throws IOException {
+        byte[] channelIdBytes = channelId.getBytes(StandardCharsets.UTF_8);
+        byte[] baseIdBytes = baseId == null ? null : baseId.getBytes(StandardCharsets.UTF_8);
+        int baseLength = base == null ? 0 : base.remaining();
+        ByteBuffer ids = ByteBuffer.allocate(4 + channelIdBytes.length + 4 + (baseIdBytes == null ? 0 : baseIdBytes.length));
+        ids.putInt(channelIdBytes.length).put(channelIdBytes);
+        if (baseIdBytes == null) {
+            ids.putInt(-1);
+        } else {
+            ids.putInt(baseIdBytes.length).put(baseIdBytes);
+        }
+        ((Buffer)ids).flip();
+        long payloadLength = (long)ids.remaining() + baseLength;
+        if (payloadLength > Integer.MAX_VALUE) {
+            throw new IOException("The base of " + channelId + " is too large to be checkpointed");
+        }
+
+        CRC32 crc = new CRC32();
+        update(crc, ids.duplicate());
+        if (base != null) {
+            update(crc, base.duplicate());
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).put(type).putInt((int)payloadLength).putInt((int)crc.getValue());
+        ((Buffer)header).flip();
+
+        ByteBuffer[] record = base == null ?
+                new ByteBuffer[] { header, ids } :
+                new ByteBuffer[] { header, ids, base.duplicate() };
+        long position = this.length;
+        this.channel.position(position);
+        long recordLength = HEADER_LENGTH + payloadLength;
+        long written = 0;
+        while (written < recordLength) {
+            written += this.channel.write(record);
+        }
+        this.length = position + recordLength;
+
+        Location previous;
+        if (type == CHECKPOINT) {
+            previous = this.index.put(channelId, new Location(position + HEADER_LENGTH, (int)payloadLength, baseId));
+            this.liveLength += recordLength;
+        } else {
+            previous = this.index.remove(channelId);
+        }
+        if (previous != null) {
+            this.liveLength -= HEADER_LENGTH + previous.length;
+        }
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (this.length >= MIN_COMPACTION_LENGTH && this.length > 2 * this.liveLength) {
+            this.compact();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (this.channel == null) {
+            throw new IOException("The checkpoint store is closed");
+        }
+    }
+
+    private int readChecksum(long recordOffset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        readFully(this.channel, header, recordOffset);
+        return header.getInt(HEADER_LENGTH - 4);
+    }
+
+    private int readInt(long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        readFully(this.channel, buffer, offset);
+        return buffer.getInt(0);
+    }
+
+    private String readString(long offset, int length) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        readFully(this.channel, bytes, offset);
+        return new String(bytes.array(), StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length > 0) {
+            ((Buffer)buffer).position(buffer.position() + length);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of checkpoint file");
+            }
+            position += read;
+        }
+    }
+
+    private static int checksum(ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        update(crc, payload.duplicate());
+        return (int)crc.getValue();
+    }
+
+    /**
+     * Feeds the remaining bytes of {@code buffer} to {@code crc}, going through an array for direct buffers, as
+     * {@code CRC32.update(ByteBuffer)} is not available before Java 8
+     */
+    private static void update(CRC32 crc, ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            crc.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+        byte[] chunk = new byte[Math.min(buffer.remaining(), 8192)];
+        while (buffer.hasRemaining()) {
+            int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+    }
+}
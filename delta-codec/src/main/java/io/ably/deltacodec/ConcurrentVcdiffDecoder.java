@@ -0,0 +1,267 @@
+package io.ably.deltacodec;
+
+import java.io.IOException;
+
+/**
+ * Thread-safe facade decoding the deltas of many channels, each channel with its own base.
+ *
+ * <p>
+ * Channels are sharded onto lock stripes. Deltas of channels on different stripes are applied in parallel, while
+ * the deltas of one channel are applied one at a time, in the order the calls acquire the channel's stripe. Deltas
+ * of a channel therefore have to be submitted in order, typically by the thread receiving the channel's messages.
+ *
+ * <p>
+ * Each stripe keeps its channels in a {@link DecoderRegistry} holding an equal share of the byte budget. Results are
+ * always copies owned by the caller, so they can be used from any thread.
+ */
+public class ConcurrentVcdiffDecoder {
+    private final DecoderRegistry<CheckedVcdiffDecoder>[] stripes;
+
+    /**
+     * Creates a decoder with four stripes per available processor, no byte budget and the default decoding engine
+     */
+    public ConcurrentVcdiffDecoder() {
+        this(4 * Runtime.getRuntime().availableProcessors(), Long.MAX_VALUE, DecodingEngine.NATIVE);
+    }
+
+    /**
+     * @param stripes The number of lock stripes, rounded up to a power of two and capped at 65536
+     * @param maxRetainedBytes The budget for the bases retained by all channels, shared equally by the stripes
+     * @param engine The engine deltas are decoded with
+     * @throws IllegalArgumentException The provided {@code stripes} parameter is not positive,
+     * {@code maxRetainedBytes} is negative or {@code engine} is null
+     */
+    public ConcurrentVcdiffDecoder(int stripes, long maxRetainedBytes, DecodingEngine engine) throws IllegalArgumentException {
+        this(stripes, maxRetainedBytes, engine, null);
+    }
+
+    /**
+     * @param stripes The number of lock stripes, rounded up to a power of two and capped at 65536
+     * @param maxRetainedBytes The budget for the bases retained by all channels, shared equally by the stripes
+     * @param engine The engine deltas are decoded with
+     * @param checkpointStore (Optional) The store the bases are checkpointed to by
+     *                        {@link ConcurrentVcdiffDecoder#checkpoint()}, and restored from when a channel is first used
+     * @throws IllegalArgumentException The provided {@code stripes} parameter is not positive,
+     * {@code maxRetainedBytes} is negative or {@code engine} is null
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ConcurrentVcdiffDecoder(int stripes, long maxRetainedBytes, DecodingEngine engine, CheckpointStore checkpointStore) throws IllegalArgumentException {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes must be positive");
+        }
+        if (maxRetainedBytes < 0) {
+            throw new IllegalArgumentException("maxRetainedBytes cannot be negative");
+        }
+
+        int requested = Math.min(stripes, 1 << 16);
+        int count = Integer.highestOneBit(requested);
+        if (count < requested) {
+            count <<= 1;
+        }
+        this.stripes = new DecoderRegistry[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = DecoderRegistry.forCheckedVcdiffDecoders(maxRetainedBytes / count, engine, checkpointStore);
+        }
+    }
+
+    /**
+     * Applies the {@code delta} to the result of applying the previous delta of the channel or to its base data.
+     * Base data has to be set by {@link ConcurrentVcdiffDecoder#setBase(String, byte[])} before calling this method
+     * for the first time, and again once the channel's base has been evicted. The sequence continuity is not checked,
+     * and the sequence ID of the channel's base, if any, is cleared.
+     * @param channelId The channel ID
+     * @param delta The delta to be applied
+     * @return {@link DeltaApplicationResult} instance
+     * @throws IOException Delta application failed
+     * @throws IllegalStateException The channel's base has not been set or has been evicted
+     * @throws IllegalArgumentException The provided {@code channelId} is null or {@code delta} is not a valid VCDIFF
+     */
+    public DeltaApplicationResult applyDelta(String channelId, byte[] delta) throws IllegalStateException, IllegalArgumentException, IOException {
+        DecoderRegistry<CheckedVcdiffDecoder> stripe = this.stripe(channelId);
+        synchronized (stripe) {
+            return stripe.get(channelId).applyUncheckedDelta(delta);
+        }
+    }
+
+    /**
+     * Applies the {@code delta} to the result of applying the previous delta of the channel or to its base data,
+     * checking the sequence continuity like {@link CheckedVcdiffDecoder#applyDelta(byte[], String, String)}
+     * @param channelId The channel ID
+     * @param delta The delta to be applied
+     * @param deltaId (Optional) Sequence ID of the current delta application result
+     * @param baseId (Optional) Sequence ID of the expected previous delta application result
+     * @return {@link DeltaApplicationResult} instance
+     * @throws IOException Delta application failed
+     * @throws IllegalStateException The channel's base has not been set or has been evicted
+     * @throws IllegalArgumentException The provided {@code channelId} is null or {@code delta} is not a valid VCDIFF
+     * @throws SequenceContinuityException The provided {@code baseId} does not match the last preserved sequence ID
+     */
+    public DeltaApplicationResult applyDelta(String channelId, byte[] delta, String deltaId, String baseId) throws SequenceContinuityException, IllegalStateException, IllegalArgumentException, IOException {
+        DecoderRegistry<CheckedVcdiffDecoder> stripe = this.stripe(channelId);
+        synchronized (stripe) {
+            return stripe.get(channelId).applyDelta(delta, deltaId, baseId);
+        }
+    }
+
+    /**
+     * Applies the base64 encoded {@code delta} to the result of applying the previous delta of the channel or to its
+     * base data, without checking the sequence continuity like {@link ConcurrentVcdiffDecoder#applyDelta(String, byte[])}
+     * @param channelId The channel ID
+     * @param delta The delta to be applied as base64 string
+     * @return {@link DeltaApplicationResult} instance
+     * @throws IOException Delta application failed
+     * @throws IllegalStateException The channel's base has not been set or has been evicted
+     * @throws IllegalArgumentException The provided {@code channelId} is null or {@code delta} is not a valid VCDIFF
+     */
+    public DeltaApplicationResult applyBase64Delta(String channelId, String delta) throws IllegalStateException, IllegalArgumentException, IOException {
+        DecoderRegistry<CheckedVcdiffDecoder> stripe = this.stripe(channelId);
+        synchronized (stripe) {
+            return stripe.get(channelId).applyUncheckedBase64Delta(delta);
+        }
+    }
+
+    /**
+     * Sets the base of a channel used for the next delta application
+     * @param channelId The channel ID
+     * @param newBase The byte[] to be set as new base. The array is retained, so it must not be modified afterwards.
+     * @throws IllegalArgumentException The provided {@code channelId} or {@code newBase} parameter is null
+     */
+    public void setBase(String channelId, byte[] newBase) throws IllegalArgumentException {
+        this.setBase(channelId, newBase, null);
+    }
+
+    /**
+     * Sets the base of a channel used for the next delta application
+     * @param channelId The channel ID
+     * @param newBase The byte[] to be set as new base. The array is retained, so it must not be modified afterwards.
+     * @param newBaseId (Optional) The {@code newBase}'s sequence ID, to be used for sequence continuity checking
+     * @throws IllegalArgumentException The provided {@code channelId} or {@code newBase} parameter is null
+     */
+    public void setBase(String channelId, byte[] newBase, String newBaseId) throws IllegalArgumentException {
+        DecoderRegistry<CheckedVcdiffDecoder> stripe = this.stripe(channelId);
+        synchronized (stripe) {
+            stripe.get(channelId).setBase(newBase, newBaseId);
+        }
+    }
+
+    /**
+     * Sets the base of a channel used for the next delta application
+     * @param channelId The channel ID
+     * @param newBase The base64 encoded string to be set as new base
+     * @param newBaseId (Optional) The {@code newBase}'s sequence ID, to be used for sequence continuity checking
+     * @throws IllegalArgumentException The provided {@code channelId} or {@code newBase} parameter is null
+     */
+    public void setBase64Base(String channelId, String newBase, String newBaseId) throws IllegalArgumentException {
+        DecoderRegistry<CheckedVcdiffDecoder> stripe = this.stripe(channelId);
+        synchronized (stripe) {
+            stripe.get(channelId).setBase64Base(newBase, newBaseId);
+        }
+    }
+
+    /**
+     * Drops a channel and its base
+     * @param channelId The channel ID
+     * @return true if the channel was known
+     */
+    public boolean remove(String channelId) {
+        DecoderRegistry<CheckedVcdiffDecoder> stripe = this.stripe(channelId);
+        synchronized (stripe) {
+            return stripe.remove(channelId) != null;
+        }
+    }
+
+    /**
+     * Checkpoints the base of every channel to the {@link CheckpointStore} the decoder was created with, one stripe
+     * at a time. This is meant to be called periodically, from any thread.
+     * @return The number of checkpoints written
+     * @throws IOException Writing to the store failed
+     * @throws IllegalStateException The decoder was created without a {@link CheckpointStore}
+     */
+    public int checkpoint() throws IllegalStateException, IOException {
+        int written = 0;
+        for (DecoderRegistry<CheckedVcdiffDecoder> stripe : this.stripes) {
+            synchronized (stripe) {
+                written += stripe.checkpoint();
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Compresses the bases of the channels which have not been used for {@code idleMillis}, one stripe at a time,
+     * see {@link DecoderRegistry#compressIdleBases(long)}. This is meant to be called periodically, from any thread.
+     * @param idleMillis The time since a channel last received a delta or base after which its base is compressed
+     * @return The number of bases compressed
+     * @throws IllegalArgumentException The provided {@code idleMillis} parameter is negative
+     */
+    public int compressIdleBases(long idleMillis) throws IllegalArgumentException {
+        int compressed = 0;
+        for (DecoderRegistry<CheckedVcdiffDecoder> stripe : this.stripes) {
+            synchronized (stripe) {
+                compressed += stripe.compressIdleBases(idleMillis);
+            }
+        }
+        return compressed;
+    }
+
+    /**
+     * @return The number of bytes retained by the bases of all channels, compressed or not
+     */
+    public long getRetainedBytes() {
+        long retainedBytes = 0;
+        for (DecoderRegistry<CheckedVcdiffDecoder> stripe : this.stripes) {
+            retainedBytes += stripe.getRetainedBytes();
+        }
+        return retainedBytes;
+    }
+
+    /**
+     * @return The number of bytes retained by the uncompressed bases of all channels
+     */
+    public long getHotBytes() {
+        long hotBytes = 0;
+        for (DecoderRegistry<CheckedVcdiffDecoder> stripe : this.stripes) {
+            hotBytes += stripe.getHotBytes();
+        }
+        return hotBytes;
+    }
+
+    /**
+     * @return The number of bytes retained by the compressed bases of all channels
+     */
+    public long getColdBytes() {
+        long coldBytes = 0;
+        for (DecoderRegistry<CheckedVcdiffDecoder> stripe : this.stripes) {
+            coldBytes += stripe.getColdBytes();
+        }
+        return coldBytes;
+    }
+
+    /**
+     * @return The number of bases evicted to stay within the budget
+     */
+    public long getEvictionCount() {
+        long evictionCount = 0;
+        for (DecoderRegistry<CheckedVcdiffDecoder> stripe : this.stripes) {
+            evictionCount += stripe.getEvictionCount();
+        }
+        return evictionCount;
+    }
+
+    /**
+     * @return The number of lock stripes
+     */
+    public int getStripeCount() {
+        return this.stripes.length;
+    }
+
+    private DecoderRegistry<CheckedVcdiffDecoder> stripe(String channelId) throws IllegalArgumentException {
+        if (channelId == null) {
+            throw new IllegalArgumentException("channelId cannot be null");
+        }
+        int hash = channelId.hashCode();
+        // Spread the high bits so that similar channel IDs land on different stripes
+        hash ^= (hash >>> 16);
+        return this.stripes[hash & (this.stripes.length - 1)];
+    }
+}
@@ -0,0 +1,44 @@
+package io.ably.deltacodec;
+
+/**
+ * Listener notified by a decoder of every delta application and failure, e.g. to monitor the decoding cost per
+ * channel. A decoder without metrics does not read the clock or make any call. Implementations are called on the
+ * decoding thread, so they should only record the values and return. {@link HistogramDecoderMetrics} aggregates
+ * them into histograms.
+ */
+public interface DecoderMetrics {
+    /**
+     * The kinds of delta application failures
+     */
+    enum Failure {
+        /**
+         * The decoder had no base, see {@link IllegalStateException}
+         */
+        UNINITIALIZED,
+        /**
+         * The delta is not a valid VCDIFF delta or does not apply to the base; for streamed deltas, also a failure of
+         * the streams
+         */
+        MALFORMED_DELTA,
+        /**
+         * The base ID did not match the ID of the retained base, see {@link SequenceContinuityException}
+         */
+        SEQUENCE_DISCONTINUITY
+    }
+
+    /**
+     * Called once a delta has been applied
+     * @param deltaLength The length of the binary delta, after Base64 decoding
+     * @param targetLength The length of the delta application result
+     * @param baseLength The length of the base the delta was applied to
+     * @param decodeNanos The time spent decoding the delta into its target, measured with {@link System#nanoTime()}.
+     *                    Base64 decoding and copies of the result made for the caller are not included.
+     */
+    void deltaApplied(int deltaLength, int targetLength, int baseLength, long decodeNanos);
+
+    /**
+     * Called when a delta application fails, before the exception is thrown
+     * @param failure The kind of failure
+     */
+    void deltaFailed(Failure failure);
+}
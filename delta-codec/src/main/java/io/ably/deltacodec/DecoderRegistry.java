@@ -0,0 +1,346 @@
+package io.ably.deltacodec;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps one decoder per channel and bounds the memory retained by their bases.
+ *
+ * <p>
+ * Every base a decoder retains is accounted against a byte budget. When a base grows the total over the budget, the
+ * bases of the least recently used channels are dropped until it fits again. A decoder whose base has been dropped
+ * stays registered but is uninitialized: applying the next delta throws {@link IllegalStateException}, and the
+ * channel has to be resynchronized by setting a full base.
+ *
+ * <p>
+ * Bases of channels left idle can be compressed with {@link DecoderRegistry#compressIdleBases(long)}, typically
+ * called periodically. A compressed base is only accounted at its compressed size and is decompressed by the next
+ * delta application of its channel.
+ *
+ * <p>
+ * The registry is thread-safe, but as eviction resets decoders of other channels, the decoders it hands out must be
+ * used from a single thread or under a common lock.
+ *
+ * @param <D> The type of the decoders, {@link VcdiffDecoder} or {@link CheckedVcdiffDecoder}
+ */
+public class DecoderRegistry<D> {
+    /**
+     * Creates the decoder of a newly registered channel
+     */
+    interface DecoderFactory<D> {
+        D create();
+    }
+
+    private final long maxRetainedBytes;
+    private final DecoderFactory<D> factory;
+    /* Only set for registries of CheckedVcdiffDecoders */
+    private final CheckpointStore checkpointStore;
+    /* Channels in least recently used order, maintained by touch() */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private long retainedBytes;
+    private long coldBytes;
+    private long evictionCount;
+
+    DecoderRegistry(long maxRetainedBytes, DecoderFactory<D> factory) throws IllegalArgumentException {
+        this(maxRetainedBytes, factory, null);
+    }
+
+    private DecoderRegistry(long maxRetainedBytes, DecoderFactory<D> factory, CheckpointStore checkpointStore) throws IllegalArgumentException {
+        if (maxRetainedBytes < 0) {
+            throw new IllegalArgumentException("maxRetainedBytes cannot be negative");
+        }
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.factory = factory;
+        this.checkpointStore = checkpointStore;
+    }
+
+    /**
+     * Creates a registry of {@link VcdiffDecoder}s using the default decoding engine
+     * @param maxRetainedBytes The budget for the bases retained by all decoders
+     * @return The registry
+     * @throws IllegalArgumentException The provided {@code maxRetainedBytes} parameter is negative
+     */
+    public static DecoderRegistry<VcdiffDecoder> forVcdiffDecoders(long maxRetainedBytes) throws IllegalArgumentException {
+        return forVcdiffDecoders(maxRetainedBytes, DecodingEngine.NATIVE);
+    }
+
+    /**
+     * Creates a registry of {@link VcdiffDecoder}s
+     * @param maxRetainedBytes The budget for the bases retained by all decoders
+     * @param engine The engine the decoders decode deltas with
+     * @return The registry
+     * @throws IllegalArgumentException The provided {@code maxRetainedBytes} parameter is negative or {@code engine} is null
+     */
+    public static DecoderRegistry<VcdiffDecoder> forVcdiffDecoders(long maxRetainedBytes, final DecodingEngine engine) throws IllegalArgumentException {
+        if (engine == null) {
+            throw new IllegalArgumentException("engine cannot be null");
+        }
+        return new DecoderRegistry<>(maxRetainedBytes, new DecoderFactory<VcdiffDecoder>() {
+            @Override
+            public VcdiffDecoder create() {
+                return new VcdiffDecoder(engine);
+            }
+        });
+    }
+
+    /**
+     * Creates a registry of {@link CheckedVcdiffDecoder}s using the default decoding engine
+     * @param maxRetainedBytes The budget for the bases retained by all decoders
+     * @return The registry
+     * @throws IllegalArgumentException The provided {@code maxRetainedBytes} parameter is negative
+     */
+    public static DecoderRegistry<CheckedVcdiffDecoder> forCheckedVcdiffDecoders(long maxRetainedBytes) throws IllegalArgumentException {
+        return forCheckedVcdiffDecoders(maxRetainedBytes, DecodingEngine.NATIVE);
+    }
+
+    /**
+     * Creates a registry of {@link CheckedVcdiffDecoder}s
+     * @param maxRetainedBytes The budget for the bases retained by all decoders
+     * @param engine The engine the decoders decode deltas with
+     * @return The registry
+     * @throws IllegalArgumentException The provided {@code maxRetainedBytes} parameter is negative or {@code engine} is null
+     */
+    public static DecoderRegistry<CheckedVcdiffDecoder> forCheckedVcdiffDecoders(long maxRetainedBytes, DecodingEngine engine) throws IllegalArgumentException {
+        return forCheckedVcdiffDecoders(maxRetainedBytes, engine, null);
+    }
+
+    /**
+     * Creates a registry of {@link CheckedVcdiffDecoder}s restoring the base of each channel from a
+     * {@link CheckpointStore} when the channel is first used, see {@link DecoderRegistry#checkpoint()}
+     * @param maxRetainedBytes The budget for the bases retained by all decoders
+     * @param engine The engine the decoders decode deltas with
+     * @param checkpointStore (Optional) The store the bases are checkpointed to and restored from
+     * @return The registry
+     * @throws IllegalArgumentException The provided {@code maxRetainedBytes} parameter is negative or {@code engine} is null
+     */
+    public static DecoderRegistry<CheckedVcdiffDecoder> forCheckedVcdiffDecoders(long maxRetainedBytes, final DecodingEngine engine, CheckpointStore checkpointStore) throws IllegalArgumentException {
+        if (engine == null) {
+            throw new IllegalArgumentException("engine cannot be null");
+        }
+        return new DecoderRegistry<>(maxRetainedBytes, new DecoderFactory<CheckedVcdiffDecoder>() {
+            @Override
+            public CheckedVcdiffDecoder create() {
+                return new CheckedVcdiffDecoder(engine);
+            }
+        }, checkpointStore);
+    }
+
+    /**
+     * Returns the decoder of a channel, registering a new decoder if the channel has none, and marks the channel as
+     * the most recently used. A new decoder is initialized from the channel's checkpoint if the registry has a
+     * {@link CheckpointStore} holding one, and is uninitialized otherwise.
+     * @param channelId The channel ID
+     * @return The decoder
+     * @throws IllegalArgumentException The provided {@code channelId} parameter is null
+     */
+    public synchronized D get(String channelId) throws IllegalArgumentException {
+        if (channelId == null) {
+            throw new IllegalArgumentException("channelId cannot be null");
+        }
+
+        Entry entry = this.entries.get(channelId);
+        if (entry == null) {
+            entry = new Entry(channelId, this.factory.create());
+            this.entries.put(channelId, entry);
+            if (this.checkpointStore != null) {
+                this.restore(entry);
+            }
+        } else {
+            this.touch(entry);
+        }
+        return entry.decoder;
+    }
+
+    /**
+     * Checkpoints the base of every channel to the registry's {@link CheckpointStore}. Channels whose base has been
+     * evicted keep their previous checkpoint. The decoders must not be in use while they are checkpointed.
+     * @return The number of checkpoints written, channels whose base ID has not changed since their last checkpoint
+     * being skipped
+     * @throws IOException Writing to the store failed
+     * @throws IllegalStateException The registry has no {@link CheckpointStore}
+     */
+    public synchronized int checkpoint() throws IllegalStateException, IOException {
+        if (this.checkpointStore == null) {
+            throw new IllegalStateException("The registry has no checkpoint store");
+        }
+        int written = 0;
+        for (Entry entry : this.entries.values()) {
+            if (this.checkpointStore.checkpoint(entry.channelId, (CheckedVcdiffDecoder)entry.decoder)) {
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Compresses the bases of the channels which have not been used for {@code idleMillis}, from the least recently
+     * used. Bases which do not shrink by at least an eighth are left as they are. The decoders must not be in use
+     * while their bases are compressed.
+     * @param idleMillis The time since a channel last used its decoder after which its base is compressed
+     * @return The number of bases compressed
+     * @throws IllegalArgumentException The provided {@code idleMillis} parameter is negative
+     */
+    public synchronized int compressIdleBases(long idleMillis) throws IllegalArgumentException {
+        if (idleMillis < 0) {
+            throw new IllegalArgumentException("idleMillis cannot be negative");
+        }
+
+        long now = System.nanoTime();
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        int compressed = 0;
+        // Compressing a base does not mark its channel as used, so the iteration order is not changed
+        for (Entry entry : this.entries.values()) {
+            if (now - entry.lastUsedNanos < idleNanos) {
+                // Channels are in least recently used order, so the remaining ones are not idle either
+                break;
+            }
+            if (!entry.cold && entry.retainedBytes > 0 && entry.base().compressBase()) {
+                compressed++;
+            }
+        }
+        return compressed;
+    }
+
+    /**
+     * Unregisters the decoder of a channel. The decoder keeps its base, which is no longer accounted by the registry.
+     * @param channelId The channel ID
+     * @return The decoder, or null if the channel has none
+     */
+    public synchronized D remove(String channelId) {
+        Entry entry = this.entries.remove(channelId);
+        if (entry == null) {
+            return null;
+        }
+        entry.base().setBaseListener(null);
+        this.retainedBytes -= entry.retainedBytes;
+        if (entry.cold) {
+            this.coldBytes -= entry.retainedBytes;
+        }
+        return entry.decoder;
+    }
+
+    /**
+     * @return The number of registered channels
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return The budget for the bases retained by all decoders
+     */
+    public long getMaxRetainedBytes() {
+        return this.maxRetainedBytes;
+    }
+
+    /**
+     * @return The number of bytes retained by the bases of all decoders
+     */
+    public synchronized long getRetainedBytes() {
+        return this.retainedBytes;
+    }
+
+    /**
+     * @param channelId The channel ID
+     * @return The number of bytes retained by the base of the channel's decoder, 0 if the channel has none
+     */
+    public synchronized long getRetainedBytes(String channelId) {
+        Entry entry = this.entries.get(channelId);
+        return entry == null ? 0 : entry.retainedBytes;
+    }
+
+    /**
+     * @return The number of bytes retained by uncompressed bases and the bases kept for sequence recovery
+     */
+    public synchronized long getHotBytes() {
+        return this.retainedBytes - this.coldBytes;
+    }
+
+    /**
+     * @return The number of bytes retained by the bases compressed by {@link DecoderRegistry#compressIdleBases(long)}
+     */
+    public synchronized long getColdBytes() {
+        return this.coldBytes;
+    }
+
+    /**
+     * @return The number of bases dropped to stay within the budget
+     */
+    public synchronized long getEvictionCount() {
+        return this.evictionCount;
+    }
+
+    private synchronized void baseChanged(Entry entry, int previousRetainedBytes, int retainedBytes) {
+        if (entry.cold) {
+            this.coldBytes -= previousRetainedBytes;
+        }
+        entry.cold = entry.base().isBaseCompressed();
+        if (entry.cold) {
+            this.coldBytes += retainedBytes;
+        }
+        entry.retainedBytes = retainedBytes;
+        this.retainedBytes += retainedBytes - previousRetainedBytes;
+        if (retainedBytes > 0 && !entry.cold) {
+            // A channel receiving a new base is in use; dropped bases are reported while evicting and keep their order
+            this.touch(entry);
+        }
+        if (retainedBytes > previousRetainedBytes && this.retainedBytes > this.maxRetainedBytes) {
+            this.evict(entry);
+        }
+    }
+
+    private void restore(Entry entry) {
+        try {
+            this.checkpointStore.restore(entry.channelId, (CheckedVcdiffDecoder)entry.decoder);
+        } catch (IOException e) {
+            // The channel is resynchronized with a full base, as it would be without a checkpoint
+        }
+    }
+
+    private void touch(Entry entry) {
+        entry.lastUsedNanos = System.nanoTime();
+        this.entries.remove(entry.channelId);
+        this.entries.put(entry.channelId, entry);
+    }
+
+    /**
+     * Drops the bases of the least recently used channels other than {@code growing} until the budget is met
+     */
+    private void evict(Entry growing) {
+        Iterator<Entry> iterator = this.entries.values().iterator();
+        while (this.retainedBytes > this.maxRetainedBytes && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry != growing && entry.retainedBytes > 0) {
+                this.evictionCount++;
+                // Calls back into baseChanged, which only updates the accounting
+                entry.base().clearBase();
+            }
+        }
+    }
+
+    private final class Entry implements BaseVcdiffDecoder.BaseListener {
+        private final String channelId;
+        private final D decoder;
+        private long retainedBytes;
+        private boolean cold;
+        private long lastUsedNanos;
+
+        Entry(String channelId, D decoder) {
+            this.channelId = channelId;
+            this.decoder = decoder;
+            this.lastUsedNanos = System.nanoTime();
+            this.base().setBaseListener(this);
+        }
+
+        BaseVcdiffDecoder base() {
+            return (BaseVcdiffDecoder)this.decoder;
+        }
+
+        @Override
+        public void baseChanged(int previousRetainedBytes, int retainedBytes) {
+            DecoderRegistry.this.baseChanged(this, previousRetainedBytes, retainedBytes);
+        }
+    }
+}
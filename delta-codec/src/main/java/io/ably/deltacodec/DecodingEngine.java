@@ -0,0 +1,29 @@
+package io.ably.deltacodec;
+
+/**
+ * VCDIFF decoding engines {@link VcdiffDecoder} and {@link CheckedVcdiffDecoder} can be created with
+ */
+public enum DecodingEngine {
+    /**
+     * Built-in RFC 3284 decoder working directly over byte arrays. Apart from the decoded target it does
+     * not allocate per delta. This is the default engine.
+     */
+    NATIVE {
+        @Override
+        VcdiffEngine newEngine() {
+            return new NativeVcdiffEngine();
+        }
+    },
+
+    /**
+     * General purpose streaming decoder provided by the vcdiff-java library
+     */
+    VCDIFF_JAVA {
+        @Override
+        VcdiffEngine newEngine() {
+            return new VcdiffJavaEngine();
+        }
+    };
+
+    abstract VcdiffEngine newEngine();
+}
@@ -1,31 +1,127 @@
 package io.ably.deltacodec;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
  * Contains and manages the result of delta application
  * */
 public class DeltaApplicationResult {
-    private byte[] data;
+    private final byte[] data;
+    private final int length;
+    private final boolean shared;
+    private byte[] copy;
+    private String string;
+    /* 0 until checked, then 1 for ASCII and -1 otherwise */
+    private int ascii;
 
     DeltaApplicationResult(byte[] data) {
+        this(data, data.length, false);
+    }
+
+    /**
+     * @param shared Whether {@code data} is shared with the decoder (see {@link BufferOwnership#SHARE}) and
+     *               must not be handed out as a modifiable array
+     */
+    DeltaApplicationResult(byte[] data, int length, boolean shared) {
         this.data = data;
+        this.length = length;
+        this.shared = shared;
     }
 
     /**
-     * Exports the delta application result as byte[]
+     * Exports the delta application result as byte[]. When the result is shared with the decoder
+     * (see {@link BufferOwnership#SHARE}) the array is a copy made on the first call.
      * @return byte[] representation of this delta application result
      */
     public byte[] asByteArray() {
-        return this.data;
+        if (!this.shared) {
+            return this.data;
+        }
+        if (this.copy == null) {
+            this.copy = Arrays.copyOf(this.data, this.length);
+        }
+        return this.copy;
+    }
+
+    /**
+     * Exposes the delta application result as a read-only {@link ByteBuffer} without copying it
+     * @return A read-only view of this delta application result
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(this.data, 0, this.length).asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the delta application result to the {@code out} stream without copying it
+     * @param out The stream to write to
+     * @throws IOException Writing to the stream failed
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(this.data, 0, this.length);
+    }
+
+    /**
+     * @return The length of the delta application result in bytes
+     */
+    public int getLength() {
+        return this.length;
     }
 
     /**
      * Exports the delta application result as string assuming the bytes
-     * in the result represent an UTF-8 encoded string
+     * in the result represent an UTF-8 encoded string. The string is decoded on the first call and cached, and
+     * ASCII results are decoded without going through the UTF-8 decoder.
      * @return The UTF-8 string representation of this delta application result
      */
     public String asUtf8String() {
-        return new String(this.data, StandardCharsets.UTF_8);
+        if (this.string == null) {
+            this.string = new String(this.data, 0, this.length, this.isAscii() ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+        }
+        return this.string;
+    }
+
+    /**
+     * Exposes the delta application result as UTF-8 text without necessarily building a {@link String}. ASCII
+     * results are exposed as a view over the bytes; other results are decoded like {@link #asUtf8String()}.
+     * When the result is shared with the decoder (see {@link BufferOwnership#SHARE}) the view reads the decoder's
+     * base, which is never recycled, so it stays valid after further deltas are applied.
+     * @return The UTF-8 text of this delta application result
+     */
+    public CharSequence asCharSequence() {
+        if (this.string == null && this.isAscii()) {
+            return new AsciiCharSequence(this.data, 0, this.length);
+        }
+        return this.asUtf8String();
+    }
+
+    /**
+     * Opens a {@link Reader} decoding the delta application result as UTF-8 while it is read, e.g. for streaming
+     * JSON parsers. A string already built by {@link #asUtf8String()} is read instead of decoding the bytes again.
+     * @return A reader over the UTF-8 text of this delta application result
+     */
+    public Reader asReader() {
+        if (this.string != null) {
+            return new StringReader(this.string);
+        }
+        return new InputStreamReader(new ByteArrayInputStream(this.data, 0, this.length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Whether every byte of the delta application result is ASCII, in which case its UTF-8 and Latin-1
+     * decodings are the same. The check runs once and is cached.
+     */
+    public boolean isAscii() {
+        if (this.ascii == 0) {
+            this.ascii = ByteArrays.isAscii(this.data, 0, this.length) ? 1 : -1;
+        }
+        return this.ascii > 0;
     }
 }
@@ -0,0 +1,480 @@
+package io.ably.deltacodec;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Merges a chain of consecutive VCDIFF deltas into a single equivalent delta.
+ *
+ * <p>
+ * The first delta of the chain applies to a base and every following delta applies to the target of the previous
+ * one. The composed delta applies to the same base and produces the target of the last delta. The targets in between
+ * are never materialized: each one is described as a list of pieces, which are either ranges of the base or literal
+ * bytes, and the instructions of the next delta are mapped onto the pieces of the previous target. The base itself
+ * is not needed, and the work done per delta depends on its instructions rather than on the length of its target.
+ *
+ * <p>
+ * The composed delta uses the default code table and a single window. A composer is not thread-safe, but can be
+ * reused; its buffers are kept across compositions.
+ */
+public class DeltaComposer {
+    private static final byte BASE = 0;
+    private static final byte ADD = 1;
+    private static final byte RUN = 2;
+
+    private final Pieces first = new Pieces();
+    private final Pieces second = new Pieces();
+    private final VcdiffWindowWriter writer = new VcdiffWindowWriter();
+    private int[] near = new int[VcdiffFormat.DEFAULT_NEAR_CACHE_SIZE];
+    private int[] same = new int[VcdiffFormat.DEFAULT_SAME_CACHE_SIZE * 256];
+
+    /* Per delta state */
+    private VcdiffCodeTable codeTable;
+    private int nearSize;
+    private int sameSize;
+    private byte[] delta;
+    /* The pieces of the previous target, or null if the delta applies to the base */
+    private Pieces source;
+    private Pieces target;
+
+    /* Per window state; the segment is null for a source segment of the base */
+    private Pieces segment;
+    private int segmentOffset;
+    private int segmentLength;
+    private int windowStart;
+    private int windowEnd;
+    private int dataPosition;
+    private int dataEnd;
+    private int addressPosition;
+    private int addressEnd;
+    private int nextNearSlot;
+
+    /**
+     * Composes a chain of deltas into a single delta
+     * @param deltas The deltas in the order they would be applied, the first one applying to the base
+     * @return The composed delta. A chain of a single delta is returned as it is.
+     * @throws IOException One of the deltas is malformed or does not apply to the target of the previous one
+     * @throws IllegalArgumentException The provided {@code deltas} parameter is null or empty, or one of the deltas
+     * is not a valid VCDIFF
+     */
+    public byte[] compose(List<byte[]> deltas) throws IllegalArgumentException, IOException {
+        if (deltas == null || deltas.isEmpty()) {
+            throw new IllegalArgumentException("deltas cannot be null or empty");
+        }
+        for (byte[] delta : deltas) {
+            if (delta == null || !BaseVcdiffDecoder.isDelta(delta)) {
+                throw new IllegalArgumentException("The provided delta is not a valid VCDIFF delta");
+            }
+        }
+        if (deltas.size() == 1) {
+            return deltas.get(0);
+        }
+
+        try {
+            Pieces source = null;
+            for (byte[] delta : deltas) {
+                Pieces target = source == this.first ? this.second : this.first;
+                target.clear();
+                this.apply(delta, source, target);
+                source = target;
+            }
+            return this.write(source);
+        } finally {
+            this.delta = null;
+            this.source = null;
+            this.target = null;
+            this.segment = null;
+            this.codeTable = null;
+        }
+    }
+
+    private byte[] write(Pieces pieces) {
+        int sourceLength = 0;
+        for (int i = 0; i < pieces.count; i++) {
+            if (pieces.kinds[i] == BASE) {
+                sourceLength = Math.max(sourceLength, pieces.offsets[i] + pieces.length(i));
+            }
+        }
+        this.writer.start(sourceLength);
+        byte[] literals = pieces.literals.array();
+        for (int i = 0; i < pieces.count; i++) {
+            int offset = pieces.offsets[i];
+            int length = pieces.length(i);
+            switch (pieces.kinds[i]) {
+                case BASE:
+                    this.writer.copy(offset, length);
+                    break;
+                case ADD:
+                    this.writer.add(literals, offset, length);
+                    break;
+                default:
+                    this.writer.run(literals[offset], length);
+                    break;
+            }
+        }
+        TargetBuffer output = new TargetBuffer(null);
+        VcdiffWindowWriter.writeHeader(output);
+        this.writer.finish(output);
+        return Arrays.copyOf(output.array(), output.length());
+    }
+
+    private void apply(byte[] delta, Pieces source, Pieces target) throws IOException {
+        int end = delta.length;
+        int position = this.readFileHeader(delta);
+        this.delta = delta;
+        this.source = source;
+        this.target = target;
+        while (position < end) {
+            position = this.applyWindow(position, end);
+        }
+    }
+
+    private int readFileHeader(byte[] delta) throws IOException {
+        int end = delta.length;
+        int position = VcdiffFormat.MAGIC_LENGTH;
+        int indicator = delta[position++] & 0xff;
+        if ((indicator & VcdiffFormat.VCD_DECOMPRESS) != 0) {
+            throw new IOException("Unsupported VCDIFF delta - secondary compression is not supported");
+        }
+        if ((indicator & ~VcdiffFormat.VCD_CODETABLE) != 0) {
+            throw VcdiffFormat.invalid("unknown header indicator bits");
+        }
+        if ((indicator & VcdiffFormat.VCD_CODETABLE) == 0) {
+            this.useCodeTable(VcdiffCodeTable.DEFAULT, VcdiffFormat.DEFAULT_NEAR_CACHE_SIZE, VcdiffFormat.DEFAULT_SAME_CACHE_SIZE);
+            return position;
+        }
+        if (end - position < 2) {
+            throw VcdiffFormat.invalid("unexpected end of data");
+        }
+        int nearSize = delta[position++] & 0xff;
+        int sameSize = delta[position++] & 0xff;
+        long packed = VcdiffFormat.readVarint(delta, position, end);
+        position = VcdiffFormat.next(packed);
+        int length = VcdiffFormat.value(packed);
+        if (length > end - position) {
+            throw VcdiffFormat.invalid("custom code table exceeds the end of the delta");
+        }
+        byte[] encodedTable = Arrays.copyOfRange(delta, position, position + length);
+        this.useCodeTable(NativeVcdiffEngine.readCodeTable(encodedTable, nearSize, sameSize), nearSize, sameSize);
+        return position + length;
+    }
+
+    private void useCodeTable(VcdiffCodeTable codeTable, int nearSize, int sameSize) {
+        this.codeTable = codeTable;
+        this.nearSize = nearSize;
+        this.sameSize = sameSize;
+        if (this.near.length < nearSize) {
+            this.near = new int[nearSize];
+        }
+        if (this.same.length < sameSize * 256) {
+            this.same = new int[sameSize * 256];
+        }
+    }
+
+    private int applyWindow(int position, int end) throws IOException {
+        byte[] delta = this.delta;
+        int indicator = delta[position++] & 0xff;
+        if ((indicator & ~(VcdiffFormat.VCD_SOURCE | VcdiffFormat.VCD_TARGET)) != 0 ||
+                indicator == (VcdiffFormat.VCD_SOURCE | VcdiffFormat.VCD_TARGET)) {
+            throw VcdiffFormat.invalid("unknown window indicator");
+        }
+
+        this.segment = null;
+        this.segmentOffset = 0;
+        this.segmentLength = 0;
+        if (indicator != 0) {
+            long packed = VcdiffFormat.readVarint(delta, position, end);
+            position = VcdiffFormat.next(packed);
+            int length = VcdiffFormat.value(packed);
+            packed = VcdiffFormat.readVarint(delta, position, end);
+            position = VcdiffFormat.next(packed);
+            int offset = VcdiffFormat.value(packed);
+            Pieces segment = (indicator & VcdiffFormat.VCD_SOURCE) != 0 ? this.source : this.target;
+            // The length of the base is not known, so segments of the base are checked when the result is applied
+            if (segment != null && (length > segment.length || offset > segment.length - length)) {
+                throw VcdiffFormat.invalid("source segment is out of bounds");
+            }
+            if (segment == null && length > Integer.MAX_VALUE - offset) {
+                throw VcdiffFormat.invalid("source segment is out of bounds");
+            }
+            this.segment = segment;
+            this.segmentOffset = offset;
+            this.segmentLength = length;
+        }
+
+        long packed = VcdiffFormat.readVarint(delta, position, end);
+        position = VcdiffFormat.next(packed);
+        if (VcdiffFormat.value(packed) > end - position) {
+            throw VcdiffFormat.invalid("window exceeds the end of the delta");
+        }
+        int windowDataEnd = position + VcdiffFormat.value(packed);
+        packed = VcdiffFormat.readVarint(delta, position, windowDataEnd);
+        position = VcdiffFormat.next(packed);
+        int targetLength = VcdiffFormat.value(packed);
+        if (position >= windowDataEnd) {
+            throw VcdiffFormat.invalid("unexpected end of data");
+        }
+        if (delta[position++] != 0) {
+            throw new IOException("Unsupported VCDIFF delta - compressed sections are not supported");
+        }
+        packed = VcdiffFormat.readVarint(delta, position, windowDataEnd);
+        position = VcdiffFormat.next(packed);
+        int dataLength = VcdiffFormat.value(packed);
+        packed = VcdiffFormat.readVarint(delta, position, windowDataEnd);
+        position = VcdiffFormat.next(packed);
+        int instructionsLength = VcdiffFormat.value(packed);
+        packed = VcdiffFormat.readVarint(delta, position, windowDataEnd);
+        position = VcdiffFormat.next(packed);
+        int addressesLength = VcdiffFormat.value(packed);
+        if ((long)dataLength + instructionsLength + addressesLength != windowDataEnd - position) {
+            throw VcdiffFormat.invalid("section lengths do not match the window length");
+        }
+        if (targetLength > Integer.MAX_VALUE - this.target.length) {
+            throw VcdiffFormat.invalid("target is too large");
+        }
+
+        this.dataPosition = position;
+        this.dataEnd = position + dataLength;
+        int instructionPosition = this.dataEnd;
+        int instructionsEnd = instructionPosition + instructionsLength;
+        this.addressPosition = instructionsEnd;
+        this.addressEnd = windowDataEnd;
+        this.windowStart = this.target.length;
+        this.windowEnd = this.windowStart + targetLength;
+        this.resetAddressCache();
+
+        VcdiffCodeTable codeTable = this.codeTable;
+        while (instructionPosition < instructionsEnd) {
+            int code = delta[instructionPosition++] & 0xff;
+            int inst = codeTable.inst1[code];
+            if (inst != VcdiffFormat.NOOP) {
+                int size = codeTable.size1[code] & 0xff;
+                if (size == 0) {
+                    packed = VcdiffFormat.readVarint(delta, instructionPosition, instructionsEnd);
+                    instructionPosition = VcdiffFormat.next(packed);
+                    size = VcdiffFormat.value(packed);
+                }
+                this.execute(inst, size, codeTable.mode1[code] & 0xff);
+            }
+            inst = codeTable.inst2[code];
+            if (inst != VcdiffFormat.NOOP) {
+                int size = codeTable.size2[code] & 0xff;
+                if (size == 0) {
+                    packed = VcdiffFormat.readVarint(delta, instructionPosition, instructionsEnd);
+                    instructionPosition = VcdiffFormat.next(packed);
+                    size = VcdiffFormat.value(packed);
+                }
+                this.execute(inst, size, codeTable.mode2[code] & 0xff);
+            }
+        }
+
+        if (this.target.length != this.windowEnd || this.dataPosition != this.dataEnd || this.addressPosition != this.addressEnd) {
+            throw VcdiffFormat.invalid("window sections were not fully consumed");
+        }
+        return windowDataEnd;
+    }
+
+    private void execute(int inst, int size, int mode) throws IOException {
+        if (size > this.windowEnd - this.target.length) {
+            throw VcdiffFormat.invalid("instruction exceeds the target window");
+        }
+        switch (inst) {
+            case VcdiffFormat.ADD:
+                if (size > this.dataEnd - this.dataPosition) {
+                    throw VcdiffFormat.invalid("ADD exceeds the data section");
+                }
+                this.target.add(this.delta, this.dataPosition, size);
+                this.dataPosition += size;
+                break;
+            case VcdiffFormat.RUN:
+                if (this.dataPosition >= this.dataEnd) {
+                    throw VcdiffFormat.invalid("RUN exceeds the data section");
+                }
+                this.target.run(this.delta[this.dataPosition++], size);
+                break;
+            case VcdiffFormat.COPY:
+                this.copy(this.decodeAddress(mode), size);
+                break;
+            default:
+                throw VcdiffFormat.invalid("unknown instruction");
+        }
+    }
+
+    /**
+     * Maps a COPY from the combined address space made of the source segment followed by the target window onto
+     * the pieces it copies
+     */
+    private void copy(int address, int size) {
+        Pieces target = this.target;
+        if (address < this.segmentLength) {
+            int length = Math.min(size, this.segmentLength - address);
+            if (this.segment == null) {
+                target.base(this.segmentOffset + address, length);
+            } else {
+                target.copy(this.segment, this.segmentOffset + address, length);
+            }
+            size -= length;
+            address = this.segmentLength;
+        }
+        // Overlapping target copies are periodic, so they are mapped in non-overlapping chunks that double in length
+        int from = this.windowStart + address - this.segmentLength;
+        while (size > 0) {
+            int length = Math.min(size, target.length - from);
+            target.copy(target, from, length);
+            size -= length;
+        }
+    }
+
+    private int decodeAddress(int mode) throws IOException {
+        int here = this.segmentLength + this.target.length - this.windowStart;
+        int address;
+        if (mode == VcdiffFormat.MODE_SELF) {
+            address = this.readAddressVarint();
+        } else if (mode == VcdiffFormat.MODE_HERE) {
+            address = here - this.readAddressVarint();
+        } else if (mode - 2 < this.nearSize) {
+            address = this.near[mode - 2] + this.readAddressVarint();
+        } else {
+            if (this.addressPosition >= this.addressEnd) {
+                throw VcdiffFormat.invalid("COPY exceeds the address section");
+            }
+            int m = mode - 2 - this.nearSize;
+            address = this.same[m * 256 + (this.delta[this.addressPosition++] & 0xff)];
+        }
+        if (address < 0 || address >= here) {
+            throw VcdiffFormat.invalid("COPY address is out of bounds");
+        }
+        if (this.nearSize > 0) {
+            this.near[this.nextNearSlot] = address;
+            this.nextNearSlot = (this.nextNearSlot + 1) % this.nearSize;
+        }
+        if (this.sameSize > 0) {
+            this.same[address % (this.sameSize * 256)] = address;
+        }
+        return address;
+    }
+
+    private int readAddressVarint() throws IOException {
+        long packed = VcdiffFormat.readVarint(this.delta, this.addressPosition, this.addressEnd);
+        this.addressPosition = VcdiffFormat.next(packed);
+        return VcdiffFormat.value(packed);
+    }
+
+    private void resetAddressCache() {
+        this.nextNearSlot = 0;
+        Arrays.fill(this.near, 0, this.nearSize, 0);
+        Arrays.fill(this.same, 0, this.sameSize * 256, 0);
+    }
+
+    /**
+     * A target described as consecutive pieces, each a range of the base, literal bytes or a run of one byte.
+     * Literal bytes are kept in a buffer owned by the pieces; the offset of a run is that of its byte.
+     */
+    private static final class Pieces {
+        private int[] starts = new int[64];
+        private int[] offsets = new int[64];
+        private byte[] kinds = new byte[64];
+        private int count;
+        private int length;
+        private final TargetBuffer literals = new TargetBuffer(null);
+
+        void clear() {
+            this.count = 0;
+            this.length = 0;
+            this.literals.setLength(0);
+        }
+
+        int length(int piece) {
+            return (piece + 1 < this.count ? this.starts[piece + 1] : this.length) - this.starts[piece];
+        }
+
+        void base(int offset, int length) {
+            this.append(BASE, offset, length);
+        }
+
+        void add(byte[] bytes, int offset, int length) {
+            int literalOffset = this.literals.length();
+            this.literals.write(bytes, offset, length);
+            this.append(ADD, literalOffset, length);
+        }
+
+        void run(byte value, int length) {
+            int last = this.count - 1;
+            if (last >= 0 && this.kinds[last] == RUN && this.literals.array()[this.offsets[last]] == value) {
+                this.length += length;
+                return;
+            }
+            int literalOffset = this.literals.length();
+            this.literals.write(value);
+            this.append(RUN, literalOffset, length);
+        }
+
+        /**
+         * Appends the pieces covering {@code length} bytes of {@code from} starting at {@code position}. The range
+         * must lie within {@code from}, which may be this instance.
+         */
+        void copy(Pieces from, int position, int length) {
+            int piece = from.find(position);
+            while (length > 0) {
+                int skip = position - from.starts[piece];
+                int chunk = Math.min(length, from.length(piece) - skip);
+                int offset = from.offsets[piece];
+                switch (from.kinds[piece]) {
+                    case BASE:
+                        this.base(offset + skip, chunk);
+                        break;
+                    case ADD:
+                        this.add(from.literals.array(), offset + skip, chunk);
+                        break;
+                    default:
+                        this.run(from.literals.array()[offset], chunk);
+                        break;
+                }
+                position += chunk;
+                length -= chunk;
+                piece++;
+            }
+        }
+
+        /**
+         * @return The index of the piece containing {@code position}
+         */
+        private int find(int position) {
+            int low = 0;
+            int high = this.count - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (this.starts[middle] <= position) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+
+        private void append(byte kind, int offset, int length) {
+            if (length == 0) {
+                return;
+            }
+            int last = this.count - 1;
+            // Contiguous ranges of the base or of the literals are merged into one piece
+            if (last >= 0 && this.kinds[last] == kind && kind != RUN && this.offsets[last] + this.length(last) == offset) {
+                this.length += length;
+                return;
+            }
+            if (this.count == this.starts.length) {
+                int capacity = 2 * this.count;
+                this.starts = Arrays.copyOf(this.starts, capacity);
+                this.offsets = Arrays.copyOf(this.offsets, capacity);
+                this.kinds = Arrays.copyOf(this.kinds, capacity);
+            }
+            this.starts[this.count] = this.length;
+            this.offsets[this.count] = offset;
+            this.kinds[this.count] = kind;
+            this.count++;
+            this.length += length;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package io.ably.deltacodec;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Thread safe {@link BaseStorage} keeping bases off the Java heap, so that many long lived bases do not add to the
+ * old generation the garbage collector has to scan and compact.
+ *
+ * <p>
+ * Memory is allocated from the operating system in direct slabs, which are cut into chunks of a power of two size
+ * class; a base may therefore use up to twice its length. Released chunks are reused for later bases of the same
+ * size class and slabs are never freed. Bases longer than a slab get a direct buffer of their own, which is left to
+ * the garbage collector when released.
+ */
+public class DirectBaseStorage implements BaseStorage {
+    private static final int MIN_SIZE_CLASS = 6;
+    private static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+    private final int slabSizeClass;
+    private final ArrayDeque<ByteBuffer>[] sizeClasses;
+    private long allocatedBytes;
+    private long usedBytes;
+
+    /**
+     * Creates a storage allocating 1 MiB slabs
+     */
+    public DirectBaseStorage() {
+        this(DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * Creates a storage
+     * @param slabSize The size of the slabs allocated from the operating system, rounded up to a power of two
+     * @throws IllegalArgumentException The provided {@code slabSize} is not positive or larger than 1 GiB
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public DirectBaseStorage(int slabSize) throws IllegalArgumentException {
+        if (slabSize <= 0 || slabSize > 1 << 30) {
+            throw new IllegalArgumentException("slabSize must be between 1 and 2^30");
+        }
+        this.slabSizeClass = sizeClassOf(slabSize);
+        this.sizeClasses = new ArrayDeque[this.slabSizeClass + 1];
+        for (int i = MIN_SIZE_CLASS; i <= this.slabSizeClass; i++) {
+            this.sizeClasses[i] = new ArrayDeque<>();
+        }
+    }
+
+    @Override
+    public ByteBuffer allocate(int length) {
+        int sizeClass = sizeClassOf(length);
+        ByteBuffer buffer;
+        synchronized (this) {
+            if (sizeClass > this.slabSizeClass) {
+                buffer = ByteBuffer.allocateDirect(length);
+                this.allocatedBytes += length;
+            } else {
+                ArrayDeque<ByteBuffer> chunks = this.sizeClasses[sizeClass];
+                if (chunks.isEmpty()) {
+                    this.allocateSlab(sizeClass);
+                }
+                buffer = chunks.pollLast();
+            }
+            this.usedBytes += buffer.capacity();
+        }
+        ((Buffer)buffer).clear();
+        ((Buffer)buffer).limit(length);
+        return buffer;
+    }
+
+    @Override
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        int sizeClass = sizeClassOf(capacity);
+        synchronized (this) {
+            this.usedBytes -= capacity;
+            if (sizeClass > this.slabSizeClass) {
+                this.allocatedBytes -= capacity;
+            } else {
+                this.sizeClasses[sizeClass].addLast(buffer);
+            }
+        }
+    }
+
+    /**
+     * @return The number of off-heap bytes allocated by the storage, including unused chunks
+     */
+    public synchronized long getAllocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+    /**
+     * @return The number of off-heap bytes in chunks currently holding bases
+     */
+    public synchronized long getUsedBytes() {
+        return this.usedBytes;
+    }
+
+    private void allocateSlab(int sizeClass) {
+        ByteBuffer slab = ByteBuffer.allocateDirect(1 << this.slabSizeClass);
+        this.allocatedBytes += slab.capacity();
+        int chunkSize = 1 << sizeClass;
+        for (int position = 0; position < slab.capacity(); position += chunkSize) {
+            ((Buffer)slab).limit(position + chunkSize);
+            ((Buffer)slab).position(position);
+            this.sizeClasses[sizeClass].addLast(slab.slice());
+        }
+    }
+
+    private static int sizeClassOf(int length) {
+        if (length <= 1 << MIN_SIZE_CLASS) {
+            return MIN_SIZE_CLASS;
+        }
+        return 32 - Integer.numberOfLeadingZeros(length - 1);
+    }
+}
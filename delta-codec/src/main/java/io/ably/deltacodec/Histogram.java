@@ -0,0 +1,125 @@
+package io.ably.deltacodec;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative long values, such as latencies in nanoseconds or sizes in bytes, with a fixed memory
+ * footprint. Like an HDR histogram, values are counted in buckets whose width grows with the magnitude of the
+ * values: values below 64 are counted exactly, larger values within 1/32 of their magnitude, so percentiles are
+ * reported within about 3% whatever the range of the values.
+ *
+ * <p>
+ * Values can be recorded from several threads at once. Reads while values are being recorded may not reflect the
+ * latest values.
+ */
+public class Histogram {
+    /* Values below 2^SUB_BUCKET_BITS have a bucket each; each larger power of two is split into 2^(SUB_BUCKET_BITS-1) buckets */
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT >> 1;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (64 - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value
+     * @param value The value to record, negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        this.counts.incrementAndGet(bucketIndex(value));
+        this.count.incrementAndGet();
+        this.total.addAndGet(value);
+        long current;
+        while ((current = this.max.get()) < value && !this.max.compareAndSet(current, value)) {
+            // Retry until the maximum is at least this value
+        }
+    }
+
+    /**
+     * @return The number of recorded values
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * @return The largest recorded value, 0 if no value has been recorded
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * @return The mean of the recorded values, 0 if no value has been recorded
+     */
+    public double getMean() {
+        long count = this.count.get();
+        return count == 0 ? 0 : (double)this.total.get() / count;
+    }
+
+    /**
+     * Returns the value at or below which the given percentage of the recorded values lie. The value is the upper
+     * bound of the bucket it was counted in, capped by the largest recorded value.
+     * @param percentile The percentile, between 0 and 100
+     * @return The value at the percentile, 0 if no value has been recorded
+     * @throws IllegalArgumentException The provided {@code percentile} is not between 0 and 100
+     */
+    public long getValueAtPercentile(double percentile) throws IllegalArgumentException {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        long count = this.count.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueInBucket(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    /**
+     * Drops all recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            this.counts.set(i, 0);
+        }
+        this.count.set(0);
+        this.total.set(0);
+        this.max.set(0);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int)value;
+        }
+        // The shift keeps the SUB_BUCKET_BITS most significant bits of the value, starting with a one
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int)(value >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + (subBucket - HALF_SUB_BUCKET_COUNT);
+    }
+
+    static long highestValueInBucket(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / HALF_SUB_BUCKET_COUNT + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        long highest = ((subBucket + 1) << shift) - 1;
+        // Buckets past the one ending at Long.MAX_VALUE are never used and would overflow
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+}
@@ -0,0 +1,101 @@
+package io.ably.deltacodec;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link DecoderMetrics} aggregating delta applications into {@link Histogram}s of decode latencies and of delta,
+ * target and base lengths, and counting failures by kind. Setting one instance per decoder gives the cost of each
+ * channel; an instance can also be shared by several decoders, including decoders used from different threads.
+ */
+public class HistogramDecoderMetrics implements DecoderMetrics {
+    private final Histogram decodeNanos = new Histogram();
+    private final Histogram deltaLengths = new Histogram();
+    private final Histogram targetLengths = new Histogram();
+    private final Histogram baseLengths = new Histogram();
+    private final AtomicLong totalDeltaLength = new AtomicLong();
+    private final AtomicLong totalTargetLength = new AtomicLong();
+    private final AtomicLongArray failures = new AtomicLongArray(Failure.values().length);
+
+    @Override
+    public void deltaApplied(int deltaLength, int targetLength, int baseLength, long decodeNanos) {
+        this.decodeNanos.record(decodeNanos);
+        this.deltaLengths.record(deltaLength);
+        this.targetLengths.record(targetLength);
+        this.baseLengths.record(baseLength);
+        this.totalDeltaLength.addAndGet(deltaLength);
+        this.totalTargetLength.addAndGet(targetLength);
+    }
+
+    @Override
+    public void deltaFailed(Failure failure) {
+        this.failures.incrementAndGet(failure.ordinal());
+    }
+
+    /**
+     * @return The number of deltas applied
+     */
+    public long getAppliedCount() {
+        return this.decodeNanos.getCount();
+    }
+
+    /**
+     * @param failure The kind of failure
+     * @return The number of delta applications that failed with {@code failure}
+     */
+    public long getFailureCount(Failure failure) {
+        return this.failures.get(failure.ordinal());
+    }
+
+    /**
+     * @return The histogram of the time spent decoding each delta, in nanoseconds
+     */
+    public Histogram getDecodeNanos() {
+        return this.decodeNanos;
+    }
+
+    /**
+     * @return The histogram of the binary delta lengths, in bytes
+     */
+    public Histogram getDeltaLengths() {
+        return this.deltaLengths;
+    }
+
+    /**
+     * @return The histogram of the delta application result lengths, in bytes
+     */
+    public Histogram getTargetLengths() {
+        return this.targetLengths;
+    }
+
+    /**
+     * @return The histogram of the lengths of the bases deltas were applied to, in bytes
+     */
+    public Histogram getBaseLengths() {
+        return this.baseLengths;
+    }
+
+    /**
+     * @return The total length of the results divided by the total length of the deltas, i.e. how many result bytes
+     * each delta byte stands for, or 0 if no delta has been applied
+     */
+    public double getCompressionRatio() {
+        long totalDeltaLength = this.totalDeltaLength.get();
+        return totalDeltaLength == 0 ? 0 : (double)this.totalTargetLength.get() / totalDeltaLength;
+    }
+
+    /**
+     * Drops all recorded applications and failures
+     */
+    public void reset() {
+        this.decodeNanos.reset();
+        this.deltaLengths.reset();
+        this.targetLengths.reset();
+        this.baseLengths.reset();
+        this.totalDeltaLength.set(0);
+        this.totalTargetLength.set(0);
+        for (int i = 0; i < this.failures.length(); i++) {
+            this.failures.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,632 @@
+package io.ably.deltacodec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Built-in RFC 3284 VCDIFF decoder.
+ *
+ * <p>
+ * Windows, instructions and addresses are parsed directly from the delta array and executed with
+ * {@link System#arraycopy} and {@link Arrays#fill} straight into the target buffer. The address cache is owned
+ * by the engine and reused, so decoding a delta that uses the default code table does not allocate anything.
+ *
+ * <p>
+ * Streamed deltas are read one window at a time into a reusable window buffer, and each window is written out
+ * as soon as it has been decoded.
+ *
+ * <p>
+ * With a {@link ForkJoinPool}, large targets made of several windows are decoded in parallel. A window whose source
+ * segment is taken from the source, or which has none, only copies from the source and from its own target window,
+ * so the output offset of each window is worked out from the window headers and consecutive independent windows are
+ * decoded on the pool. A window whose source segment is taken from the target (VCD_TARGET) waits for all the windows
+ * before it and is decoded on the calling thread.
+ */
+final class NativeVcdiffEngine implements VcdiffEngine {
+    /* Targets shorter than this are always decoded on the calling thread */
+    static final int PARALLEL_THRESHOLD = 1 << 20;
+    /* Streamed windows are read this many bytes at a time at most, so the window buffer grows with the data read */
+    private static final int WINDOW_READ_LENGTH = 1 << 16;
+
+    private ForkJoinPool pool;
+    private int[] near = new int[VcdiffFormat.DEFAULT_NEAR_CACHE_SIZE];
+    private int[] same = new int[VcdiffFormat.DEFAULT_SAME_CACHE_SIZE * 256];
+
+    /* Per delta state */
+    private VcdiffCodeTable codeTable;
+    private int nearSize;
+    private int sameSize;
+    /* The source array, or null if the source is read through sourceView */
+    private byte[] source;
+    private int sourceOffset;
+    private ByteBuffer sourceView;
+    private int sourceLength;
+    private byte[] delta;
+    private byte[] target;
+    private int targetLength;
+    private int targetPosition;
+
+    /* Per window state; the segment array is null for a source segment read through sourceView */
+    private byte[] segment;
+    private int segmentOffset;
+    private int segmentLength;
+    private int windowStart;
+    private int windowEnd;
+    private int dataPosition;
+    private int dataEnd;
+    private int addressPosition;
+    private int addressEnd;
+    private int nextNearSlot;
+
+    /* Window buffer for streamed deltas */
+    private byte[] window;
+    private int windowLength;
+    private int windowBodyStart;
+
+    @Override
+    public void decode(ByteBuffer source, byte[] delta, int deltaOffset, int deltaLength, byte[] target, int targetLength) throws IOException {
+        int end = deltaOffset + deltaLength;
+        try {
+            int position = this.readFileHeader(delta, deltaOffset, end);
+            this.useSource(source);
+            this.delta = delta;
+            this.target = target;
+            this.targetLength = targetLength;
+            this.targetPosition = 0;
+            if (this.pool != null && targetLength >= PARALLEL_THRESHOLD) {
+                this.decodeWindowsInParallel(position, end);
+            } else {
+                while (position < end) {
+                    position = this.decodeWindow(position, end);
+                }
+            }
+            if (this.targetPosition != targetLength) {
+                throw VcdiffFormat.invalid("target is shorter than expected");
+            }
+        } finally {
+            this.source = null;
+            this.sourceView = null;
+            this.delta = null;
+            this.target = null;
+            this.segment = null;
+            this.codeTable = null;
+        }
+    }
+
+    @Override
+    public void decode(ByteBuffer source, byte[] header, InputStream delta, OutputStream output, TargetBuffer target) throws IOException {
+        try {
+            this.readStreamFileHeader(header, delta);
+            this.useSource(source);
+            this.targetPosition = 0;
+            while (this.readStreamWindow(delta)) {
+                int bodyStart = this.windowBodyStart;
+                int windowTargetLength = VcdiffFormat.value(VcdiffFormat.readVarint(this.window, bodyStart, this.windowLength));
+                int start = this.targetPosition;
+                if (windowTargetLength > VcdiffFormat.MAX_TARGET_LENGTH - start) {
+                    throw VcdiffFormat.targetTooLarge();
+                }
+                target.setLength(start);
+                target.ensureCapacity(start + windowTargetLength);
+                this.delta = this.window;
+                this.target = target.array();
+                this.targetLength = start + windowTargetLength;
+                this.decodeWindow(0, this.windowLength);
+                output.write(this.target, start, windowTargetLength);
+            }
+            target.setLength(this.targetPosition);
+        } finally {
+            this.source = null;
+            this.sourceView = null;
+            this.delta = null;
+            this.target = null;
+            this.segment = null;
+            this.codeTable = null;
+        }
+    }
+
+    @Override
+    public void setForkJoinPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Decodes runs of consecutive independent windows on the pool, and windows depending on the target decoded so far
+     * on the calling thread
+     */
+    private void decodeWindowsInParallel(int position, int end) throws IOException {
+        List<WindowTask> batch = new ArrayList<>();
+        int batchEnd = this.targetPosition;
+        while (position < end) {
+            if ((this.delta[position] & VcdiffFormat.VCD_TARGET) != 0) {
+                this.decodeBatch(batch, end, batchEnd);
+                position = this.decodeWindow(position, end);
+                batchEnd = this.targetPosition;
+                continue;
+            }
+            long packed = this.scanWindow(position, end);
+            int windowTargetLength = VcdiffFormat.value(packed);
+            if (windowTargetLength > this.targetLength - batchEnd) {
+                throw VcdiffFormat.invalid("target window exceeds the target length");
+            }
+            batch.add(new WindowTask(this, position, end, batchEnd, windowTargetLength));
+            batchEnd += windowTargetLength;
+            position = VcdiffFormat.next(packed);
+        }
+        this.decodeBatch(batch, end, batchEnd);
+    }
+
+    private void decodeBatch(List<WindowTask> batch, int end, int batchEnd) throws IOException {
+        if (batch.size() == 1) {
+            this.decodeWindow(batch.get(0).position, end);
+        } else if (batch.size() > 1) {
+            this.pool.invoke(new BatchTask(batch));
+            for (WindowTask task : batch) {
+                if (task.failure != null) {
+                    throw task.failure;
+                }
+            }
+            this.targetPosition = batchEnd;
+        }
+        batch.clear();
+    }
+
+    /**
+     * Reads the header of the window at {@code position} without decoding it
+     * @return The position of the next window and the length of the target window, packed like
+     * {@link VcdiffFormat#readVarint(byte[], int, int)}
+     */
+    private long scanWindow(int position, int end) throws IOException {
+        byte[] delta = this.delta;
+        int indicator = delta[position++] & 0xff;
+        if (indicator != 0) {
+            position = VcdiffFormat.next(VcdiffFormat.readVarint(delta, position, end));
+            position = VcdiffFormat.next(VcdiffFormat.readVarint(delta, position, end));
+        }
+        long packed = VcdiffFormat.readVarint(delta, position, end);
+        position = VcdiffFormat.next(packed);
+        if (VcdiffFormat.value(packed) > end - position) {
+            throw VcdiffFormat.invalid("window exceeds the end of the delta");
+        }
+        int next = position + VcdiffFormat.value(packed);
+        int targetLength = VcdiffFormat.value(VcdiffFormat.readVarint(delta, position, next));
+        return ((long)next << 32) | targetLength;
+    }
+
+    /**
+     * Creates an engine decoding a window of the current delta into its own range of the target
+     */
+    private NativeVcdiffEngine forkWindow(int targetOffset, int targetLength) {
+        NativeVcdiffEngine engine = new NativeVcdiffEngine();
+        engine.useCodeTable(this.codeTable, this.nearSize, this.sameSize);
+        engine.source = this.source;
+        engine.sourceOffset = this.sourceOffset;
+        // The view's position is moved for every copy, so each engine needs its own
+        engine.sourceView = this.sourceView == null ? null : this.sourceView.duplicate();
+        engine.sourceLength = this.sourceLength;
+        engine.delta = this.delta;
+        engine.target = this.target;
+        engine.targetPosition = targetOffset;
+        engine.targetLength = targetOffset + targetLength;
+        return engine;
+    }
+
+    private void useSource(ByteBuffer source) {
+        this.sourceLength = source.limit();
+        if (source.hasArray()) {
+            this.source = source.array();
+            this.sourceOffset = source.arrayOffset();
+        } else {
+            // Direct sources are read in place through a view whose position is moved for every copy
+            this.source = null;
+            this.sourceOffset = 0;
+            this.sourceView = source.duplicate();
+        }
+    }
+
+    private void readStreamFileHeader(byte[] header, InputStream in) throws IOException {
+        int indicator = header[VcdiffFormat.MAGIC_LENGTH] & 0xff;
+        if ((indicator & VcdiffFormat.VCD_CODETABLE) == 0 || (indicator & VcdiffFormat.VCD_DECOMPRESS) != 0) {
+            this.readFileHeader(header, 0, header.length);
+            return;
+        }
+        // Buffer the custom code table so it can be parsed like a complete delta header
+        this.windowLength = 0;
+        this.appendToWindow(header, header.length);
+        this.appendToWindow(in, 2);
+        this.appendToWindow(in, this.appendVarintToWindow(in));
+        this.readFileHeader(this.window, 0, this.windowLength);
+    }
+
+    /**
+     * Reads the next window of a streamed delta into the window buffer
+     * @return false if the end of the delta has been reached
+     */
+    private boolean readStreamWindow(InputStream in) throws IOException {
+        int indicator = in.read();
+        if (indicator < 0) {
+            return false;
+        }
+        this.ensureWindowCapacity(1);
+        this.window[0] = (byte)indicator;
+        this.windowLength = 1;
+        if ((indicator & (VcdiffFormat.VCD_SOURCE | VcdiffFormat.VCD_TARGET)) != 0) {
+            this.appendVarintToWindow(in);
+            this.appendVarintToWindow(in);
+        }
+        int bodyLength = this.appendVarintToWindow(in);
+        this.windowBodyStart = this.windowLength;
+        this.appendToWindow(in, bodyLength);
+        return true;
+    }
+
+    private int appendVarintToWindow(InputStream in) throws IOException {
+        int start = this.windowLength;
+        int b;
+        do {
+            b = in.read();
+            if (b < 0) {
+                throw new EOFException("Invalid VCDIFF delta - unexpected end of data");
+            }
+            this.ensureWindowCapacity(this.windowLength + 1);
+            this.window[this.windowLength++] = (byte)b;
+        } while ((b & 0x80) != 0 && this.windowLength - start <= 5);
+        return VcdiffFormat.value(VcdiffFormat.readVarint(this.window, start, this.windowLength));
+    }
+
+    /**
+     * Reads {@code length} bytes into the window buffer. The length comes from the delta, so the buffer grows as the
+     * bytes arrive rather than to the declared length up front.
+     */
+    private void appendToWindow(InputStream in, int length) throws IOException {
+        if (length > Integer.MAX_VALUE - this.windowLength) {
+            throw VcdiffFormat.invalid("window is too large");
+        }
+        int end = this.windowLength + length;
+        while (this.windowLength < end) {
+            this.ensureWindowCapacity(Math.min(end, this.windowLength + WINDOW_READ_LENGTH));
+            int read = in.read(this.window, this.windowLength, Math.min(end, this.window.length) - this.windowLength);
+            if (read < 0) {
+                throw new EOFException("Invalid VCDIFF delta - unexpected end of data");
+            }
+            this.windowLength += read;
+        }
+    }
+
+    private void appendToWindow(byte[] data, int length) {
+        this.ensureWindowCapacity(this.windowLength + length);
+        System.arraycopy(data, 0, this.window, this.windowLength, length);
+        this.windowLength += length;
+    }
+
+    private void ensureWindowCapacity(int capacity) {
+        if (this.window == null || this.window.length < capacity) {
+            this.window = Arrays.copyOf(this.window == null ? new byte[0] : this.window, Math.max(capacity, 2 * this.windowLength));
+        }
+    }
+
+    private int readFileHeader(byte[] delta, int offset, int end) throws IOException {
+        if (!VcdiffFormat.hasMagic(delta, offset, end - offset) || end - offset == VcdiffFormat.MAGIC_LENGTH) {
+            throw VcdiffFormat.invalid("missing header");
+        }
+        int position = offset + VcdiffFormat.MAGIC_LENGTH;
+        int indicator = delta[position++] & 0xff;
+        if ((indicator & VcdiffFormat.VCD_DECOMPRESS) != 0) {
+            throw new IOException("Unsupported VCDIFF delta - secondary compression is not supported");
+        }
+        if ((indicator & ~VcdiffFormat.VCD_CODETABLE) != 0) {
+            throw VcdiffFormat.invalid("unknown header indicator bits");
+        }
+        if ((indicator & VcdiffFormat.VCD_CODETABLE) != 0) {
+            return this.readCustomCodeTable(delta, position, end);
+        }
+        this.useCodeTable(VcdiffCodeTable.DEFAULT, VcdiffFormat.DEFAULT_NEAR_CACHE_SIZE, VcdiffFormat.DEFAULT_SAME_CACHE_SIZE);
+        return position;
+    }
+
+    private int readCustomCodeTable(byte[] delta, int position, int end) throws IOException {
+        if (end - position < 2) {
+            throw VcdiffFormat.invalid("unexpected end of data");
+        }
+        int nearSize = delta[position++] & 0xff;
+        int sameSize = delta[position++] & 0xff;
+        long packed = VcdiffFormat.readVarint(delta, position, end);
+        position = VcdiffFormat.next(packed);
+        int length = VcdiffFormat.value(packed);
+        if (length > end - position) {
+            throw VcdiffFormat.invalid("custom code table exceeds the end of the delta");
+        }
+        this.useCodeTable(readCodeTable(Arrays.copyOfRange(delta, position, position + length), nearSize, sameSize), nearSize, sameSize);
+        return position + length;
+    }
+
+    /**
+     * Decodes a custom code table, which is itself VCDIFF encoded against the default code table
+     * @param encodedTable The encoded code table, with or without the VCDIFF magic bytes
+     */
+    static VcdiffCodeTable readCodeTable(byte[] encodedTable, int nearSize, int sameSize) throws IOException {
+        if (!VcdiffFormat.hasMagic(encodedTable, 0, encodedTable.length)) {
+            byte[] withHeader = new byte[encodedTable.length + VcdiffFormat.MAGIC_LENGTH + 1];
+            withHeader[0] = VcdiffFormat.MAGIC_0;
+            withHeader[1] = VcdiffFormat.MAGIC_1;
+            withHeader[2] = VcdiffFormat.MAGIC_2;
+            withHeader[3] = VcdiffFormat.VERSION;
+            System.arraycopy(encodedTable, 0, withHeader, VcdiffFormat.MAGIC_LENGTH + 1, encodedTable.length);
+            encodedTable = withHeader;
+        }
+        byte[] defaultTable = VcdiffCodeTable.DEFAULT.encode();
+        byte[] table = new byte[VcdiffFormat.targetLength(encodedTable, 0, encodedTable.length)];
+        new NativeVcdiffEngine().decode(ByteBuffer.wrap(defaultTable), encodedTable, 0, encodedTable.length, table, table.length);
+        return VcdiffCodeTable.decode(table, nearSize, sameSize);
+    }
+
+    private void useCodeTable(VcdiffCodeTable codeTable, int nearSize, int sameSize) {
+        this.codeTable = codeTable;
+        this.nearSize = nearSize;
+        this.sameSize = sameSize;
+        if (this.near.length < nearSize) {
+            this.near = new int[nearSize];
+        }
+        if (this.same.length < sameSize * 256) {
+            this.same = new int[sameSize * 256];
+        }
+    }
+
+    private int decodeWindow(int position, int end) throws IOException {
+        byte[] delta = this.delta;
+        int indicator = delta[position++] & 0xff;
+        if ((indicator & ~(VcdiffFormat.VCD_SOURCE | VcdiffFormat.VCD_TARGET)) != 0 ||
+                indicator == (VcdiffFormat.VCD_SOURCE | VcdiffFormat.VCD_TARGET)) {
+            throw VcdiffFormat.invalid("unknown window indicator");
+        }
+
+        this.segment = null;
+        this.segmentOffset = 0;
+        this.segmentLength = 0;
+        if (indicator != 0) {
+            long packed = VcdiffFormat.readVarint(delta, position, end);
+            position = VcdiffFormat.next(packed);
+            int length = VcdiffFormat.value(packed);
+            packed = VcdiffFormat.readVarint(delta, position, end);
+            position = VcdiffFormat.next(packed);
+            int offset = VcdiffFormat.value(packed);
+            byte[] segment;
+            int segmentOffset;
+            int available;
+            if ((indicator & VcdiffFormat.VCD_SOURCE) != 0) {
+                segment = this.source;
+                segmentOffset = this.sourceOffset + offset;
+                available = this.sourceLength;
+            } else {
+                segment = this.target;
+                segmentOffset = offset;
+                available = this.targetPosition;
+            }
+            if (length > available || offset > available - length) {
+                throw VcdiffFormat.invalid("source segment is out of bounds");
+            }
+            this.segment = segment;
+            this.segmentOffset = segmentOffset;
+            this.segmentLength = length;
+        }
+
+        long packed = VcdiffFormat.readVarint(delta, position, end);
+        position = VcdiffFormat.next(packed);
+        if (VcdiffFormat.value(packed) > end - position) {
+            throw VcdiffFormat.invalid("window exceeds the end of the delta");
+        }
+        int windowDataEnd = position + VcdiffFormat.value(packed);
+        packed = VcdiffFormat.readVarint(delta, position, windowDataEnd);
+        position = VcdiffFormat.next(packed);
+        int targetLength = VcdiffFormat.value(packed);
+        if (position >= windowDataEnd) {
+            throw VcdiffFormat.invalid("unexpected end of data");
+        }
+        if (delta[position++] != 0) {
+            throw new IOException("Unsupported VCDIFF delta - compressed sections are not supported");
+        }
+        packed = VcdiffFormat.readVarint(delta, position, windowDataEnd);
+        position = VcdiffFormat.next(packed);
+        int dataLength = VcdiffFormat.value(packed);
+        packed = VcdiffFormat.readVarint(delta, position, windowDataEnd);
+        position = VcdiffFormat.next(packed);
+        int instructionsLength = VcdiffFormat.value(packed);
+        packed = VcdiffFormat.readVarint(delta, position, windowDataEnd);
+        position = VcdiffFormat.next(packed);
+        int addressesLength = VcdiffFormat.value(packed);
+        if ((long)dataLength + instructionsLength + addressesLength != windowDataEnd - position) {
+            throw VcdiffFormat.invalid("section lengths do not match the window length");
+        }
+        if (targetLength > this.targetLength - this.targetPosition) {
+            throw VcdiffFormat.invalid("target window exceeds the target length");
+        }
+
+        this.dataPosition = position;
+        this.dataEnd = position + dataLength;
+        int instructionPosition = this.dataEnd;
+        int instructionsEnd = instructionPosition + instructionsLength;
+        this.addressPosition = instructionsEnd;
+        this.addressEnd = windowDataEnd;
+        this.windowStart = this.targetPosition;
+        this.windowEnd = this.windowStart + targetLength;
+        this.resetAddressCache();
+
+        VcdiffCodeTable codeTable = this.codeTable;
+        while (instructionPosition < instructionsEnd) {
+            int code = delta[instructionPosition++] & 0xff;
+            int inst = codeTable.inst1[code];
+            if (inst != VcdiffFormat.NOOP) {
+                int size = codeTable.size1[code] & 0xff;
+                if (size == 0) {
+                    packed = VcdiffFormat.readVarint(delta, instructionPosition, instructionsEnd);
+                    instructionPosition = VcdiffFormat.next(packed);
+                    size = VcdiffFormat.value(packed);
+                }
+                this.execute(inst, size, codeTable.mode1[code] & 0xff);
+            }
+            inst = codeTable.inst2[code];
+            if (inst != VcdiffFormat.NOOP) {
+                int size = codeTable.size2[code] & 0xff;
+                if (size == 0) {
+                    packed = VcdiffFormat.readVarint(delta, instructionPosition, instructionsEnd);
+                    instructionPosition = VcdiffFormat.next(packed);
+                    size = VcdiffFormat.value(packed);
+                }
+                this.execute(inst, size, codeTable.mode2[code] & 0xff);
+            }
+        }
+
+        if (this.targetPosition != this.windowEnd || this.dataPosition != this.dataEnd || this.addressPosition != this.addressEnd) {
+            throw VcdiffFormat.invalid("window sections were not fully consumed");
+        }
+        return windowDataEnd;
+    }
+
+    private void execute(int inst, int size, int mode) throws IOException {
+        if (size > this.windowEnd - this.targetPosition) {
+            throw VcdiffFormat.invalid("instruction exceeds the target window");
+        }
+        switch (inst) {
+            case VcdiffFormat.ADD:
+                if (size > this.dataEnd - this.dataPosition) {
+                    throw VcdiffFormat.invalid("ADD exceeds the data section");
+                }
+                System.arraycopy(this.delta, this.dataPosition, this.target, this.targetPosition, size);
+                this.dataPosition += size;
+                break;
+            case VcdiffFormat.RUN:
+                if (this.dataPosition >= this.dataEnd) {
+                    throw VcdiffFormat.invalid("RUN exceeds the data section");
+                }
+                Arrays.fill(this.target, this.targetPosition, this.targetPosition + size, this.delta[this.dataPosition++]);
+                break;
+            case VcdiffFormat.COPY:
+                this.copy(this.decodeAddress(mode), size);
+                break;
+            default:
+                throw VcdiffFormat.invalid("unknown instruction");
+        }
+        this.targetPosition += size;
+    }
+
+    /**
+     * Copies from the combined address space made of the source segment followed by the target window
+     */
+    private void copy(int address, int size) {
+        byte[] target = this.target;
+        int destination = this.targetPosition;
+        if (address < this.segmentLength) {
+            int length = Math.min(size, this.segmentLength - address);
+            if (this.segment != null) {
+                System.arraycopy(this.segment, this.segmentOffset + address, target, destination, length);
+            } else {
+                ((Buffer)this.sourceView).position(this.segmentOffset + address);
+                this.sourceView.get(target, destination, length);
+            }
+            destination += length;
+            size -= length;
+            address = this.segmentLength;
+        }
+        // Target copies may overlap with the bytes being produced. The copied region is then periodic, so it is
+        // copied in non-overlapping chunks that double in length.
+        int from = this.windowStart + address - this.segmentLength;
+        while (size > 0) {
+            int length = Math.min(size, destination - from);
+            System.arraycopy(target, from, target, destination, length);
+            destination += length;
+            size -= length;
+        }
+    }
+
+    private int decodeAddress(int mode) throws IOException {
+        int here = this.segmentLength + this.targetPosition - this.windowStart;
+        int address;
+        if (mode == VcdiffFormat.MODE_SELF) {
+            address = this.readAddressVarint();
+        } else if (mode == VcdiffFormat.MODE_HERE) {
+            address = here - this.readAddressVarint();
+        } else if (mode - 2 < this.nearSize) {
+            address = this.near[mode - 2] + this.readAddressVarint();
+        } else {
+            if (this.addressPosition >= this.addressEnd) {
+                throw VcdiffFormat.invalid("COPY exceeds the address section");
+            }
+            int m = mode - 2 - this.nearSize;
+            address = this.same[m * 256 + (this.delta[this.addressPosition++] & 0xff)];
+        }
+        if (address < 0 || address >= here) {
+            throw VcdiffFormat.invalid("COPY address is out of bounds");
+        }
+        if (this.nearSize > 0) {
+            this.near[this.nextNearSlot] = address;
+            this.nextNearSlot = (this.nextNearSlot + 1) % this.nearSize;
+        }
+        if (this.sameSize > 0) {
+            this.same[address % (this.sameSize * 256)] = address;
+        }
+        return address;
+    }
+
+    private int readAddressVarint() throws IOException {
+        long packed = VcdiffFormat.readVarint(this.delta, this.addressPosition, this.addressEnd);
+        this.addressPosition = VcdiffFormat.next(packed);
+        return VcdiffFormat.value(packed);
+    }
+
+    private void resetAddressCache() {
+        this.nextNearSlot = 0;
+        Arrays.fill(this.near, 0, this.nearSize, 0);
+        Arrays.fill(this.same, 0, this.sameSize * 256, 0);
+    }
+
+    @SuppressWarnings("serial")
+    private static final class BatchTask extends RecursiveAction {
+        private final List<WindowTask> windows;
+
+        BatchTask(List<WindowTask> windows) {
+            this.windows = windows;
+        }
+
+        @Override
+        protected void compute() {
+            invokeAll(this.windows);
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class WindowTask extends RecursiveAction {
+        private final NativeVcdiffEngine parent;
+        private final int position;
+        private final int end;
+        private final int targetOffset;
+        private final int targetLength;
+        private IOException failure;
+
+        WindowTask(NativeVcdiffEngine parent, int position, int end, int targetOffset, int targetLength) {
+            this.parent = parent;
+            this.position = position;
+            this.end = end;
+            this.targetOffset = targetOffset;
+            this.targetLength = targetLength;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                this.parent.forkWindow(this.targetOffset, this.targetLength).decodeWindow(this.position, this.end);
+            } catch (IOException e) {
+                // Rethrown by the calling thread once the batch has completed
+                this.failure = e;
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package io.ably.deltacodec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flavor of {@link CheckedVcdiffDecoder} for transports that may deliver deltas slightly out of order. A delta whose
+ * base ID does not match the retained base is held in a bounded reorder window, keyed by its base ID, and applied as
+ * soon as the delta producing its base has been applied. Sequence continuity only fails once more deltas are waiting
+ * than the window holds, or a delta has waited longer than the window's delay, instead of at the first delta out of
+ * order.
+ *
+ * <p>
+ * Each call returns the deltas it applied, in order: none if the delta was held back, or the delta followed by the
+ * held deltas it unblocked. Results are copies owned by the caller. Deltas must have unique IDs and must not be
+ * delivered twice, since a duplicate of an applied delta would wait in the window until it fails.
+ */
+public class ReorderingVcdiffDecoder {
+    /**
+     * A delta applied by a {@link ReorderingVcdiffDecoder}
+     */
+    public static final class AppliedDelta {
+        private final String deltaId;
+        private final DeltaApplicationResult result;
+
+        AppliedDelta(String deltaId, DeltaApplicationResult result) {
+            this.deltaId = deltaId;
+            this.result = result;
+        }
+
+        /**
+         * @return The sequence ID of the delta, as provided when it was submitted
+         */
+        public String getDeltaId() {
+            return this.deltaId;
+        }
+
+        /**
+         * @return The result of applying the delta
+         */
+        public DeltaApplicationResult getResult() {
+            return this.result;
+        }
+    }
+
+    /* A delta is held either as bytes or as base64 text */
+    private static final class PendingDelta {
+        final byte[] delta;
+        final String base64Delta;
+        final String deltaId;
+        final long arrivalNanos;
+
+        PendingDelta(byte[] delta, String base64Delta, String deltaId, long arrivalNanos) {
+            this.delta = delta;
+            this.base64Delta = base64Delta;
+            this.deltaId = deltaId;
+            this.arrivalNanos = arrivalNanos;
+        }
+    }
+
+    private final CheckedVcdiffDecoder decoder;
+    private final int maxPendingDeltas;
+    private final long maxDelayNanos;
+    /* Held deltas by base ID, oldest first */
+    private final Map<String, PendingDelta> pending = new LinkedHashMap<>();
+
+    /**
+     * Creates a decoder using the default {@link DecodingEngine#NATIVE} engine
+     * @param maxPendingDeltas The number of deltas held back at most; 0 fails at the first delta out of order, like
+     *                         {@link CheckedVcdiffDecoder}
+     * @param maxDelayMillis The time a delta is held back at most, in milliseconds
+     * @throws IllegalArgumentException The provided {@code maxPendingDeltas} or {@code maxDelayMillis} parameter is
+     * negative
+     */
+    public ReorderingVcdiffDecoder(int maxPendingDeltas, long maxDelayMillis) throws IllegalArgumentException {
+        this(maxPendingDeltas, maxDelayMillis, DecodingEngine.NATIVE);
+    }
+
+    /**
+     * @param maxPendingDeltas The number of deltas held back at most; 0 fails at the first delta out of order, like
+     *                         {@link CheckedVcdiffDecoder}
+     * @param maxDelayMillis The time a delta is held back at most, in milliseconds
+     * @param engine The engine used to decode deltas
+     * @throws IllegalArgumentException The provided {@code maxPendingDeltas} or {@code maxDelayMillis} parameter is
+     * negative, or {@code engine} is null
+     */
+    public ReorderingVcdiffDecoder(int maxPendingDeltas, long maxDelayMillis, DecodingEngine engine) throws IllegalArgumentException {
+        if (maxPendingDeltas < 0) {
+            throw new IllegalArgumentException("maxPendingDeltas cannot be negative");
+        }
+        if (maxDelayMillis < 0) {
+            throw new IllegalArgumentException("maxDelayMillis cannot be negative");
+        }
+
+        this.decoder = new CheckedVcdiffDecoder(engine);
+        this.maxPendingDeltas = maxPendingDeltas;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+    }
+
+    /**
+     * Applies the {@code delta} if its {@code baseId} matches the sequence ID of the retained base, followed by the
+     * held deltas it unblocks; otherwise holds it back until the delta producing its base has been applied.
+     * @param delta The delta to be applied. A held delta is retained, so the array must not be modified afterwards.
+     * @param deltaId Sequence ID of the delta application result
+     * @param baseId Sequence ID of the base the delta was generated against
+     * @return The deltas applied, in order, possibly none
+     * @throws IOException Delta application failed. Deltas applied earlier in the same call are part of the retained
+     * base, but their results are lost.
+     * @throws IllegalStateException The decoder is not initialized by calling {@link #setBase(byte[], String)}
+     * @throws IllegalArgumentException The provided {@code delta} is not a valid VCDIFF
+     * @throws SequenceContinuityException The reorder window is full or a delta has been held back for too long. The
+     * window is emptied and the decoder has to be reset with {@link #setBase(byte[], String)}.
+     */
+    public List<AppliedDelta> applyDelta(byte[] delta, String deltaId, String baseId) throws SequenceContinuityException, IllegalStateException, IllegalArgumentException, IOException {
+        return this.submit(new PendingDelta(delta, null, deltaId, System.nanoTime()), baseId);
+    }
+
+    /**
+     * Like {@link #applyDelta(byte[], String, String)}, for a base64 encoded {@code delta}
+     * @param delta The delta to be applied as base64 string
+     * @param deltaId Sequence ID of the delta application result
+     * @param baseId Sequence ID of the base the delta was generated against
+     * @return The deltas applied, in order, possibly none
+     * @throws IOException Delta application failed. Deltas applied earlier in the same call are part of the retained
+     * base, but their results are lost.
+     * @throws IllegalStateException The decoder is not initialized by calling {@link #setBase(byte[], String)}
+     * @throws IllegalArgumentException The provided {@code delta} is not a valid VCDIFF
+     * @throws SequenceContinuityException The reorder window is full or a delta has been held back for too long. The
+     * window is emptied and the decoder has to be reset with {@link #setBase(byte[], String)}.
+     */
+    public List<AppliedDelta> applyBase64Delta(String delta, String deltaId, String baseId) throws SequenceContinuityException, IllegalStateException, IllegalArgumentException, IOException {
+        return this.submit(new PendingDelta(null, delta, deltaId, System.nanoTime()), baseId);
+    }
+
+    /**
+     * Sets the base used for the next delta application, then applies the held deltas that follow it. Held deltas
+     * that do not follow the new base are dropped.
+     * @param newBase The byte[] to be set as new base
+     * @param newBaseId The {@code newBase}'s sequence ID
+     * @return The held deltas applied, in order, possibly none
+     * @throws IOException Applying a held delta failed
+     * @throws IllegalArgumentException The provided {@code newBase} parameter is null
+     */
+    public List<AppliedDelta> setBase(byte[] newBase, String newBaseId) throws IllegalArgumentException, IOException {
+        this.decoder.setBase(newBase, newBaseId);
+        return this.drainAfterReset();
+    }
+
+    /**
+     * Sets the base used for the next delta application, then applies the held deltas that follow it. Held deltas
+     * that do not follow the new base are dropped.
+     * @param newBase The base64 string to be set as new base
+     * @param newBaseId The {@code newBase}'s sequence ID
+     * @return The held deltas applied, in order, possibly none
+     * @throws IOException Applying a held delta failed
+     * @throws IllegalArgumentException The provided {@code newBase} parameter is null or not valid base64
+     */
+    public List<AppliedDelta> setBase64Base(String newBase, String newBaseId) throws IllegalArgumentException, IOException {
+        this.decoder.setBase64Base(newBase, newBaseId);
+        return this.drainAfterReset();
+    }
+
+    /**
+     * Fails if a delta has been held back for longer than the window's delay. Deltas are otherwise only checked when
+     * the next one is submitted, so this should be called periodically on channels that may go quiet.
+     * @throws SequenceContinuityException A delta has been held back for too long. The window is emptied and the
+     * decoder has to be reset with {@link #setBase(byte[], String)}.
+     */
+    public void checkPendingDeltas() throws SequenceContinuityException {
+        this.checkDelay(System.nanoTime());
+    }
+
+    /**
+     * @return The number of deltas held back
+     */
+    public int getPendingDeltaCount() {
+        return this.pending.size();
+    }
+
+    /**
+     * Sets the listener notified of every delta application and failure, see {@link DecoderMetrics}. A full or
+     * expired reorder window is reported as {@link DecoderMetrics.Failure#SEQUENCE_DISCONTINUITY}.
+     * @param metrics The listener, or null to stop collecting metrics
+     */
+    public void setMetrics(DecoderMetrics metrics) {
+        this.decoder.setMetrics(metrics);
+    }
+
+    private List<AppliedDelta> submit(PendingDelta delta, String baseId) throws SequenceContinuityException, IOException {
+        this.checkDelay(delta.arrivalNanos);
+        if (!Objects.equals(this.decoder.getBaseId(), baseId)) {
+            // Check held deltas now, rather than when they are finally applied
+            if (delta.delta != null ? !BaseVcdiffDecoder.isDelta(delta.delta) : !BaseVcdiffDecoder.isBase64Delta(delta.base64Delta)) {
+                throw new IllegalArgumentException("The provided delta is not a valid VCDIFF delta");
+            }
+            if (!this.pending.containsKey(baseId) && this.pending.size() >= this.maxPendingDeltas) {
+                throw this.fail(baseId);
+            }
+            this.pending.put(baseId, delta);
+            return Collections.emptyList();
+        }
+
+        List<AppliedDelta> applied = new ArrayList<>();
+        this.apply(delta, baseId, applied);
+        this.drain(applied);
+        return applied;
+    }
+
+    private List<AppliedDelta> drainAfterReset() throws IOException {
+        List<AppliedDelta> applied = new ArrayList<>();
+        this.drain(applied);
+        this.pending.clear();
+        return applied;
+    }
+
+    /**
+     * Applies the held deltas following the retained base, one after another
+     */
+    private void drain(List<AppliedDelta> applied) throws IOException {
+        PendingDelta next;
+        while (!this.pending.isEmpty() && (next = this.pending.remove(this.decoder.getBaseId())) != null) {
+            this.apply(next, this.decoder.getBaseId(), applied);
+        }
+    }
+
+    private void apply(PendingDelta delta, String baseId, List<AppliedDelta> applied) throws IOException {
+        DeltaApplicationResult result;
+        try {
+            result = delta.delta != null ?
+                    this.decoder.applyDelta(delta.delta, delta.deltaId, baseId) :
+                    this.decoder.applyBase64Delta(delta.base64Delta, delta.deltaId, baseId);
+        } catch (SequenceContinuityException e) {
+            // Not thrown, the base ID has been matched
+            throw new IllegalStateException(e);
+        }
+        applied.add(new AppliedDelta(delta.deltaId, result));
+    }
+
+    private void checkDelay(long nowNanos) throws SequenceContinuityException {
+        Iterator<Map.Entry<String, PendingDelta>> oldest = this.pending.entrySet().iterator();
+        if (oldest.hasNext()) {
+            Map.Entry<String, PendingDelta> entry = oldest.next();
+            if (nowNanos - entry.getValue().arrivalNanos > this.maxDelayNanos) {
+                throw this.fail(entry.getKey());
+            }
+        }
+    }
+
+    private SequenceContinuityException fail(String baseId) {
+        this.pending.clear();
+        this.decoder.reportFailure(DecoderMetrics.Failure.SEQUENCE_DISCONTINUITY);
+        return new SequenceContinuityException(this.decoder.getBaseId(), baseId);
+    }
+}
@@ -0,0 +1,27 @@
+package io.ably.deltacodec;
+
+/**
+ * {@link BufferPool} meant to be owned by a single decoder. It keeps the last released buffer as a scratch
+ * area for the next target, so consecutive deltas alternate between two buffers. Not thread safe.
+ */
+public class ScratchBufferPool implements BufferPool {
+    private byte[] spare;
+
+    @Override
+    public byte[] acquire(int minimumLength) {
+        byte[] buffer = this.spare;
+        if (buffer != null && buffer.length >= minimumLength) {
+            this.spare = null;
+            return buffer;
+        }
+        // Leave some headroom so a slowly growing payload does not need a new buffer for every delta
+        return new byte[minimumLength + (minimumLength >>> 3)];
+    }
+
+    @Override
+    public void release(byte[] buffer) {
+        if (this.spare == null || buffer.length > this.spare.length) {
+            this.spare = buffer;
+        }
+    }
+}
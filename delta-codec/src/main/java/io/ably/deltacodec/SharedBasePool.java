@@ -0,0 +1,192 @@
+package io.ably.deltacodec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Thread safe pool deduplicating the bases of many decoders. Decoders using the pool intern every base they set or
+ * decode, so decoders following the same channel, or channels carrying the same documents, share a single copy of
+ * each base. Bases are found by a hash of their contents, compared in full, and are dropped from the pool once no
+ * decoder retains them.
+ *
+ * <p>
+ * The pool also remembers the last delta applied to each base and its target, so that when many decoders apply the
+ * same delta to the same base, only the first one decodes it and the others share its target.
+ *
+ * <p>
+ * Bases in the pool are shared, so they must never be modified. With {@link BufferOwnership#SHARE} the results are
+ * views over the shared bases.
+ */
+public class SharedBasePool {
+    /**
+     * A base interned in the pool, with the number of decoders retaining it
+     */
+    static final class SharedBase {
+        final byte[] data;
+        final int length;
+        final long hash;
+        private int references;
+        /* Next base with the same hash */
+        private SharedBase next;
+        /* The last delta applied to this base and the target it decoded to */
+        private byte[] lastDelta;
+        private SharedBase lastTarget;
+        /* The bases whose last target this base is, so their cache entries can be cleared when it is dropped */
+        private ArrayList<SharedBase> targetOf;
+
+        private SharedBase(byte[] data, int length, long hash) {
+            this.data = data;
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+
+    private final HashMap<Long, SharedBase> bases = new HashMap<>();
+    private long retainedBytes;
+    private long targetCacheHitCount;
+
+    /**
+     * Returns the base of the pool equal to the first {@code length} bytes of {@code data}, adding it if there is
+     * none, and counts a reference to it. A base added keeps {@code data}, which must not be modified afterwards.
+     */
+    synchronized SharedBase intern(byte[] data, int length) {
+        long hash = hash(data, length);
+        SharedBase first = this.bases.get(hash);
+        for (SharedBase base = first; base != null; base = base.next) {
+            if (base.length == length && ByteArrays.equals(base.data, 0, data, 0, length)) {
+                base.references++;
+                return base;
+            }
+        }
+        SharedBase base = new SharedBase(data, length, hash);
+        base.references = 1;
+        base.next = first;
+        this.bases.put(hash, base);
+        this.retainedBytes += data.length;
+        return base;
+    }
+
+    /**
+     * Drops a reference to a base, removing it from the pool once no decoder retains it
+     */
+    synchronized void release(SharedBase base) {
+        if (--base.references > 0) {
+            return;
+        }
+        SharedBase first = this.bases.get(base.hash);
+        if (first == base) {
+            if (base.next == null) {
+                this.bases.remove(base.hash);
+            } else {
+                this.bases.put(base.hash, base.next);
+            }
+        } else {
+            SharedBase previous = first;
+            while (previous.next != base) {
+                previous = previous.next;
+            }
+            previous.next = base.next;
+        }
+        base.next = null;
+        this.clearLastTarget(base);
+        if (base.targetOf != null) {
+            // The dropped base must not stay reachable through the cache of the bases it was decoded from
+            for (SharedBase source : base.targetOf) {
+                this.retainedBytes -= source.lastDelta.length;
+                source.lastDelta = null;
+                source.lastTarget = null;
+            }
+            base.targetOf = null;
+        }
+        this.retainedBytes -= base.data.length;
+    }
+
+    /**
+     * Returns the target the delta decoded to the last time it was applied to {@code base}, counting a reference to
+     * it, or null if the last delta applied to {@code base} was another one or its target has been dropped
+     */
+    synchronized SharedBase cachedTarget(SharedBase base, byte[] delta, int offset, int length) {
+        byte[] lastDelta = base.lastDelta;
+        SharedBase target = base.lastTarget;
+        if (lastDelta == null || lastDelta.length != length ||
+                !ByteArrays.equals(lastDelta, 0, delta, offset, length)) {
+            return null;
+        }
+        target.references++;
+        this.targetCacheHitCount++;
+        return target;
+    }
+
+    /**
+     * Remembers the target a delta decoded to, for {@link #cachedTarget}
+     */
+    synchronized void targetDecoded(SharedBase base, byte[] delta, int offset, int length, SharedBase target) {
+        if (base.references == 0 || target.references == 0) {
+            return;
+        }
+        this.clearLastTarget(base);
+        base.lastDelta = Arrays.copyOfRange(delta, offset, offset + length);
+        base.lastTarget = target;
+        if (target.targetOf == null) {
+            target.targetOf = new ArrayList<>(1);
+        }
+        target.targetOf.add(base);
+        this.retainedBytes += length;
+    }
+
+    private void clearLastTarget(SharedBase base) {
+        if (base.lastTarget == null) {
+            return;
+        }
+        base.lastTarget.targetOf.remove(base);
+        this.retainedBytes -= base.lastDelta.length;
+        base.lastDelta = null;
+        base.lastTarget = null;
+    }
+
+    /**
+     * @return The number of distinct bases in the pool
+     */
+    public synchronized int getBaseCount() {
+        int count = 0;
+        for (SharedBase first : this.bases.values()) {
+            for (SharedBase base = first; base != null; base = base.next) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of bytes held by the bases in the pool, each counted once however many decoders retain it,
+     * and by the deltas remembered for them
+     */
+    public synchronized long getRetainedBytes() {
+        return this.retainedBytes;
+    }
+
+    /**
+     * @return The number of deltas whose target was shared instead of being decoded again
+     */
+    public synchronized long getTargetCacheHitCount() {
+        return this.targetCacheHitCount;
+    }
+
+    /**
+     * 64-bit multiplicative hash of the first {@code length} bytes of {@code data}, eight bytes at a time
+     */
+    static long hash(byte[] data, int length) {
+        long hash = 0x9e3779b97f4a7c15L ^ length;
+        int i = 0;
+        for (; i <= length - 8; i += 8) {
+            long word = ByteArrays.getLongLittleEndian(data, i);
+            hash = (hash ^ word) * 0x9e3779b97f4a7c15L;
+            hash ^= hash >>> 29;
+        }
+        for (; i < length; i++) {
+            hash = (hash ^ (data[i] & 0xff)) * 0x100000001b3L;
+        }
+        return hash ^ (hash >>> 32);
+    }
+}
@@ -0,0 +1,80 @@
+package io.ably.deltacodec;
+
+import java.util.ArrayDeque;
+
+/**
+ * Thread safe {@link BufferPool} that can be shared by many decoders. Buffers are pooled in power of two size
+ * classes, so a buffer may be up to twice as long as requested, and the total number of bytes held by the pool
+ * is bounded.
+ */
+public class SharedBufferPool implements BufferPool {
+    private static final int MIN_SIZE_CLASS = 6;
+    private static final int MAX_SIZE_CLASS = 30;
+
+    private final ArrayDeque<byte[]>[] sizeClasses;
+    private final long maxRetainedBytes;
+    private long retainedBytes;
+
+    /**
+     * Creates a pool
+     * @param maxRetainedBytes The maximum number of bytes the pool keeps for reuse; released buffers that
+     *                         would exceed it are left to the garbage collector
+     * @throws IllegalArgumentException The provided {@code maxRetainedBytes} parameter is negative
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SharedBufferPool(long maxRetainedBytes) throws IllegalArgumentException {
+        if (maxRetainedBytes < 0) {
+            throw new IllegalArgumentException("maxRetainedBytes cannot be negative");
+        }
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.sizeClasses = new ArrayDeque[MAX_SIZE_CLASS + 1];
+        for (int i = MIN_SIZE_CLASS; i <= MAX_SIZE_CLASS; i++) {
+            this.sizeClasses[i] = new ArrayDeque<>();
+        }
+    }
+
+    @Override
+    public byte[] acquire(int minimumLength) {
+        int sizeClass = sizeClassOf(minimumLength);
+        if (sizeClass > MAX_SIZE_CLASS) {
+            return new byte[minimumLength];
+        }
+        synchronized (this) {
+            byte[] buffer = this.sizeClasses[sizeClass].pollLast();
+            if (buffer != null) {
+                this.retainedBytes -= buffer.length;
+                return buffer;
+            }
+        }
+        return new byte[1 << sizeClass];
+    }
+
+    @Override
+    public void release(byte[] buffer) {
+        int sizeClass = sizeClassOf(buffer.length);
+        // Only buffers of exactly a size class length can satisfy every request mapped to that class
+        if (sizeClass > MAX_SIZE_CLASS || buffer.length != 1 << sizeClass) {
+            return;
+        }
+        synchronized (this) {
+            if (this.retainedBytes + buffer.length <= this.maxRetainedBytes) {
+                this.sizeClasses[sizeClass].addLast(buffer);
+                this.retainedBytes += buffer.length;
+            }
+        }
+    }
+
+    /**
+     * @return The number of bytes currently held by the pool for reuse
+     */
+    public synchronized long getRetainedBytes() {
+        return this.retainedBytes;
+    }
+
+    private static int sizeClassOf(int length) {
+        if (length <= 1 << MIN_SIZE_CLASS) {
+            return MIN_SIZE_CLASS;
+        }
+        return 32 - Integer.numberOfLeadingZeros(length - 1);
+    }
+}
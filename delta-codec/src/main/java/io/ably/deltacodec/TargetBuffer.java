@@ -0,0 +1,70 @@
+package io.ably.deltacodec;
+
+/**
+ * Growable buffer accumulating a target or delta whose length is not known up front, allocated from an optional
+ * {@link BufferPool}
+ */
+final class TargetBuffer {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final BufferPool pool;
+    private byte[] array;
+    private int length;
+
+    TargetBuffer(BufferPool pool) {
+        this.pool = pool;
+        this.array = this.allocate(INITIAL_CAPACITY);
+    }
+
+    byte[] array() {
+        return this.array;
+    }
+
+    int length() {
+        return this.length;
+    }
+
+    void setLength(int length) {
+        this.length = length;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity <= this.array.length) {
+            return;
+        }
+        int doubled = this.array.length << 1;
+        byte[] grown = this.allocate(doubled < 0 ? capacity : Math.max(doubled, capacity));
+        System.arraycopy(this.array, 0, grown, 0, this.length);
+        this.release(this.array);
+        this.array = grown;
+    }
+
+    void write(int b) {
+        this.ensureCapacity(this.length + 1);
+        this.array[this.length++] = (byte)b;
+    }
+
+    void write(byte[] data, int offset, int length) {
+        this.ensureCapacity(this.length + length);
+        System.arraycopy(data, offset, this.array, this.length, length);
+        this.length += length;
+    }
+
+    /**
+     * Returns the buffer to the pool when the target is discarded
+     */
+    void release() {
+        this.release(this.array);
+        this.array = null;
+    }
+
+    private byte[] allocate(int length) {
+        return this.pool == null ? new byte[length] : this.pool.acquire(length);
+    }
+
+    private void release(byte[] buffer) {
+        if (this.pool != null) {
+            this.pool.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package io.ably.deltacodec;
+
+import java.util.Arrays;
+
+/**
+ * Hash index over the fixed size blocks of a dictionary, looked up with a rolling hash of the target.
+ *
+ * <p>
+ * Entries are chained per bucket, most recently added first, in flat int arrays, so lookups do not allocate.
+ * Each entry keeps its hash, so when the dictionary is replaced by an edited version of itself
+ * ({@link #update(byte[], int, int, int)}) the entries of the unchanged prefix and suffix are carried over and only
+ * the blocks of the changed region are hashed.
+ */
+final class VcdiffBlockIndex {
+    static final int BLOCK_SIZE = 16;
+
+    private static final int MULTIPLIER = 257;
+    private static final int OUTGOING_FACTOR = power(MULTIPLIER, BLOCK_SIZE - 1);
+    private static final int MIN_BUCKET_BITS = 4;
+    private static final int MAX_BUCKET_BITS = 30;
+
+    private byte[] data;
+    private int length;
+    private int bucketBits;
+    /* First entry + 1 for each bucket, 0 for an empty bucket */
+    private int[] buckets;
+    /* Next entry + 1 in the same bucket */
+    private int[] chain;
+    private int[] positions;
+    private int[] hashes;
+    private int entries;
+    /* Position of the next block indexed by addBlocks */
+    private int nextBlock;
+
+    /**
+     * Creates an empty index over the blocks of {@code data}; blocks are indexed by {@link #addBlocks(int)}
+     * @param data The dictionary
+     * @param length The number of valid bytes at the start of {@code data}
+     * @param from The position of the first block to index
+     */
+    VcdiffBlockIndex(byte[] data, int length, int from) {
+        this.data = data;
+        this.length = length;
+        this.nextBlock = from;
+        int capacity = Math.max(0, length - from) / BLOCK_SIZE;
+        this.chain = new int[capacity];
+        this.positions = new int[capacity];
+        this.hashes = new int[capacity];
+        this.bucketBits = bucketBits(capacity);
+        this.buckets = new int[1 << this.bucketBits];
+    }
+
+    /**
+     * Indexes every block that ends at or before {@code end} and has not been indexed yet
+     * @param end The position in the dictionary
+     */
+    void addBlocks(int end) {
+        end = Math.min(end, this.length);
+        while (this.nextBlock + BLOCK_SIZE <= end) {
+            this.add(this.nextBlock, hash(this.data, this.nextBlock));
+            this.nextBlock += BLOCK_SIZE;
+        }
+    }
+
+    /**
+     * Replaces the dictionary with an edited version that shares a prefix and a suffix with it. Entries that lie
+     * entirely within the shared prefix or suffix are kept, with the suffix entries moved to their new positions,
+     * and the blocks of the edited region of {@code newData} are indexed. Only the edited blocks are hashed, but
+     * moving the entries and rebuilding the bucket chains are passes over all of them.
+     * @param newData The new dictionary
+     * @param newLength The number of valid bytes at the start of {@code newData}
+     * @param prefix The length of the prefix shared by the current and the new dictionary
+     * @param suffix The length of the suffix shared by the current and the new dictionary, not overlapping the prefix
+     */
+    void update(byte[] newData, int newLength, int prefix, int suffix) {
+        int shift = newLength - this.length;
+        int oldSuffixStart = this.length - suffix;
+        int kept = 0;
+        for (int entry = 0; entry < this.entries; entry++) {
+            int position = this.positions[entry];
+            if (position >= oldSuffixStart) {
+                position += shift;
+            } else if (position + BLOCK_SIZE > prefix) {
+                continue;
+            }
+            this.positions[kept] = position;
+            this.hashes[kept] = this.hashes[entry];
+            kept++;
+        }
+        this.entries = kept;
+        this.data = newData;
+        this.length = newLength;
+
+        int newSuffixStart = newLength - suffix;
+        int position = prefix - prefix % BLOCK_SIZE;
+        this.ensureCapacity(kept + (newSuffixStart - position) / BLOCK_SIZE + 1);
+        for (; position < newSuffixStart && position + BLOCK_SIZE <= newLength; position += BLOCK_SIZE) {
+            this.positions[this.entries] = position;
+            this.hashes[this.entries] = hash(newData, position);
+            this.entries++;
+        }
+        this.nextBlock = newLength;
+        this.relink();
+    }
+
+    byte[] data() {
+        return this.data;
+    }
+
+    int length() {
+        return this.length;
+    }
+
+    /**
+     * Returns the most recently indexed entry with the given hash
+     * @return The entry, or -1 if there is none
+     */
+    int first(int hash) {
+        return this.buckets[this.bucket(hash)] - 1;
+    }
+
+    /**
+     * Returns the next entry in the same bucket as {@code entry}
+     * @return The entry, or -1 if there is none
+     */
+    int next(int entry) {
+        return this.chain[entry] - 1;
+    }
+
+    /**
+     * @return The position of the block indexed by {@code entry}
+     */
+    int position(int entry) {
+        return this.positions[entry];
+    }
+
+    /**
+     * Computes the hash of the {@link #BLOCK_SIZE} bytes at {@code position}
+     */
+    static int hash(byte[] data, int position) {
+        int hash = 0;
+        for (int i = position; i < position + BLOCK_SIZE; i++) {
+            hash = hash * MULTIPLIER + (data[i] & 0xff);
+        }
+        return hash;
+    }
+
+    /**
+     * Moves a block hash one byte forward
+     * @param hash The hash of the block starting with {@code outgoing}
+     * @param outgoing The first byte of the block
+     * @param incoming The byte following the block
+     * @return The hash of the block starting one byte later
+     */
+    static int roll(int hash, byte outgoing, byte incoming) {
+        return (hash - (outgoing & 0xff) * OUTGOING_FACTOR) * MULTIPLIER + (incoming & 0xff);
+    }
+
+    private void add(int position, int hash) {
+        if (this.entries == this.positions.length) {
+            this.ensureCapacity(this.entries + 1);
+            this.relink();
+        }
+        int entry = this.entries++;
+        this.positions[entry] = position;
+        this.hashes[entry] = hash;
+        this.link(entry);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > this.positions.length) {
+            capacity = Math.max(capacity, this.positions.length * 2);
+            this.positions = Arrays.copyOf(this.positions, capacity);
+            this.hashes = Arrays.copyOf(this.hashes, capacity);
+            this.chain = new int[capacity];
+        }
+    }
+
+    /**
+     * Rebuilds the bucket chains from the entry hashes, resizing the bucket table to the number of entries
+     */
+    private void relink() {
+        int bucketBits = bucketBits(this.entries);
+        if (bucketBits != this.bucketBits) {
+            this.bucketBits = bucketBits;
+            this.buckets = new int[1 << bucketBits];
+        } else {
+            Arrays.fill(this.buckets, 0);
+        }
+        for (int entry = 0; entry < this.entries; entry++) {
+            this.link(entry);
+        }
+    }
+
+    private void link(int entry) {
+        int bucket = this.bucket(this.hashes[entry]);
+        this.chain[entry] = this.buckets[bucket];
+        this.buckets[bucket] = entry + 1;
+    }
+
+    private int bucket(int hash) {
+        return (hash * 0x9e3779b9) >>> (32 - this.bucketBits);
+    }
+
+    private static int bucketBits(int entries) {
+        int bits = MIN_BUCKET_BITS;
+        while ((1 << bits) < entries * 2 && bits < MAX_BUCKET_BITS) {
+            bits++;
+        }
+        return bits;
+    }
+
+    private static int power(int base, int exponent) {
+        int result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= base;
+        }
+        return result;
+    }
+}
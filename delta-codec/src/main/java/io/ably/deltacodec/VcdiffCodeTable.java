@@ -0,0 +1,133 @@
+package io.ably.deltacodec;
+
+import java.io.IOException;
+
+/**
+ * VCDIFF instruction code table (RFC 3284 section 5.4) mapping each instruction code to up to two
+ * (type, size, mode) instructions
+ */
+final class VcdiffCodeTable {
+    static final int SIZE = 256;
+
+    /**
+     * Length of the code table string representation (RFC 3284 section 7)
+     */
+    static final int ENCODED_LENGTH = 6 * SIZE;
+
+    static final VcdiffCodeTable DEFAULT = createDefault();
+
+    final byte[] inst1 = new byte[SIZE];
+    final byte[] inst2 = new byte[SIZE];
+    final byte[] size1 = new byte[SIZE];
+    final byte[] size2 = new byte[SIZE];
+    final byte[] mode1 = new byte[SIZE];
+    final byte[] mode2 = new byte[SIZE];
+
+    private VcdiffCodeTable() {}
+
+    /**
+     * Creates a code table from its string representation (RFC 3284 section 7)
+     * @param encoded The 1536 byte code table string
+     * @param nearCacheSize The size of the near address cache the table is used with
+     * @param sameCacheSize The size of the same address cache the table is used with
+     * @return The code table
+     * @throws IOException The code table is malformed
+     */
+    static VcdiffCodeTable decode(byte[] encoded, int nearCacheSize, int sameCacheSize) throws IOException {
+        if (encoded.length != ENCODED_LENGTH) {
+            throw VcdiffFormat.invalid("custom code table has wrong length");
+        }
+        VcdiffCodeTable table = new VcdiffCodeTable();
+        System.arraycopy(encoded, 0, table.inst1, 0, SIZE);
+        System.arraycopy(encoded, SIZE, table.inst2, 0, SIZE);
+        System.arraycopy(encoded, 2 * SIZE, table.size1, 0, SIZE);
+        System.arraycopy(encoded, 3 * SIZE, table.size2, 0, SIZE);
+        System.arraycopy(encoded, 4 * SIZE, table.mode1, 0, SIZE);
+        System.arraycopy(encoded, 5 * SIZE, table.mode2, 0, SIZE);
+        int modes = 2 + nearCacheSize + sameCacheSize;
+        for (int i = 0; i < SIZE; i++) {
+            if ((table.inst1[i] & 0xff) > VcdiffFormat.COPY || (table.inst2[i] & 0xff) > VcdiffFormat.COPY ||
+                    (table.mode1[i] & 0xff) >= modes || (table.mode2[i] & 0xff) >= modes) {
+                throw VcdiffFormat.invalid("custom code table contains an unknown instruction or mode");
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Exports this table as its string representation (RFC 3284 section 7), which is the source
+     * custom code tables are encoded against
+     * @return The 1536 byte code table string
+     */
+    byte[] encode() {
+        byte[] encoded = new byte[ENCODED_LENGTH];
+        System.arraycopy(this.inst1, 0, encoded, 0, SIZE);
+        System.arraycopy(this.inst2, 0, encoded, SIZE, SIZE);
+        System.arraycopy(this.size1, 0, encoded, 2 * SIZE, SIZE);
+        System.arraycopy(this.size2, 0, encoded, 3 * SIZE, SIZE);
+        System.arraycopy(this.mode1, 0, encoded, 4 * SIZE, SIZE);
+        System.arraycopy(this.mode2, 0, encoded, 5 * SIZE, SIZE);
+        return encoded;
+    }
+
+    private static VcdiffCodeTable createDefault() {
+        VcdiffCodeTable table = new VcdiffCodeTable();
+        int modes = 2 + VcdiffFormat.DEFAULT_NEAR_CACHE_SIZE + VcdiffFormat.DEFAULT_SAME_CACHE_SIZE;
+        int code = 0;
+
+        // RUN with the size in the instruction stream
+        table.set1(code++, VcdiffFormat.RUN, 0, 0);
+
+        // ADD of sizes 0 (in the instruction stream) and 1 to 17
+        table.set1(code++, VcdiffFormat.ADD, 0, 0);
+        for (int size = 1; size <= 17; size++) {
+            table.set1(code++, VcdiffFormat.ADD, size, 0);
+        }
+
+        // COPY of sizes 0 (in the instruction stream) and 4 to 18 for each mode
+        for (int mode = 0; mode < modes; mode++) {
+            table.set1(code++, VcdiffFormat.COPY, 0, mode);
+            for (int size = 4; size <= 18; size++) {
+                table.set1(code++, VcdiffFormat.COPY, size, mode);
+            }
+        }
+
+        // ADD of sizes 1 to 4 followed by COPY of sizes 4 to 6 for the SELF, HERE and near modes
+        for (int mode = 0; mode < 6; mode++) {
+            for (int addSize = 1; addSize <= 4; addSize++) {
+                for (int copySize = 4; copySize <= 6; copySize++) {
+                    table.set1(code, VcdiffFormat.ADD, addSize, 0);
+                    table.set2(code++, VcdiffFormat.COPY, copySize, mode);
+                }
+            }
+        }
+
+        // ADD of sizes 1 to 4 followed by COPY of size 4 for the same modes
+        for (int mode = 6; mode < modes; mode++) {
+            for (int addSize = 1; addSize <= 4; addSize++) {
+                table.set1(code, VcdiffFormat.ADD, addSize, 0);
+                table.set2(code++, VcdiffFormat.COPY, 4, mode);
+            }
+        }
+
+        // COPY of size 4 followed by ADD of size 1 for every mode
+        for (int mode = 0; mode < modes; mode++) {
+            table.set1(code, VcdiffFormat.COPY, 4, mode);
+            table.set2(code++, VcdiffFormat.ADD, 1, 0);
+        }
+
+        return table;
+    }
+
+    private void set1(int code, int inst, int size, int mode) {
+        this.inst1[code] = (byte)inst;
+        this.size1[code] = (byte)size;
+        this.mode1[code] = (byte)mode;
+    }
+
+    private void set2(int code, int inst, int size, int mode) {
+        this.inst2[code] = (byte)inst;
+        this.size2[code] = (byte)size;
+        this.mode2[code] = (byte)mode;
+    }
+}
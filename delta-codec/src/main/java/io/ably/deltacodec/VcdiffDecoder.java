@@ -1,11 +1,32 @@
 package io.ably.deltacodec;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
 
 /**
  * VCDIFF decoder capable of processing continuous sequences of consecutively generated VCDIFFs
  */
 public class VcdiffDecoder extends BaseVcdiffDecoder {
+    /**
+     * Creates a decoder using the default {@link DecodingEngine#NATIVE} engine
+     */
+    public VcdiffDecoder() {
+        this(DecodingEngine.NATIVE);
+    }
+
+    /**
+     * Creates a decoder using the given engine
+     * @param engine The engine used to decode deltas
+     * @throws IllegalArgumentException The provided {@code engine} parameter is null
+     */
+    public VcdiffDecoder(DecodingEngine engine) throws IllegalArgumentException {
+        super(engine);
+    }
+
     /**
      * Applies the {@code delta} to the result of applying the previous delta or to the base data
      * if no previous delta has been applied yet. Base data has to be set by {@link VcdiffDecoder#setBase(byte[])},
@@ -22,6 +43,79 @@ public class VcdiffDecoder extends BaseVcdiffDecoder {
         return this.applyDeltaInternal(delta);
     }
 
+    /**
+     * Applies the {@code delta} to the result of applying the previous delta or to the base data
+     * if no previous delta has been applied yet. Base data has to be set by {@link VcdiffDecoder#setBase(byte[])},
+     * {@link VcdiffDecoder#setBase(String)} or {@link VcdiffDecoder#setBase64Base(String)} before calling this
+     * method for the first time.
+     * @param delta The delta to be applied, read from its position to its limit. The buffer position is left unchanged.
+     *              Heap buffers are read in place, other buffers are copied into a scratch buffer reused across deltas.
+     * @return {@link DeltaApplicationResult} instance
+     * @throws IOException Delta application failed
+     * @throws IllegalStateException The decoder is not initialized by calling {@link VcdiffDecoder#setBase(byte[])},
+     * {@link VcdiffDecoder#setBase(String)} or {@link VcdiffDecoder#setBase64Base(String)}
+     * @throws IllegalArgumentException The provided {@code delta} is not a valid VCDIFF
+     */
+    public DeltaApplicationResult applyDelta(ByteBuffer delta) throws IllegalStateException, IllegalArgumentException, IOException {
+        return this.applyDeltaInternal(delta);
+    }
+
+    /**
+     * Applies the {@code delta} to the result of applying the previous delta or to the base data
+     * if no previous delta has been applied yet, and writes the result into the {@code target} buffer.
+     * Base data has to be set by {@link VcdiffDecoder#setBase(byte[])}, {@link VcdiffDecoder#setBase(String)}
+     * or {@link VcdiffDecoder#setBase64Base(String)} before calling this method for the first time.
+     * @param delta The delta to be applied, read from its position to its limit. The buffer position is left unchanged.
+     * @param target The buffer the result is written to, starting at its position. Its position is advanced by
+     *               the length of the result.
+     * @return The length of the result
+     * @throws IOException Delta application failed
+     * @throws IllegalStateException The decoder is not initialized by calling {@link VcdiffDecoder#setBase(byte[])},
+     * {@link VcdiffDecoder#setBase(String)} or {@link VcdiffDecoder#setBase64Base(String)}
+     * @throws IllegalArgumentException The provided {@code delta} is not a valid VCDIFF or {@code target} is null
+     * @throws BufferOverflowException The result does not fit into the remaining space of {@code target}; the delta
+     * is not applied
+     */
+    public int applyDelta(ByteBuffer delta, ByteBuffer target) throws IllegalStateException, IllegalArgumentException, BufferOverflowException, IOException {
+        return this.applyDeltaInternal(delta, target);
+    }
+
+    /**
+     * Applies the {@code delta} read from a stream to the result of applying the previous delta or to the base data
+     * if no previous delta has been applied yet, writing the result to {@code target} one window at a time.
+     * Base data has to be set by {@link VcdiffDecoder#setBase(byte[])}, {@link VcdiffDecoder#setBase(String)}
+     * or {@link VcdiffDecoder#setBase64Base(String)} before calling this method for the first time.
+     * @param delta The stream the delta is read from until its end. The stream is not closed.
+     * @param target The stream the result is written to. The stream is not flushed or closed.
+     * @return The length of the result
+     * @throws IOException Delta application failed, or reading {@code delta} or writing {@code target} failed. Part of
+     * the result may already have been written to {@code target}; the base is left unchanged.
+     * @throws IllegalStateException The decoder is not initialized by calling {@link VcdiffDecoder#setBase(byte[])},
+     * {@link VcdiffDecoder#setBase(String)} or {@link VcdiffDecoder#setBase64Base(String)}
+     * @throws IllegalArgumentException The provided {@code delta} is not a valid VCDIFF or {@code target} is null
+     */
+    public int applyDelta(InputStream delta, OutputStream target) throws IllegalStateException, IllegalArgumentException, IOException {
+        return this.applyDeltaInternal(delta, target);
+    }
+
+    /**
+     * Applies a chain of consecutive {@code deltas} to the result of applying the previous delta or to the base data
+     * if no previous delta has been applied yet, as if each delta was passed to {@link VcdiffDecoder#applyDelta(byte[])}
+     * in turn. The deltas are first merged by a {@link DeltaComposer}, so the targets in between are never
+     * materialized. Base data has to be set by {@link VcdiffDecoder#setBase(byte[])}, {@link VcdiffDecoder#setBase(String)}
+     * or {@link VcdiffDecoder#setBase64Base(String)} before calling this method for the first time.
+     * @param deltas The deltas to be applied, in order
+     * @return {@link DeltaApplicationResult} instance holding the result of the last delta
+     * @throws IOException Delta application failed; the base is left unchanged
+     * @throws IllegalStateException The decoder is not initialized by calling {@link VcdiffDecoder#setBase(byte[])},
+     * {@link VcdiffDecoder#setBase(String)} or {@link VcdiffDecoder#setBase64Base(String)}
+     * @throws IllegalArgumentException The provided {@code deltas} parameter is null or empty, or one of the deltas is
+     * not a valid VCDIFF
+     */
+    public DeltaApplicationResult applyDeltas(List<byte[]> deltas) throws IllegalStateException, IllegalArgumentException, IOException {
+        return this.applyDeltasInternal(deltas);
+    }
+
     /**
      * Applies the {@code delta} to the result of applying the previous delta or to the base data
      * if no previous delta has been applied yet. Base data has to be set by {@link VcdiffDecoder#setBase(byte[])},
@@ -38,6 +132,91 @@ public class VcdiffDecoder extends BaseVcdiffDecoder {
         return this.applyBase64DeltaInternal(delta);
     }
 
+    /**
+     * Applies the base64 encoded {@code delta} to the result of applying the previous delta or to the base data
+     * if no previous delta has been applied yet. The base64 text is decoded where it is, so a delta held in a
+     * larger buffer, such as a field of a parsed message, does not have to be copied into a {@link String} first.
+     * Base data has to be set by {@link VcdiffDecoder#setBase(byte[])},
+     * {@link VcdiffDecoder#setBase(String)} or {@link VcdiffDecoder#setBase64Base(String)}
+     * before calling this method for the first time.
+     * @param delta The buffer holding the delta as base64 text
+     * @param offset The position of the first character of the delta in {@code delta}
+     * @param length The number of characters of the delta
+     * @return {@link DeltaApplicationResult} instance
+     * @throws IOException Delta application failed
+     * @throws IllegalStateException The decoder is not initialized by calling {@link VcdiffDecoder#setBase(byte[])},
+     * {@link VcdiffDecoder#setBase(String)} or {@link VcdiffDecoder#setBase64Base(String)}
+     * @throws IllegalArgumentException The provided {@code delta} is not a valid VCDIFF, or {@code offset} and
+     * {@code length} do not lie within it
+     */
+    public DeltaApplicationResult applyBase64Delta(char[] delta, int offset, int length) throws IllegalStateException, IllegalArgumentException, IOException {
+        return this.applyBase64DeltaInternal(delta, offset, length);
+    }
+
+    /**
+     * Applies the base64 encoded {@code delta} to the result of applying the previous delta or to the base data
+     * if no previous delta has been applied yet. The base64 text is decoded where it is, so a delta held in a
+     * larger buffer, such as a field of a parsed message, does not have to be copied into a {@link String} first.
+     * Base data has to be set by {@link VcdiffDecoder#setBase(byte[])},
+     * {@link VcdiffDecoder#setBase(String)} or {@link VcdiffDecoder#setBase64Base(String)}
+     * before calling this method for the first time.
+     * @param delta The sequence holding the delta as base64 text, e.g. a {@link StringBuilder} or a {@link java.nio.CharBuffer}
+     * @param offset The index of the first character of the delta in {@code delta}
+     * @param length The number of characters of the delta
+     * @return {@link DeltaApplicationResult} instance
+     * @throws IOException Delta application failed
+     * @throws IllegalStateException The decoder is not initialized by calling {@link VcdiffDecoder#setBase(byte[])},
+     * {@link VcdiffDecoder#setBase(String)} or {@link VcdiffDecoder#setBase64Base(String)}
+     * @throws IllegalArgumentException The provided {@code delta} is not a valid VCDIFF, or {@code offset} and
+     * {@code length} do not lie within it
+     */
+    public DeltaApplicationResult applyBase64Delta(CharSequence delta, int offset, int length) throws IllegalStateException, IllegalArgumentException, IOException {
+        return this.applyBase64DeltaInternal(delta, offset, length);
+    }
+
+    /**
+     * Applies the base64 encoded {@code delta} to the result of applying the previous delta or to the base data
+     * if no previous delta has been applied yet. The base64 text is decoded where it is, so a delta held in a
+     * larger buffer, such as a field of a parsed message, does not have to be copied into a {@link String} first.
+     * Base data has to be set by {@link VcdiffDecoder#setBase(byte[])},
+     * {@link VcdiffDecoder#setBase(String)} or {@link VcdiffDecoder#setBase64Base(String)}
+     * before calling this method for the first time.
+     * @param delta The buffer holding the delta as ASCII base64 text, e.g. the raw bytes of a JSON message
+     * @param offset The position of the first character of the delta in {@code delta}
+     * @param length The number of characters of the delta
+     * @return {@link DeltaApplicationResult} instance
+     * @throws IOException Delta application failed
+     * @throws IllegalStateException The decoder is not initialized by calling {@link VcdiffDecoder#setBase(byte[])},
+     * {@link VcdiffDecoder#setBase(String)} or {@link VcdiffDecoder#setBase64Base(String)}
+     * @throws IllegalArgumentException The provided {@code delta} is not a valid VCDIFF, or {@code offset} and
+     * {@code length} do not lie within it
+     */
+    public DeltaApplicationResult applyBase64Delta(byte[] delta, int offset, int length) throws IllegalStateException, IllegalArgumentException, IOException {
+        return this.applyBase64DeltaInternal(delta, offset, length);
+    }
+
+    /**
+     * Applies the base64 encoded {@code delta} to the result of applying the previous delta or to the base data
+     * if no previous delta has been applied yet. The base64 text is decoded where it is, so a delta held in a
+     * larger buffer, such as a field of a parsed message, does not have to be copied into a {@link String} first.
+     * Base data has to be set by {@link VcdiffDecoder#setBase(byte[])},
+     * {@link VcdiffDecoder#setBase(String)} or {@link VcdiffDecoder#setBase64Base(String)}
+     * before calling this method for the first time.
+     * @param delta The buffer holding the delta as ASCII base64 text. It is read with absolute gets, so its position is
+     *              left unchanged.
+     * @param offset The index of the first character of the delta in {@code delta}
+     * @param length The number of characters of the delta
+     * @return {@link DeltaApplicationResult} instance
+     * @throws IOException Delta application failed
+     * @throws IllegalStateException The decoder is not initialized by calling {@link VcdiffDecoder#setBase(byte[])},
+     * {@link VcdiffDecoder#setBase(String)} or {@link VcdiffDecoder#setBase64Base(String)}
+     * @throws IllegalArgumentException The provided {@code delta} is not a valid VCDIFF, or {@code offset} and
+     * {@code length} do not lie within it
+     */
+    public DeltaApplicationResult applyBase64Delta(ByteBuffer delta, int offset, int length) throws IllegalStateException, IllegalArgumentException, IOException {
+        return this.applyBase64DeltaInternal(delta, offset, length);
+    }
+
     /**
      * Sets the base object used for the next delta application (see {@link VcdiffDecoder#applyDelta(byte[])} and
      * {@link VcdiffDecoder#applyBase64Delta(String)}).
@@ -48,6 +227,17 @@ public class VcdiffDecoder extends BaseVcdiffDecoder {
         this.setBaseInternal(newBase);
     }
 
+    /**
+     * Sets the base object used for the next delta application (see {@link VcdiffDecoder#applyDelta(byte[])} and
+     * {@link VcdiffDecoder#applyBase64Delta(String)}).
+     * @param newBase The buffer to be set as new base, read from its position to its limit. Its contents are copied
+     *                and its position is left unchanged.
+     * @throws IllegalArgumentException The provided {@code newBase} parameter is null
+     */
+    public void setBase(ByteBuffer newBase) throws IllegalArgumentException {
+        this.setBaseInternal(newBase);
+    }
+
     /**
      * Sets the base object used for the next delta application (see {@link VcdiffDecoder#applyDelta(byte[])} and
      * {@link VcdiffDecoder#applyBase64Delta(String)}).
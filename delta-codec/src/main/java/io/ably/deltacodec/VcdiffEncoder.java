@@ -0,0 +1,229 @@
+package io.ably.deltacodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Generates VCDIFF deltas that {@link VcdiffDecoder} and {@link CheckedVcdiffDecoder} can apply.
+ *
+ * <p>
+ * The base is indexed once by {@link VcdiffEncoder#setBase(byte[])} with a hash of each of its 16 byte blocks, and
+ * the index is reused for every target encoded against that base. Each target is scanned with a rolling hash,
+ * matching blocks are extended in both directions and emitted as COPY instructions, and the bytes between matches
+ * as ADD instructions. Repeated blocks within the target are matched too. The prefix and suffix a target shares with
+ * the base are copied without being scanned.
+ *
+ * <p>
+ * When each target becomes the base for the next one, as in a channel stream, {@link VcdiffEncoder#encodeNext(byte[])}
+ * carries the index over from one base to the next, the way {@link VcdiffDecoder#applyDelta(byte[])} retains each
+ * result as the next base. Only the blocks of the region that changed are indexed again.
+ *
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class VcdiffEncoder {
+    /* Number of candidate blocks verified for each target position */
+    private static final int MAX_CANDIDATES = 8;
+
+    private final VcdiffWindowWriter writer = new VcdiffWindowWriter();
+    private final TargetBuffer output = new TargetBuffer(null);
+    private VcdiffBlockIndex baseIndex;
+
+    /* Best match found by the last call to findMatch */
+    private int matchAddress;
+    private int matchStart;
+    private int matchLength;
+
+    /* Lengths of the prefix and suffix the last encoded target shares with the base */
+    private int prefixLength;
+    private int suffixLength;
+
+    /**
+     * Sets the base the following targets are encoded against, and indexes it.
+     * The array is retained, not copied, so it must not be modified while it is the base.
+     * @param newBase The byte[] to be set as new base
+     * @throws IllegalArgumentException The provided {@code newBase} parameter is null
+     */
+    public void setBase(byte[] newBase) throws IllegalArgumentException {
+        if (newBase == null) {
+            throw new IllegalArgumentException("newBase cannot be null");
+        }
+
+        VcdiffBlockIndex index = new VcdiffBlockIndex(newBase, newBase.length, 0);
+        index.addBlocks(newBase.length);
+        this.baseIndex = index;
+    }
+
+    /**
+     * Sets the base the following targets are encoded against, and indexes it
+     * @param newBase The string to be set as new base, encoded as UTF-8
+     * @throws IllegalArgumentException The provided {@code newBase} parameter is null
+     */
+    public void setBase(String newBase) throws IllegalArgumentException {
+        if (newBase == null) {
+            throw new IllegalArgumentException("newBase cannot be null");
+        }
+
+        this.setBase(newBase.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Generates a delta that turns the base into {@code target}. Base data has to be set by
+     * {@link VcdiffEncoder#setBase(byte[])} or {@link VcdiffEncoder#setBase(String)} before calling this method.
+     * @param target The data to be encoded
+     * @return The VCDIFF delta
+     * @throws IllegalStateException The encoder is not initialized by calling {@link VcdiffEncoder#setBase(byte[])}
+     * or {@link VcdiffEncoder#setBase(String)}
+     * @throws IllegalArgumentException The provided {@code target} parameter is null
+     */
+    public byte[] encode(byte[] target) throws IllegalStateException, IllegalArgumentException {
+        if (this.baseIndex == null) {
+            throw new IllegalStateException("Uninitialized encoder - setBase() should be called first");
+        }
+        if (target == null) {
+            throw new IllegalArgumentException("target cannot be null");
+        }
+
+        this.output.setLength(0);
+        VcdiffWindowWriter.writeHeader(this.output);
+        this.writer.start(this.baseIndex.length());
+        this.writeInstructions(target);
+        this.writer.finish(this.output);
+        return Arrays.copyOf(this.output.array(), this.output.length());
+    }
+
+    /**
+     * Generates a delta that turns the base into {@code target}. Base data has to be set by
+     * {@link VcdiffEncoder#setBase(byte[])} or {@link VcdiffEncoder#setBase(String)} before calling this method.
+     * @param target The string to be encoded, encoded as UTF-8
+     * @return The VCDIFF delta
+     * @throws IllegalStateException The encoder is not initialized by calling {@link VcdiffEncoder#setBase(byte[])}
+     * or {@link VcdiffEncoder#setBase(String)}
+     * @throws IllegalArgumentException The provided {@code target} parameter is null
+     */
+    public byte[] encode(String target) throws IllegalStateException, IllegalArgumentException {
+        if (target == null) {
+            throw new IllegalArgumentException("target cannot be null");
+        }
+
+        return this.encode(target.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Generates a delta that turns the base into {@code target}, and then sets {@code target} as the base for the
+     * next delta. The index of the previous base is updated for the changed region only. The array is retained, not
+     * copied, so it must not be modified while it is the base. Base data has to be set by
+     * {@link VcdiffEncoder#setBase(byte[])} or {@link VcdiffEncoder#setBase(String)} before calling this method
+     * for the first time.
+     * @param target The data to be encoded
+     * @return The VCDIFF delta
+     * @throws IllegalStateException The encoder is not initialized by calling {@link VcdiffEncoder#setBase(byte[])}
+     * or {@link VcdiffEncoder#setBase(String)}
+     * @throws IllegalArgumentException The provided {@code target} parameter is null
+     */
+    public byte[] encodeNext(byte[] target) throws IllegalStateException, IllegalArgumentException {
+        byte[] delta = this.encode(target);
+        this.baseIndex.update(target, target.length, this.prefixLength, this.suffixLength);
+        return delta;
+    }
+
+    private void writeInstructions(byte[] target) {
+        byte[] base = this.baseIndex.data();
+        int baseLength = this.baseIndex.length();
+        int length = target.length;
+        int prefix = 0;
+        int maxPrefix = Math.min(baseLength, length);
+        while (prefix < maxPrefix && base[prefix] == target[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        int maxSuffix = maxPrefix - prefix;
+        while (suffix < maxSuffix && base[baseLength - suffix - 1] == target[length - suffix - 1]) {
+            suffix++;
+        }
+        this.prefixLength = prefix;
+        this.suffixLength = suffix;
+
+        // Content shared with the start and the end of the base is copied without scanning it
+        int start = 0;
+        int end = length;
+        if (prefix >= VcdiffBlockIndex.BLOCK_SIZE) {
+            this.writer.copy(0, prefix);
+            start = prefix;
+        }
+        if (suffix >= VcdiffBlockIndex.BLOCK_SIZE) {
+            end = length - suffix;
+        }
+        this.writeInstructions(target, start, end);
+        if (end < length) {
+            this.writer.copy(baseLength - suffix, suffix);
+        }
+    }
+
+    private void writeInstructions(byte[] target, int start, int end) {
+        VcdiffBlockIndex targetIndex = new VcdiffBlockIndex(target, end, start);
+        int pending = start;
+        int position = start;
+        int hash = end - start >= VcdiffBlockIndex.BLOCK_SIZE ? VcdiffBlockIndex.hash(target, start) : 0;
+        while (position + VcdiffBlockIndex.BLOCK_SIZE <= end) {
+            targetIndex.addBlocks(position);
+            if (this.findMatch(target, position, pending, end, hash, targetIndex)) {
+                this.writer.add(target, pending, this.matchStart - pending);
+                this.writer.copy(this.matchAddress, this.matchLength);
+                position = this.matchStart + this.matchLength;
+                pending = position;
+                if (position + VcdiffBlockIndex.BLOCK_SIZE <= end) {
+                    hash = VcdiffBlockIndex.hash(target, position);
+                }
+                continue;
+            }
+            if (position + VcdiffBlockIndex.BLOCK_SIZE == end) {
+                break;
+            }
+            hash = VcdiffBlockIndex.roll(hash, target[position], target[position + VcdiffBlockIndex.BLOCK_SIZE]);
+            position++;
+        }
+        this.writer.add(target, pending, end - pending);
+    }
+
+    /**
+     * Looks up the blocks of the base and of the target preceding {@code position} that match the target block at
+     * {@code position}, and extends each match forwards up to {@code end} and backwards down to {@code pending}
+     * @return true if a match was found, described by matchAddress, matchStart and matchLength
+     */
+    private boolean findMatch(byte[] target, int position, int pending, int end, int hash, VcdiffBlockIndex targetIndex) {
+        this.matchLength = 0;
+        this.findMatch(this.baseIndex, 0, target, position, pending, end, hash);
+        this.findMatch(targetIndex, this.baseIndex.length(), target, position, pending, end, hash);
+        return this.matchLength > 0;
+    }
+
+    private void findMatch(VcdiffBlockIndex index, int addressOffset, byte[] target, int position, int pending, int end, int hash) {
+        byte[] dictionary = index.data();
+        int dictionaryLength = index.length();
+        int candidates = 0;
+        for (int entry = index.first(hash); entry >= 0 && candidates < MAX_CANDIDATES; entry = index.next(entry)) {
+            candidates++;
+            int candidate = index.position(entry);
+            // Matches within the target may overlap the bytes they produce
+            int forward = 0;
+            while (position + forward < end && candidate + forward < dictionaryLength &&
+                    dictionary[candidate + forward] == target[position + forward]) {
+                forward++;
+            }
+            if (forward < VcdiffBlockIndex.BLOCK_SIZE) {
+                continue;
+            }
+            int backward = 0;
+            while (position - backward > pending && candidate - backward > 0 &&
+                    dictionary[candidate - backward - 1] == target[position - backward - 1]) {
+                backward++;
+            }
+            if (forward + backward > this.matchLength) {
+                this.matchAddress = addressOffset + candidate - backward;
+                this.matchStart = position - backward;
+                this.matchLength = forward + backward;
+            }
+        }
+    }
+}
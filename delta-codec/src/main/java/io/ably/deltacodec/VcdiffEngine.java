@@ -0,0 +1,44 @@
+package io.ably.deltacodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Decodes a complete VCDIFF delta against a source. Implementations are stateful and not thread safe,
+ * each decoder owns its own engine instance.
+ */
+interface VcdiffEngine {
+    /**
+     * Decodes the {@code delta} against the {@code source} into the {@code target} buffer
+     * @param source The source (base) data, from index 0 to its limit. Its position is left unchanged.
+     * @param delta The buffer holding the VCDIFF delta, including the VCDIFF header
+     * @param deltaOffset The position of the delta in {@code delta}
+     * @param deltaLength The length of the delta
+     * @param target The buffer to decode into, at least {@code targetLength} bytes long
+     * @param targetLength The exact length of the target, see {@link VcdiffFormat#targetLength(byte[], int, int)}
+     * @throws IOException The delta is malformed or uses unsupported features
+     */
+    void decode(ByteBuffer source, byte[] delta, int deltaOffset, int deltaLength, byte[] target, int targetLength) throws IOException;
+
+    /**
+     * Decodes a delta read from a stream against the {@code source}, writing each window to {@code output} as soon as
+     * it has been decoded
+     * @param source The source (base) data, from index 0 to its limit. Its position is left unchanged.
+     * @param header The first bytes of the delta, already read from {@code delta} to validate the VCDIFF header
+     * @param delta The rest of the delta
+     * @param output The stream every decoded window is written to
+     * @param target Accumulates the complete target
+     * @throws IOException The delta is malformed, uses unsupported features, or reading or writing failed
+     */
+    void decode(ByteBuffer source, byte[] header, InputStream delta, OutputStream output, TargetBuffer target) throws IOException;
+
+    /**
+     * Sets the pool large deltas made of several independent windows may be decoded on in parallel. Engines that
+     * cannot decode windows in parallel ignore it.
+     * @param pool The pool, or null to decode every window on the calling thread
+     */
+    void setForkJoinPool(ForkJoinPool pool);
+}
@@ -0,0 +1,165 @@
+package io.ably.deltacodec;
+
+import java.io.IOException;
+
+/**
+ * Constants and low level helpers for reading and writing the RFC 3284 VCDIFF format
+ */
+final class VcdiffFormat {
+    static final byte MAGIC_0 = (byte)0xd6;
+    static final byte MAGIC_1 = (byte)0xc3;
+    static final byte MAGIC_2 = (byte)0xc4;
+    static final byte VERSION = (byte)0;
+    static final int MAGIC_LENGTH = 4;
+    /* The magic bytes followed by the version, read as a big-endian int */
+    static final int MAGIC = 0xd6c3c400;
+    /* The largest target accepted, the default limit of vcdiff-java. Target lengths are read from the headers of
+       untrusted deltas, so they are checked before anything is allocated for them. */
+    static final int MAX_TARGET_LENGTH = 1 << 26;
+
+    /* Header indicator bits */
+    static final int VCD_DECOMPRESS = 0x01;
+    static final int VCD_CODETABLE = 0x02;
+
+    /* Window indicator bits */
+    static final int VCD_SOURCE = 0x01;
+    static final int VCD_TARGET = 0x02;
+
+    /* Instruction types */
+    static final int NOOP = 0;
+    static final int ADD = 1;
+    static final int RUN = 2;
+    static final int COPY = 3;
+
+    /* Address modes that do not use the address cache */
+    static final int MODE_SELF = 0;
+    static final int MODE_HERE = 1;
+
+    static final int DEFAULT_NEAR_CACHE_SIZE = 4;
+    static final int DEFAULT_SAME_CACHE_SIZE = 3;
+
+    private VcdiffFormat() {}
+
+    /**
+     * Computes the total length of the target a delta decodes to by walking the file and window headers,
+     * without decoding any instructions
+     * @param delta The buffer holding the delta, including the VCDIFF header
+     * @param offset The position of the delta in {@code delta}
+     * @param length The length of the delta
+     * @return The total target length
+     * @throws IOException The headers are malformed or declare a target longer than {@link #MAX_TARGET_LENGTH}
+     */
+    static int targetLength(byte[] delta, int offset, int length) throws IOException {
+        int end = offset + length;
+        if (!hasMagic(delta, offset, length) || length == MAGIC_LENGTH) {
+            throw invalid("missing header");
+        }
+        int position = offset + MAGIC_LENGTH;
+        int indicator = delta[position++];
+        if ((indicator & VCD_DECOMPRESS) != 0) {
+            position++;
+        }
+        if ((indicator & VCD_CODETABLE) != 0) {
+            position += 2;
+            long packed = readVarint(delta, position, end);
+            position = next(packed);
+            if (value(packed) > end - position) {
+                throw invalid("custom code table exceeds the end of the delta");
+            }
+            position += value(packed);
+        }
+
+        long total = 0;
+        while (position < end) {
+            int windowIndicator = delta[position++];
+            if ((windowIndicator & (VCD_SOURCE | VCD_TARGET)) != 0) {
+                position = next(readVarint(delta, position, end));
+                position = next(readVarint(delta, position, end));
+            }
+            long packed = readVarint(delta, position, end);
+            position = next(packed);
+            int deltaLength = value(packed);
+            if (deltaLength > end - position) {
+                throw invalid("window exceeds the end of the delta");
+            }
+            total += value(readVarint(delta, position, position + deltaLength));
+            if (total > MAX_TARGET_LENGTH) {
+                throw targetTooLarge();
+            }
+            position += deltaLength;
+        }
+        if (position != end) {
+            throw invalid("unexpected end of data");
+        }
+        return (int)total;
+    }
+
+    static boolean hasMagic(byte[] data, int offset, int length) {
+        return length >= MAGIC_LENGTH &&
+                data[offset] == MAGIC_0 &&
+                data[offset + 1] == MAGIC_1 &&
+                data[offset + 2] == MAGIC_2 &&
+                data[offset + 3] == VERSION;
+    }
+
+    /**
+     * Reads an RFC 3284 variable length integer without allocating. The value and the position following it are
+     * packed into the returned long; use {@link #value(long)} and {@link #next(long)} to unpack them.
+     * @param data The buffer to read from
+     * @param position The position of the first byte of the integer
+     * @param limit The position the integer must end before
+     * @return The packed value and next position
+     * @throws IOException The integer is truncated or does not fit into 31 bits
+     */
+    static long readVarint(byte[] data, int position, int limit) throws IOException {
+        int value = 0;
+        while (position < limit) {
+            int b = data[position++];
+            if (value > (Integer.MAX_VALUE >>> 7)) {
+                throw invalid("integer overflow");
+            }
+            value = (value << 7) | (b & 0x7f);
+            if ((b & 0x80) == 0) {
+                return ((long)position << 32) | value;
+            }
+        }
+        throw invalid("unexpected end of data");
+    }
+
+    /**
+     * Writes an RFC 3284 variable length integer
+     * @param output The buffer to append the integer to
+     * @param value The non-negative value
+     */
+    static void writeVarint(TargetBuffer output, int value) {
+        int length = varintLength(value);
+        for (int shift = 7 * (length - 1); shift > 0; shift -= 7) {
+            output.write(0x80 | ((value >>> shift) & 0x7f));
+        }
+        output.write(value & 0x7f);
+    }
+
+    static int varintLength(int value) {
+        int length = 1;
+        while ((value >>>= 7) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    static int value(long packed) {
+        return (int)packed;
+    }
+
+    static int next(long packed) {
+        return (int)(packed >>> 32);
+    }
+
+    static IOException targetTooLarge() {
+        return invalid("target exceeds limit of " + MAX_TARGET_LENGTH + " bytes");
+    }
+
+    static IOException invalid(String reason) {
+        return new IOException("Invalid VCDIFF delta - " + reason);
+    }
+}
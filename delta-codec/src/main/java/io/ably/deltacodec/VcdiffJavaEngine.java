@@ -0,0 +1,101 @@
+package io.ably.deltacodec;
+
+import com.davidehrmann.vcdiff.VCDiffDecoder;
+import com.davidehrmann.vcdiff.VCDiffDecoderBuilder;
+import com.davidehrmann.vcdiff.VCDiffStreamingDecoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * {@link VcdiffEngine} backed by the vcdiff-java library
+ */
+final class VcdiffJavaEngine implements VcdiffEngine {
+    private final VCDiffDecoder decoder = VCDiffDecoderBuilder.builder().buildSimple();
+
+    @Override
+    public void decode(ByteBuffer source, byte[] delta, int deltaOffset, int deltaLength, byte[] target, int targetLength) throws IOException {
+        TargetOutputStream decoded = new TargetOutputStream(target, targetLength);
+        this.decoder.decode(source.duplicate(), ByteBuffer.wrap(delta, deltaOffset, deltaLength), decoded);
+        if (decoded.position != targetLength) {
+            throw VcdiffFormat.invalid("target is shorter than expected");
+        }
+    }
+
+    @Override
+    public void decode(ByteBuffer source, byte[] header, InputStream delta, OutputStream output, TargetBuffer target) throws IOException {
+        VCDiffStreamingDecoder streamingDecoder = VCDiffDecoderBuilder.builder().buildStreaming();
+        streamingDecoder.startDecoding(source.duplicate());
+        TeeOutputStream decoded = new TeeOutputStream(output, target);
+        streamingDecoder.decodeChunk(ByteBuffer.wrap(header), decoded);
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = delta.read(chunk)) >= 0) {
+            streamingDecoder.decodeChunk(ByteBuffer.wrap(chunk, 0, read), decoded);
+        }
+        streamingDecoder.finishDecoding();
+    }
+
+    @Override
+    public void setForkJoinPool(ForkJoinPool pool) {
+        // vcdiff-java decodes windows one after another
+    }
+
+    /**
+     * Writes decoded data both to the caller's stream and to the accumulated target
+     */
+    private static final class TeeOutputStream extends OutputStream {
+        private final OutputStream output;
+        private final TargetBuffer target;
+
+        TeeOutputStream(OutputStream output, TargetBuffer target) {
+            this.output = output;
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[] { (byte)b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.target.write(b, off, len);
+            this.output.write(b, off, len);
+        }
+    }
+
+    /**
+     * Writes into a preallocated target buffer instead of growing one
+     */
+    private static final class TargetOutputStream extends OutputStream {
+        private final byte[] target;
+        private final int limit;
+        private int position;
+
+        TargetOutputStream(byte[] target, int limit) {
+            this.target = target;
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (this.position >= this.limit) {
+                throw VcdiffFormat.invalid("target is longer than expected");
+            }
+            this.target[this.position++] = (byte)b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > this.limit - this.position) {
+                throw VcdiffFormat.invalid("target is longer than expected");
+            }
+            System.arraycopy(b, off, this.target, this.position, len);
+            this.position += len;
+        }
+    }
+}
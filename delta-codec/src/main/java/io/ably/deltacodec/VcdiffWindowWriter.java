@@ -0,0 +1,235 @@
+package io.ably.deltacodec;
+
+import java.util.Arrays;
+
+/**
+ * Writes RFC 3284 VCDIFF windows using the default code table.
+ *
+ * <p>
+ * Instructions are collected into separate data, instruction and address sections. Each instruction is combined
+ * with the previous one when the code table has a double instruction code for the pair, and COPY addresses are
+ * encoded in the cheapest mode offered by the address cache. The section buffers are kept across windows.
+ */
+final class VcdiffWindowWriter {
+    private static final VcdiffCodeTable CODE_TABLE = VcdiffCodeTable.DEFAULT;
+    private static final int NEAR_SIZE = VcdiffFormat.DEFAULT_NEAR_CACHE_SIZE;
+    private static final int SAME_SIZE = VcdiffFormat.DEFAULT_SAME_CACHE_SIZE;
+    private static final int MODES = 2 + NEAR_SIZE + SAME_SIZE;
+    /* Instruction sizes in a code table are single bytes */
+    private static final int MAX_TABLE_SIZE = 256;
+
+    /* Single instruction code for each (instruction, size, mode), -1 if there is none */
+    private static final short[] SINGLE_CODES = createSingleCodes();
+    /* Double instruction codes starting with the single instruction of each code */
+    private static final int[][] DOUBLE_CODES = createDoubleCodes();
+
+    private final TargetBuffer data = new TargetBuffer(null);
+    private final TargetBuffer instructions = new TargetBuffer(null);
+    private final TargetBuffer addresses = new TargetBuffer(null);
+    private final int[] near = new int[NEAR_SIZE];
+    private final int[] same = new int[SAME_SIZE * 256];
+    private int nextNearSlot;
+    private int sourceLength;
+    private int targetLength;
+    /* Position of the last single instruction code that can still be combined with the next instruction */
+    private int lastCodePosition;
+
+    /**
+     * Writes the VCDIFF file header for a delta using the default code table
+     * @param output The buffer the header is appended to
+     */
+    static void writeHeader(TargetBuffer output) {
+        output.write(VcdiffFormat.MAGIC_0);
+        output.write(VcdiffFormat.MAGIC_1);
+        output.write(VcdiffFormat.MAGIC_2);
+        output.write(VcdiffFormat.VERSION);
+        output.write(0);
+    }
+
+    /**
+     * Starts a new window whose source segment is the first {@code sourceLength} bytes of the source
+     * @param sourceLength The length of the source segment, 0 for a window without a source segment
+     */
+    void start(int sourceLength) {
+        this.data.setLength(0);
+        this.instructions.setLength(0);
+        this.addresses.setLength(0);
+        Arrays.fill(this.near, 0);
+        Arrays.fill(this.same, 0);
+        this.nextNearSlot = 0;
+        this.sourceLength = sourceLength;
+        this.targetLength = 0;
+        this.lastCodePosition = -1;
+    }
+
+    /**
+     * @return The number of target bytes produced by the instructions written to the current window
+     */
+    int targetLength() {
+        return this.targetLength;
+    }
+
+    void add(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        this.writeInstruction(VcdiffFormat.ADD, length, 0);
+        this.data.write(bytes, offset, length);
+    }
+
+    void run(byte value, int length) {
+        if (length == 0) {
+            return;
+        }
+        this.writeInstruction(VcdiffFormat.RUN, length, 0);
+        this.data.write(value);
+    }
+
+    /**
+     * Writes a COPY instruction
+     * @param address The address in the window's address space: the source segment followed by the target window
+     * @param length The number of bytes to copy
+     */
+    void copy(int address, int length) {
+        if (length == 0) {
+            return;
+        }
+        int here = this.sourceLength + this.targetLength;
+        int mode = VcdiffFormat.MODE_SELF;
+        int encoded = address;
+        int encodedLength = VcdiffFormat.varintLength(address);
+        if (VcdiffFormat.varintLength(here - address) < encodedLength) {
+            mode = VcdiffFormat.MODE_HERE;
+            encoded = here - address;
+            encodedLength = VcdiffFormat.varintLength(encoded);
+        }
+        for (int i = 0; i < NEAR_SIZE; i++) {
+            int offset = address - this.near[i];
+            if (offset >= 0 && VcdiffFormat.varintLength(offset) < encodedLength) {
+                mode = 2 + i;
+                encoded = offset;
+                encodedLength = VcdiffFormat.varintLength(offset);
+            }
+        }
+        int sameSlot = address % (SAME_SIZE * 256);
+        boolean useSame = this.same[sameSlot] == address && encodedLength > 1;
+        if (useSame) {
+            mode = 2 + NEAR_SIZE + sameSlot / 256;
+        }
+
+        this.writeInstruction(VcdiffFormat.COPY, length, mode);
+        if (useSame) {
+            this.addresses.write(sameSlot & 0xff);
+        } else {
+            VcdiffFormat.writeVarint(this.addresses, encoded);
+        }
+        this.near[this.nextNearSlot] = address;
+        this.nextNearSlot = (this.nextNearSlot + 1) % NEAR_SIZE;
+        this.same[sameSlot] = address;
+    }
+
+    /**
+     * Appends the current window to {@code output}
+     * @param output The buffer the window is appended to
+     */
+    void finish(TargetBuffer output) {
+        if (this.sourceLength > 0) {
+            output.write(VcdiffFormat.VCD_SOURCE);
+            VcdiffFormat.writeVarint(output, this.sourceLength);
+            VcdiffFormat.writeVarint(output, 0);
+        } else {
+            output.write(0);
+        }
+        int dataLength = this.data.length();
+        int instructionsLength = this.instructions.length();
+        int addressesLength = this.addresses.length();
+        int deltaLength = VcdiffFormat.varintLength(this.targetLength) + 1 +
+                VcdiffFormat.varintLength(dataLength) + VcdiffFormat.varintLength(instructionsLength) +
+                VcdiffFormat.varintLength(addressesLength) + dataLength + instructionsLength + addressesLength;
+        VcdiffFormat.writeVarint(output, deltaLength);
+        VcdiffFormat.writeVarint(output, this.targetLength);
+        output.write(0);
+        VcdiffFormat.writeVarint(output, dataLength);
+        VcdiffFormat.writeVarint(output, instructionsLength);
+        VcdiffFormat.writeVarint(output, addressesLength);
+        output.write(this.data.array(), 0, dataLength);
+        output.write(this.instructions.array(), 0, instructionsLength);
+        output.write(this.addresses.array(), 0, addressesLength);
+    }
+
+    private void writeInstruction(int inst, int size, int mode) {
+        this.targetLength += size;
+        if (size >= MAX_TABLE_SIZE) {
+            // Sizes that do not fit into the code table are written explicitly after a size 0 code
+            this.lastCodePosition = -1;
+            this.instructions.write(SINGLE_CODES[singleKey(inst, 0, mode)]);
+            VcdiffFormat.writeVarint(this.instructions, size);
+            return;
+        }
+
+        // Try to fold the instruction into the previous single instruction code
+        if (this.lastCodePosition >= 0) {
+            int lastCode = this.instructions.array()[this.lastCodePosition] & 0xff;
+            for (int code : DOUBLE_CODES[lastCode]) {
+                if ((CODE_TABLE.inst2[code] & 0xff) == inst && (CODE_TABLE.size2[code] & 0xff) == size &&
+                        (CODE_TABLE.mode2[code] & 0xff) == mode) {
+                    this.instructions.array()[this.lastCodePosition] = (byte)code;
+                    this.lastCodePosition = -1;
+                    return;
+                }
+            }
+        }
+
+        int code = SINGLE_CODES[singleKey(inst, size, mode)];
+        if (code >= 0) {
+            this.lastCodePosition = this.instructions.length();
+            this.instructions.write(code);
+        } else {
+            this.lastCodePosition = -1;
+            this.instructions.write(SINGLE_CODES[singleKey(inst, 0, mode)]);
+            VcdiffFormat.writeVarint(this.instructions, size);
+        }
+    }
+
+    private static int singleKey(int inst, int size, int mode) {
+        return (inst * MAX_TABLE_SIZE + size) * MODES + mode;
+    }
+
+    private static short[] createSingleCodes() {
+        short[] codes = new short[4 * MAX_TABLE_SIZE * MODES];
+        Arrays.fill(codes, (short)-1);
+        for (int code = 0; code < VcdiffCodeTable.SIZE; code++) {
+            int inst = CODE_TABLE.inst1[code] & 0xff;
+            int key = singleKey(inst, CODE_TABLE.size1[code] & 0xff, CODE_TABLE.mode1[code] & 0xff);
+            if (inst != VcdiffFormat.NOOP && CODE_TABLE.inst2[code] == VcdiffFormat.NOOP && codes[key] < 0) {
+                codes[key] = (short)code;
+            }
+        }
+        return codes;
+    }
+
+    private static int[][] createDoubleCodes() {
+        int[] counts = new int[VcdiffCodeTable.SIZE];
+        int[] firstCodes = new int[VcdiffCodeTable.SIZE];
+        for (int code = 0; code < VcdiffCodeTable.SIZE; code++) {
+            firstCodes[code] = -1;
+            if (CODE_TABLE.inst1[code] != VcdiffFormat.NOOP && CODE_TABLE.inst2[code] != VcdiffFormat.NOOP) {
+                firstCodes[code] = SINGLE_CODES[singleKey(CODE_TABLE.inst1[code] & 0xff, CODE_TABLE.size1[code] & 0xff, CODE_TABLE.mode1[code] & 0xff)];
+                if (firstCodes[code] >= 0) {
+                    counts[firstCodes[code]]++;
+                }
+            }
+        }
+        int[][] codes = new int[VcdiffCodeTable.SIZE][];
+        for (int code = 0; code < VcdiffCodeTable.SIZE; code++) {
+            codes[code] = new int[counts[code]];
+            counts[code] = 0;
+        }
+        for (int code = 0; code < VcdiffCodeTable.SIZE; code++) {
+            if (firstCodes[code] >= 0) {
+                codes[firstCodes[code]][counts[firstCodes[code]]++] = code;
+            }
+        }
+        return codes;
+    }
+}
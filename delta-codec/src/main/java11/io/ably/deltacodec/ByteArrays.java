@@ -0,0 +1,65 @@
+package io.ably.deltacodec;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Word-at-a-time helpers for the byte loops of the codec. This is the Java 11 implementation, selected from the
+ * multi-release jar in place of the Java 7 one: words are read with a single, possibly unaligned, load through var
+ * handles and ranges are compared with {@link Arrays#equals(byte[], int, int, byte[], int, int)}, which the JIT
+ * vectorizes.
+ */
+final class ByteArrays {
+    private static final VarHandle INT_BIG_ENDIAN = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG_LITTLE_ENDIAN = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private ByteArrays() {}
+
+    /**
+     * @return The 4 bytes from {@code offset} as a big-endian int
+     */
+    static int getIntBigEndian(byte[] data, int offset) {
+        return (int)INT_BIG_ENDIAN.get(data, offset);
+    }
+
+    /**
+     * @return The 8 bytes from {@code offset} as a little-endian long
+     */
+    static long getLongLittleEndian(byte[] data, int offset) {
+        return (long)LONG_LITTLE_ENDIAN.get(data, offset);
+    }
+
+    /**
+     * Checks 8 bytes at a time for a byte above 127, loading each group of 8 as a single long
+     * @return Whether the {@code length} bytes from {@code offset} are all ASCII
+     */
+    static boolean isAscii(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        for (; i <= end - 8; i += 8) {
+            if (((long)LONG_LITTLE_ENDIAN.get(data, i) & HIGH_BITS) != 0) {
+                return false;
+            }
+        }
+        for (; i < end; i++) {
+            if (data[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether the {@code length} bytes from {@code aOffset} in {@code a} equal those from {@code bOffset}
+     * in {@code b}
+     */
+    static boolean equals(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        if (a == b && aOffset == bOffset) {
+            return true;
+        }
+        return Arrays.equals(a, aOffset, aOffset + length, b, bOffset, bOffset + length);
+    }
+}
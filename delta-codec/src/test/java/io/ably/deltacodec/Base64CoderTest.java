@@ -0,0 +1,177 @@
+package io.ably.deltacodec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class Base64CoderTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void decodeIntoArrayMatchesDecode() {
+        Random random = new Random(3);
+        for (int length = 0; length < 100; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String encoded = "xx" + Base64Coder.encodeToString(data) + "yy";
+            int encodedLength = encoded.length() - 4;
+            assertEquals(length, Base64Coder.decodedLength(encoded, 2, encodedLength));
+            byte[] out = new byte[length + 3];
+            assertEquals(length, Base64Coder.decode(encoded, 2, encodedLength, out, 3));
+            assertArrayEquals(data, Arrays.copyOfRange(out, 3, length + 3));
+        }
+    }
+
+    @Test
+    public void decodeIntoArrayAcceptsUrlSafeCharacters() {
+        byte[] out = new byte[3];
+        Base64Coder.decode(new StringBuilder("-_-_"), 0, 4, out, 0);
+        assertArrayEquals(Base64Coder.decode("+/+/"), out);
+    }
+
+    @Test
+    public void decodeQuantumDecodesFourCharacters() {
+        assertEquals(0xd6c3c4, Base64Coder.decodeQuantum("1sPE", 0));
+        assertEquals(0x6f7200, Base64Coder.decodeQuantum("xb3I=", 1));
+        assertEquals(-1, Base64Coder.decodeQuantum("1s!E", 0));
+        assertEquals("or", new String(Base64Coder.decode("b3I="), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void decodeIntoArrayThrowsIllegalArgumentExceptionForIllegalCharacters() {
+        thrown.expect(IllegalArgumentException.class);
+        Base64Coder.decode("AB\u00e9D", 0, 4, new byte[3], 0);
+    }
+
+    @Test
+    public void decodeMatchesThePerCharacterDecoder() {
+        Random random = new Random(11);
+        for (int i = 0; i < 20000; i++) {
+            byte[] data = new byte[random.nextInt(64)];
+            random.nextBytes(data);
+            char[] encoded = Base64Coder.encode(data);
+            if (random.nextBoolean()) {
+                toUrlSafe(encoded);
+            }
+            assertDecodesLikeReference(encoded);
+        }
+    }
+
+    @Test
+    public void decodeRejectsTheInputsThePerCharacterDecoderRejects() {
+        Random random = new Random(7);
+        char[] illegal = new char[] { '=', '!', '.', ' ', '\n', '\u0000', '\u007f', '\u00e9', '\u00ff', '\u0141', '\u2013', '\uff0b' };
+        for (int i = 0; i < 20000; i++) {
+            byte[] data = new byte[1 + random.nextInt(64)];
+            random.nextBytes(data);
+            char[] encoded = Base64Coder.encode(data);
+            encoded[random.nextInt(encoded.length)] = illegal[random.nextInt(illegal.length)];
+            assertDecodesLikeReference(encoded);
+        }
+        for (String encoded : new String[] { "", "====", "A===", "AB==", "ABC=", "AB=C", "A=BC", "ABCDA===", "ABCDEFGHIJK=", "ABCDEFGH====" }) {
+            assertDecodesLikeReference(encoded.toCharArray());
+        }
+    }
+
+    private static void assertDecodesLikeReference(char[] encoded) {
+        String message = new String(encoded);
+        byte[] expected;
+        try {
+            expected = referenceDecode(encoded, 0, encoded.length);
+        } catch (IllegalArgumentException e) {
+            expected = null;
+        }
+        assertArrayEquals(message, expected, decodeOrNull(encoded, 0));
+        assertArrayEquals(message, expected, decodeOrNull(encoded, 1));
+        assertArrayEquals(message, expected, decodeOrNull(encoded, 2));
+    }
+
+    private static byte[] decodeOrNull(char[] encoded, int variant) {
+        try {
+            if (variant == 0) {
+                return Base64Coder.decode(encoded, 0, encoded.length);
+            }
+            if (variant == 1) {
+                return Base64Coder.decode(new String(encoded));
+            }
+            StringBuilder embedded = new StringBuilder("xyz").append(encoded).append("xyz");
+            byte[] out = new byte[Base64Coder.decodedLength(embedded, 3, encoded.length)];
+            Base64Coder.decode(embedded, 3, encoded.length, out, 0);
+            return out;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void toUrlSafe(char[] encoded) {
+        for (int i = 0; i < encoded.length; i++) {
+            if (encoded[i] == '+') {
+                encoded[i] = '-';
+            } else if (encoded[i] == '/') {
+                encoded[i] = '_';
+            }
+        }
+    }
+
+    // The per-character decoder Base64Coder shipped with before decoding whole blocks
+    private static byte[] referenceDecode(char[] in, int iOff, int iLen) {
+        byte[] map = new byte[128];
+        Arrays.fill(map, (byte)-1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            map[alphabet.charAt(i)] = (byte)i;
+        }
+        map['-'] = map['+'];
+        map['_'] = map['/'];
+
+        if (iLen % 4 != 0) {
+            throw new IllegalArgumentException();
+        }
+        while (iLen > 0 && in[iOff + iLen - 1] == '=') {
+            iLen--;
+        }
+        int oLen = (iLen * 3) / 4;
+        byte[] out = new byte[oLen];
+        int ip = iOff;
+        int iEnd = iOff + iLen;
+        int op = 0;
+        while (ip < iEnd) {
+            int i0 = in[ip++];
+            int i1 = in[ip++];
+            int i2 = ip < iEnd ? in[ip++] : 'A';
+            int i3 = ip < iEnd ? in[ip++] : 'A';
+            if (i0 > 127 || i1 > 127 || i2 > 127 || i3 > 127) {
+                throw new IllegalArgumentException();
+            }
+            int b0 = map[i0];
+            int b1 = map[i1];
+            int b2 = map[i2];
+            int b3 = map[i3];
+            if (b0 < 0 || b1 < 0 || b2 < 0 || b3 < 0) {
+                throw new IllegalArgumentException();
+            }
+            out[op++] = (byte)((b0 << 2) | (b1 >>> 4));
+            if (op < oLen) {
+                out[op++] = (byte)(((b1 & 0xf) << 4) | (b2 >>> 2));
+            }
+            if (op < oLen) {
+                out[op++] = (byte)(((b2 & 3) << 6) | b3);
+            }
+        }
+        return out;
+    }
+
+    @Test
+    public void decodedLengthThrowsIllegalArgumentExceptionWhenLengthIsNotAMultipleOfFour() {
+        thrown.expect(IllegalArgumentException.class);
+        Base64Coder.decodedLength("ABCDE", 0, 5);
+    }
+}
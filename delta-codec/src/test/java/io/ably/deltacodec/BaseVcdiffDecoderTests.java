@@ -4,10 +4,21 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public abstract class BaseVcdiffDecoderTests {
     protected final String stringBase = "Lorem ipsum dolor sit amet";
@@ -24,8 +35,20 @@ public abstract class BaseVcdiffDecoderTests {
     public ExpectedException thrown = ExpectedException.none();
 
     protected abstract DeltaApplicationResult applyDelta(byte[] delta) throws IOException, SequenceContinuityException;
+    protected abstract DeltaApplicationResult applyDelta(ByteBuffer delta) throws IOException, SequenceContinuityException;
+    protected abstract int applyDelta(ByteBuffer delta, ByteBuffer target) throws IOException, SequenceContinuityException;
+    protected abstract int applyDelta(InputStream delta, OutputStream target) throws IOException, SequenceContinuityException;
     protected abstract DeltaApplicationResult applyBase64Delta(String delta) throws IOException, SequenceContinuityException;
+
+    protected abstract DeltaApplicationResult applyBase64Delta(char[] delta, int offset, int length) throws IOException, SequenceContinuityException;
+
+    protected abstract DeltaApplicationResult applyBase64Delta(CharSequence delta, int offset, int length) throws IOException, SequenceContinuityException;
+
+    protected abstract DeltaApplicationResult applyBase64Delta(byte[] delta, int offset, int length) throws IOException, SequenceContinuityException;
+
+    protected abstract DeltaApplicationResult applyBase64Delta(ByteBuffer delta, int offset, int length) throws IOException, SequenceContinuityException;
     protected abstract void setBase(byte[] newBase);
+    protected abstract void setBase(ByteBuffer newBase);
     protected abstract void setBase(String newBase);
     protected abstract void setBase64Base(String newBase);
 
@@ -33,7 +56,7 @@ public abstract class BaseVcdiffDecoderTests {
     public void applyDeltaThrowsIllegalStateExceptionWhenBaseIsNull() throws IOException, SequenceContinuityException {
         thrown.expect(IllegalStateException.class);
         thrown.expectMessage("Uninitialized decoder - setBase() should be called first");
-        this.applyDelta(null);
+        this.applyDelta((byte[])null);
     }
 
     @Test
@@ -173,6 +196,18 @@ public abstract class BaseVcdiffDecoderTests {
         assertArrayEquals(this.expectedResult, result.asByteArray());
     }
 
+    @Test
+    public void setBaseStringEncodesNonAsciiStringsAsUtf8() throws IOException, SequenceContinuityException {
+        String base = "Z\u00fcrich \u2013 " + this.stringBase;
+        String target = base + ", \u00e0 bient\u00f4t \ud83d\ude00";
+        VcdiffEncoder encoder = new VcdiffEncoder();
+        encoder.setBase(base);
+        this.setBase(base);
+        DeltaApplicationResult result = this.applyDelta(encoder.encode(target));
+        assertEquals(target, result.asUtf8String());
+        assertFalse(result.isAscii());
+    }
+
     @Test
     public void setBase64BaseShouldSetBaseProperly() throws IOException, SequenceContinuityException {
         this.setBase64Base(this.base64Base);
@@ -180,4 +215,198 @@ public abstract class BaseVcdiffDecoderTests {
         assertNotNull(result);
         assertArrayEquals(this.expectedResult, result.asByteArray());
     }
+
+    @Test
+    public void applyBase64DeltaReadsRangesOfLargerBuffers() throws IOException, SequenceContinuityException {
+        String envelope = "{\"data\":\"" + this.base64Delta + "\",\"next\":\"" + this.base64SecondDelta + "\"}";
+        int start = envelope.indexOf(this.base64Delta);
+        int secondStart = envelope.indexOf(this.base64SecondDelta);
+
+        this.setBase(this.base);
+        assertArrayEquals(this.expectedResult, this.applyBase64Delta(envelope.toCharArray(), start, this.base64Delta.length()).asByteArray());
+        assertArrayEquals(this.secondExpectedResult, this.applyBase64Delta(new StringBuilder(envelope), secondStart, this.base64SecondDelta.length()).asByteArray());
+
+        this.setBase(this.base);
+        assertArrayEquals(this.expectedResult, this.applyBase64Delta((CharSequence)envelope, start, this.base64Delta.length()).asByteArray());
+
+        byte[] bytes = envelope.getBytes(StandardCharsets.US_ASCII);
+        this.setBase(this.base);
+        assertArrayEquals(this.expectedResult, this.applyBase64Delta(bytes, start, this.base64Delta.length()).asByteArray());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        assertArrayEquals(this.secondExpectedResult, this.applyBase64Delta(direct, secondStart, this.base64SecondDelta.length()).asByteArray());
+        assertEquals(0, direct.position());
+    }
+
+    @Test
+    public void applyBase64DeltaThrowsIllegalArgumentExceptionWhenRangeIsOutOfBounds() throws IOException, SequenceContinuityException {
+        this.setBase(this.base);
+        thrown.expect(IllegalArgumentException.class);
+        this.applyBase64Delta(this.base64Delta.toCharArray(), 4, this.base64Delta.length());
+    }
+
+    @Test
+    public void applyBase64DeltaThrowsIllegalArgumentExceptionWhenBytesAreNotAscii() throws IOException, SequenceContinuityException {
+        byte[] bytes = this.base64Delta.getBytes(StandardCharsets.US_ASCII);
+        bytes[20] = (byte)0xc1;
+        this.setBase(this.base);
+        thrown.expect(IllegalArgumentException.class);
+        this.applyBase64Delta(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void isBase64DeltaChecksTheHeader() {
+        assertTrue(VcdiffDecoder.isBase64Delta(this.base64Delta));
+        assertTrue(VcdiffDecoder.isBase64Delta(this.base64SecondDelta));
+        assertTrue(VcdiffDecoder.isBase64Delta("1sPEAAA="));
+        assertFalse(VcdiffDecoder.isBase64Delta("1sPEAA=="));
+        assertFalse(VcdiffDecoder.isBase64Delta(this.base64Base));
+        assertFalse(VcdiffDecoder.isBase64Delta("1sPEAAABGgA"));
+        assertFalse(VcdiffDecoder.isBase64Delta("1sPE!AABGgAo"));
+        assertFalse(VcdiffDecoder.isBase64Delta(null));
+    }
+
+    @Test
+    public void applyBase64DeltaThrowsIllegalArgumentExceptionWhenDeltaBodyIsNotBase64() throws IOException, SequenceContinuityException {
+        this.expectApplyBase64DeltaToThrowIllegalArgumentExceptionForDelta(this.base64Delta.substring(0, 12) + "!" + this.base64Delta.substring(13));
+    }
+
+    @Test
+    public void isDeltaByteBufferChecksHeaderFromPosition() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(this.delta.length + 2);
+        buffer.put(new byte[] { 1, 2 }).put(this.delta).flip();
+        assertFalse(VcdiffDecoder.isDelta(buffer));
+        buffer.position(2);
+        assertTrue(VcdiffDecoder.isDelta(buffer));
+        assertEquals(2, buffer.position());
+        assertTrue(VcdiffDecoder.isDelta(buffer.order(ByteOrder.LITTLE_ENDIAN)));
+    }
+
+    @Test
+    public void applyDeltaByteBufferAcceptsDirectBuffers() throws IOException, SequenceContinuityException {
+        ByteBuffer directBase = ByteBuffer.allocateDirect(this.base.length);
+        directBase.put(this.base).flip();
+        this.setBase(directBase);
+        assertEquals(0, directBase.position());
+        ByteBuffer directDelta = ByteBuffer.allocateDirect(this.delta.length);
+        directDelta.put(this.delta).flip();
+        DeltaApplicationResult result = this.applyDelta(directDelta);
+        assertArrayEquals(this.expectedResult, result.asByteArray());
+        assertEquals(0, directDelta.position());
+    }
+
+    @Test
+    public void applyDeltaByteBufferReadsHeapBuffersFromTheirPosition() throws IOException, SequenceContinuityException {
+        this.setBase(this.base);
+        byte[] padded = new byte[this.delta.length + 3];
+        System.arraycopy(this.delta, 0, padded, 3, this.delta.length);
+        ByteBuffer slice = ByteBuffer.wrap(padded, 1, padded.length - 1).slice();
+        slice.position(2);
+        assertArrayEquals(this.expectedResult, this.applyDelta(slice).asByteArray());
+        assertArrayEquals(this.secondExpectedResult, this.applyDelta(ByteBuffer.wrap(this.secondDelta).asReadOnlyBuffer()).asByteArray());
+    }
+
+    @Test
+    public void applyDeltaByteBufferWritesResultIntoTarget() throws IOException, SequenceContinuityException {
+        this.setBase(this.base);
+        ByteBuffer target = ByteBuffer.allocateDirect(this.expectedResult.length + 1);
+        target.put((byte)1);
+        assertEquals(this.expectedResult.length, this.applyDelta(ByteBuffer.wrap(this.delta), target));
+        assertEquals(target.capacity(), target.position());
+        byte[] written = new byte[this.expectedResult.length];
+        target.position(1);
+        target.get(written);
+        assertArrayEquals(this.expectedResult, written);
+    }
+
+    @Test
+    public void applyDeltaByteBufferThrowsBufferOverflowExceptionWithoutApplyingDeltaWhenTargetIsTooSmall() throws IOException, SequenceContinuityException {
+        this.setBase(this.base);
+        ByteBuffer target = ByteBuffer.allocate(this.expectedResult.length - 1);
+        try {
+            this.applyDelta(ByteBuffer.wrap(this.delta), target);
+        } catch (BufferOverflowException e) {
+            assertEquals(0, target.position());
+            assertArrayEquals(this.expectedResult, this.applyDelta(this.delta).asByteArray());
+            return;
+        }
+        throw new AssertionError("BufferOverflowException expected");
+    }
+
+    @Test
+    public void applyDeltaThrowsIOExceptionWithoutAllocatingWhenTargetExceedsLimit() throws IOException, SequenceContinuityException {
+        this.setBase(this.base);
+        // A single empty window declaring a target of 0x7ffffff0 bytes
+        byte[] delta = new byte[] { (byte)214, (byte)195, (byte)196, 0, 0, 0, 9, (byte)0x87, (byte)0xff, (byte)0xff, (byte)0xff, 0x70, 0, 0, 0, 0 };
+        try {
+            this.applyDelta(delta);
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith("exceeds limit of 67108864 bytes"));
+            assertArrayEquals(this.expectedResult, this.applyDelta(this.delta).asByteArray());
+            return;
+        }
+        throw new AssertionError("IOException expected");
+    }
+
+    @Test
+    public void applyDeltaThrowsIOExceptionWhenCustomCodeTableExceedsTheDelta() throws IOException, SequenceContinuityException {
+        this.setBase(this.base);
+        thrown.expect(IOException.class);
+        thrown.expectMessage("custom code table exceeds the end of the delta");
+        // A custom code table declaring 0x7fffffff bytes
+        this.applyDelta(new byte[] { (byte)214, (byte)195, (byte)196, 0, 2, 0, 0, (byte)0x87, (byte)0xff, (byte)0xff, (byte)0xff, 0x7f, 0, 0, 0 });
+    }
+
+    @Test
+    public void applyDeltaStreamWritesResultAndUpdatesBase() throws IOException, SequenceContinuityException {
+        this.setBase(this.base);
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        assertEquals(this.expectedResult.length, this.applyDelta(new ByteArrayInputStream(this.delta), target));
+        assertArrayEquals(this.expectedResult, target.toByteArray());
+        assertArrayEquals(this.secondExpectedResult, this.applyDelta(this.secondDelta).asByteArray());
+    }
+
+    @Test
+    public void applyDeltaStreamThrowsIllegalArgumentExceptionWhenHeaderIsInvalid() throws IOException, SequenceContinuityException {
+        this.setBase(this.base);
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("The provided delta is not a valid VCDIFF delta");
+        this.applyDelta(new ByteArrayInputStream(new byte[] { (byte)214, (byte)195 }), new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void applyDeltaStreamThrowsIOExceptionWhenTargetExceedsLimit() throws IOException, SequenceContinuityException {
+        // A single empty window declaring a target of 0x7ffffff0 bytes
+        this.expectApplyDeltaStreamToThrowIOExceptionForDelta(new byte[] { (byte)214, (byte)195, (byte)196, 0, 0, 0, 9, (byte)0x87, (byte)0xff, (byte)0xff, (byte)0xff, 0x70, 0, 0, 0, 0 });
+    }
+
+    @Test
+    public void applyDeltaStreamThrowsIOExceptionWhenWindowIsLongerThanTheStream() throws IOException, SequenceContinuityException {
+        // A window declaring a body of 0x7ffffff0 bytes, of which only 2 follow
+        this.expectApplyDeltaStreamToThrowIOExceptionForDelta(new byte[] { (byte)214, (byte)195, (byte)196, 0, 0, 0, (byte)0x87, (byte)0xff, (byte)0xff, (byte)0xff, 0x70, 1, 0 });
+    }
+
+    private void expectApplyDeltaStreamToThrowIOExceptionForDelta(byte[] delta) throws IOException, SequenceContinuityException {
+        this.setBase(this.base);
+        try {
+            this.applyDelta(new ByteArrayInputStream(delta), new ByteArrayOutputStream());
+        } catch (IOException e) {
+            assertArrayEquals(this.expectedResult, this.applyDelta(this.delta).asByteArray());
+            return;
+        }
+        throw new AssertionError("IOException expected");
+    }
+
+    @Test
+    public void applyDeltaStreamLeavesBaseUnchangedWhenDeltaIsTruncated() throws IOException, SequenceContinuityException {
+        this.setBase(this.base);
+        try {
+            this.applyDelta(new ByteArrayInputStream(this.delta, 0, this.delta.length - 1), new ByteArrayOutputStream());
+        } catch (IOException e) {
+            assertArrayEquals(this.expectedResult, this.applyDelta(this.delta).asByteArray());
+            return;
+        }
+        throw new AssertionError("IOException expected");
+    }
 }
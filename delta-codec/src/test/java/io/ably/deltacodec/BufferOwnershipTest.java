@@ -0,0 +1,66 @@
+package io.ably.deltacodec;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BufferOwnershipTest {
+    @Test
+    public void copyOwnershipIsolatesBaseFromLaterModifications() throws IOException {
+        VcdiffDecoder decoder = new VcdiffDecoder();
+        decoder.setBufferOwnership(BufferOwnership.COPY);
+        byte[] base = DeltaFixtures.BASE.clone();
+        decoder.setBase(base);
+        base[0] = 0;
+        assertArrayEquals(DeltaFixtures.EXPECTED_RESULT, decoder.applyDelta(DeltaFixtures.DELTA).asByteArray());
+    }
+
+    @Test
+    public void shareOwnershipExposesResultWithoutCopying() throws IOException {
+        VcdiffDecoder decoder = new VcdiffDecoder();
+        decoder.setBufferOwnership(BufferOwnership.SHARE);
+        decoder.setBase(DeltaFixtures.BASE);
+        DeltaApplicationResult result = decoder.applyDelta(DeltaFixtures.DELTA);
+
+        ByteBuffer view = result.asByteBuffer();
+        assertTrue(view.isReadOnly());
+        assertEquals(DeltaFixtures.EXPECTED_RESULT.length, view.remaining());
+        assertEquals(DeltaFixtures.EXPECTED_RESULT.length, result.getLength());
+        byte[] viewed = new byte[view.remaining()];
+        view.get(viewed);
+        assertArrayEquals(DeltaFixtures.EXPECTED_RESULT, viewed);
+
+        // Later deltas must not disturb an earlier shared result
+        decoder.applyDelta(DeltaFixtures.SECOND_DELTA);
+        assertArrayEquals(DeltaFixtures.EXPECTED_RESULT, result.asByteArray());
+        assertSame(result.asByteArray(), result.asByteArray());
+    }
+
+    @Test
+    public void transferOwnershipReturnsCallerOwnedResult() throws IOException {
+        VcdiffDecoder decoder = new VcdiffDecoder();
+        decoder.setBase(DeltaFixtures.BASE);
+        byte[] result = decoder.applyDelta(DeltaFixtures.DELTA).asByteArray();
+        result[0] = 0;
+        assertArrayEquals(DeltaFixtures.SECOND_EXPECTED_RESULT, decoder.applyDelta(DeltaFixtures.SECOND_DELTA).asByteArray());
+    }
+
+    @Test
+    public void writeToWritesTheWholeResult() throws IOException {
+        VcdiffDecoder decoder = new VcdiffDecoder();
+        decoder.setBufferOwnership(BufferOwnership.SHARE);
+        decoder.setBufferPool(new SharedBufferPool(1024));
+        decoder.setBase(DeltaFixtures.BASE);
+        DeltaApplicationResult result = decoder.applyDelta(DeltaFixtures.DELTA);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        result.writeTo(out);
+        assertArrayEquals(DeltaFixtures.EXPECTED_RESULT, out.toByteArray());
+    }
+}
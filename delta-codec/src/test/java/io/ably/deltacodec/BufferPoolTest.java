@@ -0,0 +1,49 @@
+package io.ably.deltacodec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BufferPoolTest {
+    @Test
+    public void scratchBufferPoolReusesReleasedBufferWhenLongEnough() {
+        ScratchBufferPool pool = new ScratchBufferPool();
+        byte[] buffer = pool.acquire(100);
+        assertTrue(buffer.length >= 100);
+        pool.release(buffer);
+        assertSame(buffer, pool.acquire(buffer.length));
+        pool.release(buffer);
+        assertNotSame(buffer, pool.acquire(buffer.length + 1));
+    }
+
+    @Test
+    public void sharedBufferPoolRoundsUpToSizeClassAndReusesBuffers() {
+        SharedBufferPool pool = new SharedBufferPool(1024);
+        byte[] buffer = pool.acquire(100);
+        assertEquals(128, buffer.length);
+        pool.release(buffer);
+        assertEquals(128, pool.getRetainedBytes());
+        assertSame(buffer, pool.acquire(65));
+        assertEquals(0, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void sharedBufferPoolDoesNotRetainMoreThanItsLimit() {
+        SharedBufferPool pool = new SharedBufferPool(256);
+        byte[] first = pool.acquire(256);
+        byte[] second = pool.acquire(256);
+        pool.release(first);
+        pool.release(second);
+        assertEquals(256, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void sharedBufferPoolIgnoresBuffersNotMatchingASizeClass() {
+        SharedBufferPool pool = new SharedBufferPool(1024);
+        pool.release(new byte[100]);
+        assertEquals(0, pool.getRetainedBytes());
+    }
+}
@@ -0,0 +1,113 @@
+package io.ably.deltacodec;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares {@link ByteArrays} with byte by byte reference loops. Run against the multi-release jar, this checks the
+ * overlay selected for the running JDK.
+ */
+public class ByteArraysTest {
+    @Test
+    public void getIntBigEndianMatchesByteBuffer() {
+        byte[] data = randomBytes(new Random(1), 64);
+        for (int offset = 0; offset <= data.length - 4; offset++) {
+            assertEquals(ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN).getInt(offset), ByteArrays.getIntBigEndian(data, offset));
+        }
+    }
+
+    @Test
+    public void getIntBigEndianReadsTheVcdiffMagic() {
+        assertEquals(VcdiffFormat.MAGIC, ByteArrays.getIntBigEndian(new byte[] { 0, (byte)0xd6, (byte)0xc3, (byte)0xc4, 0 }, 1));
+    }
+
+    @Test
+    public void getLongLittleEndianMatchesByteBuffer() {
+        byte[] data = randomBytes(new Random(2), 64);
+        for (int offset = 0; offset <= data.length - 8; offset++) {
+            assertEquals(ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).getLong(offset), ByteArrays.getLongLittleEndian(data, offset));
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getLongLittleEndianThrowsIndexOutOfBoundsExceptionPastTheEnd() {
+        ByteArrays.getLongLittleEndian(new byte[12], 5);
+    }
+
+    @Test
+    public void isAsciiMatchesReference() {
+        Random random = new Random(3);
+        for (int length = 0; length < 40; length++) {
+            byte[] data = new byte[length + 6];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte)random.nextInt(128);
+            }
+            for (int offset = 0; offset < 3; offset++) {
+                assertTrue(ByteArrays.isAscii(data, offset, length));
+            }
+            // A byte above 127 at each position, including right outside the checked range
+            for (int position = 0; position < data.length; position++) {
+                byte[] changed = data.clone();
+                changed[position] = (byte)(128 + random.nextInt(128));
+                for (int offset = 0; offset < 3; offset++) {
+                    assertEquals(referenceIsAscii(changed, offset, length), ByteArrays.isAscii(changed, offset, length));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void equalsMatchesReference() {
+        Random random = new Random(4);
+        for (int length = 0; length < 40; length++) {
+            byte[] a = randomBytes(random, length + 5);
+            byte[] b = new byte[length + 3];
+            System.arraycopy(a, 5, b, 3, length);
+            assertTrue(ByteArrays.equals(a, 5, b, 3, length));
+            for (int position = 0; position < b.length; position++) {
+                byte[] changed = b.clone();
+                changed[position] ^= (byte)(1 + random.nextInt(255));
+                assertEquals(referenceEquals(a, 5, changed, 3, length), ByteArrays.equals(a, 5, changed, 3, length));
+            }
+        }
+    }
+
+    @Test
+    public void equalsComparesOverlappingRangesOfTheSameArray() {
+        byte[] data = { 1, 1, 1, 1, 2 };
+        assertTrue(ByteArrays.equals(data, 0, data, 0, 5));
+        assertTrue(ByteArrays.equals(data, 0, data, 1, 3));
+        assertFalse(ByteArrays.equals(data, 0, data, 1, 4));
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        return data;
+    }
+
+    private static boolean referenceIsAscii(byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (data[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean referenceEquals(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
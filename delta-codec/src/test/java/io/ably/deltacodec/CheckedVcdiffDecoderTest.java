@@ -5,9 +5,15 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 public class CheckedVcdiffDecoderTest extends BaseVcdiffDecoderTests {
     private final String baseId = "baseId";
@@ -32,16 +38,56 @@ public class CheckedVcdiffDecoderTest extends BaseVcdiffDecoderTests {
         return this.checkedDecoder.applyDelta(delta, null, null);
     }
 
+    @Override
+    protected DeltaApplicationResult applyDelta(ByteBuffer delta) throws IOException, SequenceContinuityException {
+        return this.checkedDecoder.applyDelta(delta, null, null);
+    }
+
+    @Override
+    protected int applyDelta(ByteBuffer delta, ByteBuffer target) throws IOException, SequenceContinuityException {
+        return this.checkedDecoder.applyDelta(delta, target, null, null);
+    }
+
+    @Override
+    protected int applyDelta(InputStream delta, OutputStream target) throws IOException, SequenceContinuityException {
+        return this.checkedDecoder.applyDelta(delta, target, null, null);
+    }
+
     @Override
     protected DeltaApplicationResult applyBase64Delta(String delta) throws IOException, SequenceContinuityException {
         return this.checkedDecoder.applyBase64Delta(delta, null, null);
     }
 
+    @Override
+    protected DeltaApplicationResult applyBase64Delta(char[] delta, int offset, int length) throws IOException, SequenceContinuityException {
+        return this.checkedDecoder.applyBase64Delta(delta, offset, length, null, null);
+    }
+
+    @Override
+    protected DeltaApplicationResult applyBase64Delta(CharSequence delta, int offset, int length) throws IOException, SequenceContinuityException {
+        return this.checkedDecoder.applyBase64Delta(delta, offset, length, null, null);
+    }
+
+    @Override
+    protected DeltaApplicationResult applyBase64Delta(byte[] delta, int offset, int length) throws IOException, SequenceContinuityException {
+        return this.checkedDecoder.applyBase64Delta(delta, offset, length, null, null);
+    }
+
+    @Override
+    protected DeltaApplicationResult applyBase64Delta(ByteBuffer delta, int offset, int length) throws IOException, SequenceContinuityException {
+        return this.checkedDecoder.applyBase64Delta(delta, offset, length, null, null);
+    }
+
     @Override
     protected void setBase(byte[] newBase) {
         this.checkedDecoder.setBase(newBase, null);
     }
 
+    @Override
+    protected void setBase(ByteBuffer newBase) {
+        this.checkedDecoder.setBase(newBase, null);
+    }
+
     @Override
     protected void setBase(String newBase) {
         this.checkedDecoder.setBase(newBase, null);
@@ -57,7 +103,7 @@ public class CheckedVcdiffDecoderTest extends BaseVcdiffDecoderTests {
         thrown.expect(SequenceContinuityException.class);
         thrown.expectMessage(this.getSequenceContinuityExceptionMessage(this.baseId, this.invalidBaseId));
         this.checkedDecoder.setBase("baseContent", this.baseId);
-        this.checkedDecoder.applyDelta(null, null, this.invalidBaseId);
+        this.checkedDecoder.applyDelta((byte[])null, null, this.invalidBaseId);
     }
 
     @Test
@@ -90,6 +136,85 @@ public class CheckedVcdiffDecoderTest extends BaseVcdiffDecoderTests {
         return "Sequence continuity check failed - the provided id (" + actualId + ") does not match the last preserved sequence id (" + expectedId + ")";
     }
 
+    @Test
+    public void applyDeltaAppliesDeltasAgainstBasesInTheHistory() throws IOException, SequenceContinuityException {
+        this.checkedDecoder.setBaseHistorySize(2);
+        this.checkedDecoder.setBase(this.base, this.baseId);
+        this.checkedDecoder.applyDelta(this.delta, this.deltaId, this.baseId);
+        // The delta is generated again against the first base, e.g. by another publisher
+        assertArrayEquals(this.expectedResult, this.checkedDecoder.applyDelta(this.delta, this.deltaId, this.baseId).asByteArray());
+        assertArrayEquals(this.secondExpectedResult, this.checkedDecoder.applyDelta(this.secondDelta, this.secondDeltaId, this.deltaId).asByteArray());
+        assertArrayEquals(this.secondExpectedResult, this.checkedDecoder.applyBase64Delta(this.base64SecondDelta, this.secondDeltaId, this.deltaId).asByteArray());
+    }
+
+    @Test
+    public void applyDeltaThrowsSequenceContinuityExceptionWhenBaseHasLeftTheHistory() throws IOException, SequenceContinuityException {
+        this.checkedDecoder.setBaseHistorySize(1);
+        this.checkedDecoder.setBase(this.base, this.baseId);
+        this.checkedDecoder.applyDelta(this.delta, this.deltaId, this.baseId);
+        this.checkedDecoder.applyDelta(this.secondDelta, this.secondDeltaId, this.deltaId);
+        thrown.expect(SequenceContinuityException.class);
+        this.checkedDecoder.applyDelta(this.delta, this.deltaId, this.baseId);
+    }
+
+    @Test
+    public void applyDeltaKeepsTheCurrentBaseWhenADeltaAgainstTheHistoryFails() throws IOException, SequenceContinuityException {
+        this.checkedDecoder.setBaseHistorySize(1);
+        this.checkedDecoder.setBase(this.base, this.baseId);
+        // The result has no ID, so it is not kept in the history once it is replaced
+        this.checkedDecoder.applyDelta(this.delta, null, this.baseId);
+        try {
+            this.checkedDecoder.applyDelta(Arrays.copyOf(this.delta, this.delta.length - 1), this.deltaId, this.baseId);
+            throw new AssertionError("IOException expected");
+        } catch (IOException e) {
+            // The decoder is still on the result, and the first base is still in the history
+            assertNull(this.checkedDecoder.getBaseId());
+            assertArrayEquals(this.secondExpectedResult, this.checkedDecoder.applyDelta(this.secondDelta, this.secondDeltaId, null).asByteArray());
+            assertArrayEquals(this.expectedResult, this.checkedDecoder.applyDelta(this.delta, this.deltaId, this.baseId).asByteArray());
+        }
+    }
+
+    @Test
+    public void baseHistoryWorksWithPooledAndStoredBases() throws IOException, SequenceContinuityException {
+        this.checkedDecoder.setBufferPool(new SharedBufferPool(1024));
+        this.checkedDecoder.setBaseStorage(new DirectBaseStorage(4096));
+        this.checkedDecoder.setBaseHistorySize(2);
+        this.checkedDecoder.setBase(this.base, this.baseId);
+        this.checkedDecoder.applyDelta(this.delta, this.deltaId, this.baseId);
+        this.checkedDecoder.applyDelta(this.secondDelta, this.secondDeltaId, this.deltaId);
+        assertArrayEquals(this.expectedResult, this.checkedDecoder.applyDelta(this.delta, this.deltaId, this.baseId).asByteArray());
+        assertArrayEquals(this.secondExpectedResult, this.checkedDecoder.applyDelta(this.secondDelta, this.secondDeltaId, this.deltaId).asByteArray());
+    }
+
+    @Test
+    public void baseHistoryCountsTowardsTheRegistryBudget() throws IOException, SequenceContinuityException {
+        DecoderRegistry<CheckedVcdiffDecoder> registry = DecoderRegistry.forCheckedVcdiffDecoders(1024);
+        CheckedVcdiffDecoder decoder = registry.get("a");
+        decoder.setBaseHistorySize(1);
+        decoder.setBase(this.base, this.baseId);
+        decoder.applyDelta(this.delta, this.deltaId, this.baseId);
+        assertEquals(this.base.length + this.expectedResult.length, registry.getRetainedBytes());
+        decoder.applyDelta(this.delta, this.deltaId, this.baseId);
+        assertEquals(this.base.length + this.expectedResult.length, registry.getRetainedBytes());
+        decoder.setBaseHistorySize(0);
+        assertEquals(this.expectedResult.length, registry.getRetainedBytes());
+
+        decoder.setBaseHistorySize(1);
+        decoder.applyDelta(this.secondDelta, this.secondDeltaId, this.deltaId);
+        registry.get("b").setBase(new byte[1024], "b");
+        assertEquals(0, registry.getRetainedBytes("a"));
+        assertEquals(1024, registry.getRetainedBytes());
+        // Evicting the base also drops the history
+        thrown.expect(IllegalStateException.class);
+        decoder.applyDelta(this.secondDelta, this.deltaId, this.secondDeltaId);
+    }
+
+    @Test
+    public void setBaseHistorySizeThrowsIllegalArgumentExceptionWhenSizeIsNegative() {
+        thrown.expect(IllegalArgumentException.class);
+        this.checkedDecoder.setBaseHistorySize(-1);
+    }
+
     @Test
     public void setBaseByteArrayShouldSetBaseIdProperly() throws IOException, SequenceContinuityException {
         this.checkedDecoder.setBase(this.base, this.baseId);
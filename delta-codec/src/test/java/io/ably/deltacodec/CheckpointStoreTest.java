@@ -0,0 +1,289 @@
+package io.ably.deltacodec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointStoreTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void checkpointsSurviveReopening() throws IOException, SequenceContinuityException {
+        File file = this.folder.newFile();
+        CheckpointStore store = new CheckpointStore(file);
+        CheckedVcdiffDecoder decoder = new CheckedVcdiffDecoder();
+        decoder.setBase(DeltaFixtures.BASE, "1");
+        decoder.applyDelta(DeltaFixtures.DELTA, "2", "1");
+        assertTrue(store.checkpoint("a", decoder));
+        store.close();
+
+        store = new CheckpointStore(file);
+        CheckedVcdiffDecoder restored = new CheckedVcdiffDecoder();
+        assertTrue(store.restore("a", restored));
+        assertArrayEquals(DeltaFixtures.SECOND_EXPECTED_RESULT, restored.applyDelta(DeltaFixtures.SECOND_DELTA, "3", "2").asByteArray());
+        assertFalse(store.restore("b", new CheckedVcdiffDecoder()));
+        store.close();
+    }
+
+    @Test
+    public void latestCheckpointOfAChannelIsRestored() throws IOException, SequenceContinuityException {
+        CheckpointStore store = new CheckpointStore(this.folder.newFile());
+        CheckedVcdiffDecoder decoder = new CheckedVcdiffDecoder();
+        decoder.setBase(DeltaFixtures.BASE, "1");
+        store.checkpoint("a", decoder);
+        decoder.applyDelta(DeltaFixtures.DELTA, "2", "1");
+        store.checkpoint("a", decoder);
+
+        CheckedVcdiffDecoder restored = new CheckedVcdiffDecoder();
+        store.restore("a", restored);
+        assertArrayEquals(DeltaFixtures.SECOND_EXPECTED_RESULT, restored.applyDelta(DeltaFixtures.SECOND_DELTA, "3", "2").asByteArray());
+        store.close();
+    }
+
+    @Test
+    public void unchangedBasesAreNotWrittenAgain() throws IOException {
+        CheckpointStore store = new CheckpointStore(this.folder.newFile());
+        CheckedVcdiffDecoder decoder = new CheckedVcdiffDecoder();
+        assertFalse(store.checkpoint("a", decoder));
+        decoder.setBase(DeltaFixtures.BASE, "1");
+        assertTrue(store.checkpoint("a", decoder));
+        long length = store.getLength();
+        assertFalse(store.checkpoint("a", decoder));
+        assertEquals(length, store.getLength());
+        store.close();
+    }
+
+    @Test
+    public void removedCheckpointsAreNotRestoredAfterReopening() throws IOException {
+        File file = this.folder.newFile();
+        CheckpointStore store = new CheckpointStore(file);
+        CheckedVcdiffDecoder decoder = new CheckedVcdiffDecoder();
+        decoder.setBase(DeltaFixtures.BASE, "1");
+        store.checkpoint("a", decoder);
+        store.checkpoint("b", decoder);
+        assertTrue(store.remove("a"));
+        assertFalse(store.remove("a"));
+        store.close();
+
+        store = new CheckpointStore(file);
+        assertEquals(Collections.singleton("b"), store.getChannelIds());
+        assertFalse(store.restore("a", new CheckedVcdiffDecoder()));
+        store.close();
+    }
+
+    @Test
+    public void incompleteLastCheckpointIsDroppedWhenOpening() throws IOException, SequenceContinuityException {
+        File file = this.folder.newFile();
+        CheckpointStore store = new CheckpointStore(file);
+        CheckedVcdiffDecoder decoder = new CheckedVcdiffDecoder();
+        decoder.setBase(DeltaFixtures.BASE, "1");
+        store.checkpoint("a", decoder);
+        long length = store.getLength();
+        decoder.setBase(DeltaFixtures.EXPECTED_RESULT, "2");
+        store.checkpoint("b", decoder);
+        store.close();
+        truncate(file, file.length() - 3);
+
+        store = new CheckpointStore(file);
+        assertEquals(Collections.singleton("a"), store.getChannelIds());
+        assertEquals(length, store.getLength());
+        assertEquals(length, file.length());
+        CheckedVcdiffDecoder restored = new CheckedVcdiffDecoder();
+        assertTrue(store.restore("a", restored));
+        assertArrayEquals(DeltaFixtures.EXPECTED_RESULT, restored.applyDelta(DeltaFixtures.DELTA, "2", "1").asByteArray());
+        store.close();
+    }
+
+    @Test
+    public void checkpointsWhoseIdsDoNotFitTheirPayloadAreSkippedWhenOpening() throws IOException, SequenceContinuityException {
+        File file = this.folder.newFile();
+        CheckpointStore store = new CheckpointStore(file);
+        CheckedVcdiffDecoder decoder = new CheckedVcdiffDecoder();
+        decoder.setBase(DeltaFixtures.BASE, "1");
+        store.checkpoint("a", decoder);
+        store.close();
+        // Complete records with a negative channel ID length, a huge one, and a base ID running past the payload
+        appendRecord(file, ByteBuffer.allocate(16).putInt(0, -1).array());
+        appendRecord(file, ByteBuffer.allocate(16).putInt(0, Integer.MAX_VALUE).array());
+        appendRecord(file, ByteBuffer.allocate(16).putInt(0, 0).putInt(4, 9).array());
+
+        store = new CheckpointStore(file);
+        assertEquals(Collections.singleton("a"), store.getChannelIds());
+        store.checkpoint("b", decoder);
+        store.close();
+
+        store = new CheckpointStore(file);
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), store.getChannelIds());
+        CheckedVcdiffDecoder restored = new CheckedVcdiffDecoder();
+        assertTrue(store.restore("b", restored));
+        assertArrayEquals(DeltaFixtures.EXPECTED_RESULT, restored.applyDelta(DeltaFixtures.DELTA, "2", "1").asByteArray());
+        store.close();
+    }
+
+    @Test
+    public void damagedCheckpointIsNotRestored() throws IOException {
+        File file = this.folder.newFile();
+        CheckpointStore store = new CheckpointStore(file);
+        CheckedVcdiffDecoder decoder = new CheckedVcdiffDecoder();
+        decoder.setBase(DeltaFixtures.BASE, "1");
+        store.checkpoint("a", decoder);
+        store.close();
+        RandomAccessFile contents = new RandomAccessFile(file, "rw");
+        try {
+            contents.seek(file.length() - 1);
+            int last = contents.read();
+            contents.seek(file.length() - 1);
+            contents.write(last ^ 1);
+        } finally {
+            contents.close();
+        }
+
+        store = new CheckpointStore(file);
+        assertFalse(store.restore("a", new CheckedVcdiffDecoder()));
+        assertTrue(store.getChannelIds().isEmpty());
+        store.close();
+    }
+
+    @Test
+    public void compactKeepsOnlyTheLatestCheckpoints() throws IOException, SequenceContinuityException {
+        File file = this.folder.newFile();
+        CheckpointStore store = new CheckpointStore(file);
+        Random random = new Random(3);
+        CheckedVcdiffDecoder decoder = new CheckedVcdiffDecoder();
+        byte[] document = null;
+        for (int i = 0; i < 10; i++) {
+            document = NativeVcdiffEngineTest.randomText(random, 4096);
+            decoder.setBase(document, String.valueOf(i));
+            store.checkpoint("a", decoder);
+            store.checkpoint("b", decoder);
+        }
+        long length = store.getLength();
+        store.compact();
+        assertTrue(store.getLength() < length / 5);
+        assertEquals(store.getLength(), file.length());
+
+        CheckedVcdiffDecoder restored = new CheckedVcdiffDecoder();
+        assertTrue(store.restore("b", restored));
+        byte[] target = NativeVcdiffEngineTest.mutate(random, document);
+        assertArrayEquals(target, restored.applyDelta(NativeVcdiffEngineTest.encode(document, target), "10", "9").asByteArray());
+        store.close();
+    }
+
+    @Test
+    public void registryRestoresChannelsWhenFirstUsed() throws IOException, SequenceContinuityException {
+        File file = this.folder.newFile();
+        CheckpointStore store = new CheckpointStore(file);
+        DecoderRegistry<CheckedVcdiffDecoder> registry = DecoderRegistry.forCheckedVcdiffDecoders(1024, DecodingEngine.NATIVE, store);
+        registry.get("a").setBase(DeltaFixtures.BASE, "1");
+        registry.get("b").setBase(DeltaFixtures.BASE, "1");
+        registry.get("b").applyDelta(DeltaFixtures.DELTA, "2", "1");
+        assertEquals(2, registry.checkpoint());
+        assertEquals(0, registry.checkpoint());
+        store.close();
+
+        store = new CheckpointStore(file);
+        registry = DecoderRegistry.forCheckedVcdiffDecoders(1024, DecodingEngine.NATIVE, store);
+        assertEquals(0, registry.getRetainedBytes());
+        assertArrayEquals(DeltaFixtures.SECOND_EXPECTED_RESULT, registry.get("b").applyDelta(DeltaFixtures.SECOND_DELTA, "3", "2").asByteArray());
+        assertEquals(DeltaFixtures.SECOND_EXPECTED_RESULT.length, registry.getRetainedBytes());
+        store.close();
+    }
+
+    @Test
+    public void concurrentDecoderCheckpointsAllStripes() throws IOException, SequenceContinuityException {
+        File file = this.folder.newFile();
+        CheckpointStore store = new CheckpointStore(file);
+        ConcurrentVcdiffDecoder decoder = new ConcurrentVcdiffDecoder(4, Long.MAX_VALUE, DecodingEngine.NATIVE, store);
+        for (int i = 0; i < 8; i++) {
+            decoder.setBase("channel-" + i, DeltaFixtures.BASE, "1");
+        }
+        assertEquals(8, decoder.checkpoint());
+        store.close();
+
+        store = new CheckpointStore(file);
+        decoder = new ConcurrentVcdiffDecoder(2, Long.MAX_VALUE, DecodingEngine.NATIVE, store);
+        for (int i = 0; i < 8; i++) {
+            assertArrayEquals(DeltaFixtures.EXPECTED_RESULT, decoder.applyDelta("channel-" + i, DeltaFixtures.DELTA, "2", "1").asByteArray());
+        }
+        store.close();
+    }
+
+    @Test
+    public void compressedBasesAreCheckpointedDecompressed() throws IOException, SequenceContinuityException {
+        Random random = new Random(4);
+        byte[] base = NativeVcdiffEngineTest.randomText(random, 8192);
+        byte[] target = NativeVcdiffEngineTest.mutate(random, base);
+        CheckpointStore store = new CheckpointStore(this.folder.newFile());
+        DecoderRegistry<CheckedVcdiffDecoder> registry = DecoderRegistry.forCheckedVcdiffDecoders(Long.MAX_VALUE, DecodingEngine.NATIVE, store);
+        registry.get("a").setBase(base, "1");
+        assertEquals(1, registry.compressIdleBases(0));
+        assertEquals(1, registry.checkpoint());
+        assertTrue(registry.getColdBytes() > 0);
+
+        CheckedVcdiffDecoder restored = new CheckedVcdiffDecoder();
+        assertTrue(store.restore("a", restored));
+        assertArrayEquals(target, restored.applyDelta(NativeVcdiffEngineTest.encode(base, target), "2", "1").asByteArray());
+        store.close();
+    }
+
+    @Test
+    public void checkpointThrowsIllegalStateExceptionWhenRegistryHasNoStore() throws IOException {
+        thrown.expect(IllegalStateException.class);
+        DecoderRegistry.forCheckedVcdiffDecoders(1024).checkpoint();
+    }
+
+    @Test
+    public void checkpointThrowsIOExceptionWhenStoreIsClosed() throws IOException {
+        CheckpointStore store = new CheckpointStore(this.folder.newFile());
+        store.close();
+        CheckedVcdiffDecoder decoder = new CheckedVcdiffDecoder();
+        decoder.setBase(DeltaFixtures.BASE, "1");
+        thrown.expect(IOException.class);
+        store.checkpoint("a", decoder);
+    }
+
+    /**
+     * Appends a checkpoint record with a valid header but an unchecked payload
+     */
+    private static void appendRecord(File file, byte[] payload) throws IOException {
+        RandomAccessFile contents = new RandomAccessFile(file, "rw");
+        try {
+            contents.seek(contents.length());
+            contents.writeInt(0x44434b50);
+            contents.writeByte(1);
+            contents.writeInt(payload.length);
+            contents.writeInt(0);
+            contents.write(payload);
+        } finally {
+            contents.close();
+        }
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        RandomAccessFile contents = new RandomAccessFile(file, "rw");
+        try {
+            contents.setLength(length);
+        } finally {
+            contents.close();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package io.ably.deltacodec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentVcdiffDecoderTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void channelsAreDecodedInParallelAndInOrder() throws Exception {
+        final ConcurrentVcdiffDecoder decoder = new ConcurrentVcdiffDecoder(4, Long.MAX_VALUE, DecodingEngine.NATIVE);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                final int seed = thread;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        decodeChannels(decoder, seed);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void applyDeltaChecksSequenceContinuity() throws IOException, SequenceContinuityException {
+        ConcurrentVcdiffDecoder decoder = new ConcurrentVcdiffDecoder();
+        decoder.setBase("a", DeltaFixtures.BASE, "1");
+        assertArrayEquals(DeltaFixtures.EXPECTED_RESULT, decoder.applyDelta("a", DeltaFixtures.DELTA, "2", "1").asByteArray());
+        thrown.expect(SequenceContinuityException.class);
+        decoder.applyDelta("a", DeltaFixtures.SECOND_DELTA, "3", "1");
+    }
+
+    @Test
+    public void uncheckedDeltasIgnoreAndClearTheBaseId() throws IOException, SequenceContinuityException {
+        ConcurrentVcdiffDecoder decoder = new ConcurrentVcdiffDecoder();
+        decoder.setBase("a", DeltaFixtures.BASE, "1");
+        assertArrayEquals(DeltaFixtures.EXPECTED_RESULT, decoder.applyDelta("a", DeltaFixtures.DELTA).asByteArray());
+        assertArrayEquals(DeltaFixtures.SECOND_EXPECTED_RESULT, decoder.applyDelta("a", DeltaFixtures.SECOND_DELTA, "3", null).asByteArray());
+        decoder.setBase64Base("b", DeltaFixtures.BASE64_BASE, "1");
+        assertArrayEquals(DeltaFixtures.EXPECTED_RESULT, decoder.applyBase64Delta("b", DeltaFixtures.BASE64_DELTA).asByteArray());
+        assertArrayEquals(DeltaFixtures.SECOND_EXPECTED_RESULT, decoder.applyDelta("b", DeltaFixtures.SECOND_DELTA, "3", null).asByteArray());
+    }
+
+    @Test
+    public void basesAreEvictedWhenBudgetIsExceeded() throws IOException {
+        ConcurrentVcdiffDecoder decoder = new ConcurrentVcdiffDecoder(1, 60, DecodingEngine.NATIVE);
+        decoder.setBase("a", DeltaFixtures.BASE);
+        decoder.setBase("b", DeltaFixtures.BASE);
+        decoder.applyDelta("b", DeltaFixtures.DELTA);
+        assertEquals(DeltaFixtures.EXPECTED_RESULT.length, decoder.getRetainedBytes());
+        assertEquals(1, decoder.getEvictionCount());
+        thrown.expect(IllegalStateException.class);
+        decoder.applyDelta("a", DeltaFixtures.DELTA);
+    }
+
+    @Test
+    public void removeDropsTheChannel() throws IOException {
+        ConcurrentVcdiffDecoder decoder = new ConcurrentVcdiffDecoder();
+        decoder.setBase("a", DeltaFixtures.BASE);
+        assertTrue(decoder.remove("a"));
+        assertFalse(decoder.remove("a"));
+        assertEquals(0, decoder.getRetainedBytes());
+        thrown.expect(IllegalStateException.class);
+        decoder.applyDelta("a", DeltaFixtures.DELTA);
+    }
+
+    @Test
+    public void stripeCountIsRoundedUpToAPowerOfTwo() {
+        assertEquals(8, new ConcurrentVcdiffDecoder(5, Long.MAX_VALUE, DecodingEngine.NATIVE).getStripeCount());
+        assertEquals(1, new ConcurrentVcdiffDecoder(1, Long.MAX_VALUE, DecodingEngine.NATIVE).getStripeCount());
+        assertEquals(1 << 16, new ConcurrentVcdiffDecoder(100000, Long.MAX_VALUE, DecodingEngine.NATIVE).getStripeCount());
+    }
+
+    private static void decodeChannels(ConcurrentVcdiffDecoder decoder, int seed) throws IOException {
+        Random random = new Random(seed);
+        String[] channels = new String[] { "channel-" + seed + "-a", "channel-" + seed + "-b" };
+        byte[][] documents = new byte[channels.length][];
+        VcdiffEncoder[] encoders = new VcdiffEncoder[channels.length];
+        for (int i = 0; i < channels.length; i++) {
+            documents[i] = NativeVcdiffEngineTest.randomText(random, 2048);
+            encoders[i] = new VcdiffEncoder();
+            encoders[i].setBase(documents[i]);
+            decoder.setBase(channels[i], documents[i].clone());
+        }
+        for (int message = 0; message < 200; message++) {
+            int i = random.nextInt(channels.length);
+            documents[i] = NativeVcdiffEngineTest.mutate(random, documents[i]);
+            byte[] delta = encoders[i].encodeNext(documents[i]);
+            assertArrayEquals(documents[i], decoder.applyDelta(channels[i], delta).asByteArray());
+        }
+    }
+}
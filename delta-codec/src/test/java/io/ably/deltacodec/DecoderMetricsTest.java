@@ -0,0 +1,129 @@
+package io.ably.deltacodec;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DecoderMetricsTest {
+    @Test
+    public void appliedDeltasAreReported() throws IOException {
+        RecordingMetrics metrics = new RecordingMetrics();
+        VcdiffDecoder decoder = new VcdiffDecoder();
+        decoder.setMetrics(metrics);
+        decoder.setBase(DeltaFixtures.BASE);
+        decoder.applyDelta(DeltaFixtures.DELTA);
+        decoder.applyBase64Delta(DeltaFixtures.BASE64_SECOND_DELTA);
+
+        assertEquals(Arrays.asList(
+                Arrays.asList((long)DeltaFixtures.DELTA.length, (long)DeltaFixtures.EXPECTED_RESULT.length, (long)DeltaFixtures.BASE.length),
+                Arrays.asList((long)DeltaFixtures.SECOND_DELTA.length, (long)DeltaFixtures.SECOND_EXPECTED_RESULT.length, (long)DeltaFixtures.EXPECTED_RESULT.length)),
+                metrics.applied);
+        assertTrue(metrics.decodeNanos >= 0);
+    }
+
+    @Test
+    public void streamedDeltasAreCounted() throws IOException {
+        RecordingMetrics metrics = new RecordingMetrics();
+        VcdiffDecoder decoder = new VcdiffDecoder();
+        decoder.setMetrics(metrics);
+        decoder.setBase(DeltaFixtures.BASE);
+        decoder.applyDelta(new ByteArrayInputStream(DeltaFixtures.DELTA), new ByteArrayOutputStream());
+        assertEquals(Arrays.asList(Arrays.asList((long)DeltaFixtures.DELTA.length, (long)DeltaFixtures.EXPECTED_RESULT.length, (long)DeltaFixtures.BASE.length)),
+                metrics.applied);
+    }
+
+    @Test
+    public void failuresAreReportedByKind() throws IOException, SequenceContinuityException {
+        HistogramDecoderMetrics metrics = new HistogramDecoderMetrics();
+        CheckedVcdiffDecoder decoder = new CheckedVcdiffDecoder();
+        decoder.setMetrics(metrics);
+        try {
+            decoder.applyDelta(DeltaFixtures.DELTA, "1", null);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        decoder.setBase(DeltaFixtures.BASE, "1");
+        try {
+            decoder.applyDelta(DeltaFixtures.BASE, "2", "1");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            decoder.applyDelta(DeltaFixtures.SECOND_DELTA, "2", "1");
+            fail();
+        } catch (IOException e) {
+            // The second delta is generated against the first result, which is longer than the base
+        }
+        try {
+            decoder.applyDelta(DeltaFixtures.DELTA, "2", "0");
+            fail();
+        } catch (SequenceContinuityException e) {
+            // Expected
+        }
+
+        assertEquals(1, metrics.getFailureCount(DecoderMetrics.Failure.UNINITIALIZED));
+        assertEquals(2, metrics.getFailureCount(DecoderMetrics.Failure.MALFORMED_DELTA));
+        assertEquals(1, metrics.getFailureCount(DecoderMetrics.Failure.SEQUENCE_DISCONTINUITY));
+        assertEquals(0, metrics.getAppliedCount());
+    }
+
+    @Test
+    public void histogramMetricsAggregateTheDecoders() throws IOException {
+        HistogramDecoderMetrics metrics = new HistogramDecoderMetrics();
+        for (int i = 0; i < 2; i++) {
+            VcdiffDecoder decoder = new VcdiffDecoder();
+            decoder.setMetrics(metrics);
+            decoder.setBase(DeltaFixtures.BASE);
+            assertArrayEquals(DeltaFixtures.SECOND_EXPECTED_RESULT,
+                    decoder.applyDeltas(Arrays.asList(DeltaFixtures.DELTA, DeltaFixtures.SECOND_DELTA)).asByteArray());
+        }
+        assertEquals(2, metrics.getAppliedCount());
+        assertEquals(DeltaFixtures.SECOND_EXPECTED_RESULT.length, metrics.getTargetLengths().getMax());
+        assertEquals(DeltaFixtures.BASE.length, metrics.getBaseLengths().getValueAtPercentile(50));
+        assertEquals(2, metrics.getDecodeNanos().getCount());
+        long deltaLength = metrics.getDeltaLengths().getMax();
+        assertEquals((double)DeltaFixtures.SECOND_EXPECTED_RESULT.length / deltaLength, metrics.getCompressionRatio(), 1e-9);
+
+        metrics.reset();
+        assertEquals(0, metrics.getAppliedCount());
+        assertEquals(0, metrics.getCompressionRatio(), 0);
+    }
+
+    @Test
+    public void removedMetricsAreNotCalled() throws IOException {
+        RecordingMetrics metrics = new RecordingMetrics();
+        VcdiffDecoder decoder = new VcdiffDecoder();
+        decoder.setMetrics(metrics);
+        decoder.setMetrics(null);
+        decoder.setBase(DeltaFixtures.BASE);
+        decoder.applyDelta(DeltaFixtures.DELTA);
+        assertEquals(0, metrics.applied.size());
+    }
+
+    private static class RecordingMetrics implements DecoderMetrics {
+        private final List<List<Long>> applied = new ArrayList<>();
+        private long decodeNanos;
+
+        @Override
+        public void deltaApplied(int deltaLength, int targetLength, int baseLength, long decodeNanos) {
+            this.applied.add(Arrays.asList((long)deltaLength, (long)targetLength, (long)baseLength));
+            this.decodeNanos += decodeNanos;
+        }
+
+        @Override
+        public void deltaFailed(Failure failure) {
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package io.ably.deltacodec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DecoderRegistryTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void getReturnsTheSameDecoderForAChannel() {
+        DecoderRegistry<VcdiffDecoder> registry = DecoderRegistry.forVcdiffDecoders(1024);
+        VcdiffDecoder decoder = registry.get("a");
+        assertSame(decoder, registry.get("a"));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void retainedBytesFollowTheBases() throws IOException {
+        DecoderRegistry<VcdiffDecoder> registry = DecoderRegistry.forVcdiffDecoders(1024);
+        registry.get("a").setBase(DeltaFixtures.BASE);
+        registry.get("b").setBase(DeltaFixtures.BASE);
+        assertEquals(2 * DeltaFixtures.BASE.length, registry.getRetainedBytes());
+
+        registry.get("a").applyDelta(DeltaFixtures.DELTA);
+        assertEquals(DeltaFixtures.EXPECTED_RESULT.length, registry.getRetainedBytes("a"));
+        assertEquals(DeltaFixtures.BASE.length, registry.getRetainedBytes("b"));
+        assertEquals(DeltaFixtures.EXPECTED_RESULT.length + DeltaFixtures.BASE.length, registry.getRetainedBytes());
+        assertEquals(0, registry.getRetainedBytes("c"));
+    }
+
+    @Test
+    public void leastRecentlyUsedBasesAreEvictedWhenBudgetIsExceeded() throws IOException {
+        DecoderRegistry<VcdiffDecoder> registry = DecoderRegistry.forVcdiffDecoders(100);
+        registry.get("a").setBase(DeltaFixtures.BASE);
+        registry.get("b").setBase(DeltaFixtures.BASE);
+        registry.get("c").setBase(DeltaFixtures.BASE);
+
+        // a grows to 56 bytes: 108 retained, so b, the least recently used, is evicted
+        registry.get("a").applyDelta(DeltaFixtures.DELTA);
+        assertEquals(DeltaFixtures.EXPECTED_RESULT.length + DeltaFixtures.BASE.length, registry.getRetainedBytes());
+        assertEquals(0, registry.getRetainedBytes("b"));
+        assertEquals(1, registry.getEvictionCount());
+        assertEquals(3, registry.size());
+
+        assertArrayEquals(DeltaFixtures.EXPECTED_RESULT, registry.get("c").applyDelta(DeltaFixtures.DELTA).asByteArray());
+        assertEquals(2, registry.getEvictionCount());
+        assertEquals(0, registry.getRetainedBytes("a"));
+
+        thrown.expect(IllegalStateException.class);
+        registry.get("b").applyDelta(DeltaFixtures.DELTA);
+    }
+
+    @Test
+    public void evictedChannelsResyncWithAFullBase() throws IOException, SequenceContinuityException {
+        DecoderRegistry<CheckedVcdiffDecoder> registry = DecoderRegistry.forCheckedVcdiffDecoders(60);
+        registry.get("a").setBase(DeltaFixtures.BASE, "1");
+        registry.get("b").setBase(DeltaFixtures.BASE, "1");
+        registry.get("b").applyDelta(DeltaFixtures.DELTA, "2", "1");
+        assertEquals(0, registry.getRetainedBytes("a"));
+
+        registry.get("a").setBase(DeltaFixtures.EXPECTED_RESULT, "2");
+        assertArrayEquals(DeltaFixtures.SECOND_EXPECTED_RESULT, registry.get("a").applyDelta(DeltaFixtures.SECOND_DELTA, "3", "2").asByteArray());
+        assertEquals(DeltaFixtures.SECOND_EXPECTED_RESULT.length, registry.getRetainedBytes());
+    }
+
+    @Test
+    public void removeStopsAccountingTheDecoder() throws IOException {
+        DecoderRegistry<VcdiffDecoder> registry = DecoderRegistry.forVcdiffDecoders(1024);
+        VcdiffDecoder decoder = registry.get("a");
+        decoder.setBase(DeltaFixtures.BASE);
+        assertSame(decoder, registry.remove("a"));
+        assertNull(registry.remove("a"));
+        assertEquals(0, registry.getRetainedBytes());
+        assertEquals(0, registry.size());
+
+        decoder.applyDelta(DeltaFixtures.DELTA);
+        assertEquals(0, registry.getRetainedBytes());
+    }
+
+    @Test
+    public void idleBasesAreCompressedAndDecompressedByTheNextDelta() throws IOException, InterruptedException {
+        Random random = new Random(21);
+        byte[] base = json(random, 200);
+        byte[] target = NativeVcdiffEngineTest.mutate(random, base);
+        DecoderRegistry<VcdiffDecoder> registry = DecoderRegistry.forVcdiffDecoders(Long.MAX_VALUE);
+        registry.get("a").setBase(base);
+        registry.get("b").setBase(base.clone());
+        Thread.sleep(20);
+        registry.get("b");
+
+        assertEquals(1, registry.compressIdleBases(10));
+        assertEquals(0, registry.compressIdleBases(10));
+        long coldBytes = registry.getColdBytes();
+        assertTrue(coldBytes > 0 && coldBytes < base.length / 4);
+        assertEquals(base.length, registry.getHotBytes());
+        assertEquals(base.length + coldBytes, registry.getRetainedBytes());
+
+        assertArrayEquals(target, registry.get("a").applyDelta(NativeVcdiffEngineTest.encode(base, target)).asByteArray());
+        assertEquals(0, registry.getColdBytes());
+        assertEquals(target.length + base.length, registry.getHotBytes());
+    }
+
+    @Test
+    public void compressedBasesAreEvictedFirst() throws IOException {
+        Random random = new Random(22);
+        byte[] base = NativeVcdiffEngineTest.randomText(random, 4096);
+        DecoderRegistry<VcdiffDecoder> registry = DecoderRegistry.forVcdiffDecoders(2 * base.length);
+        registry.get("a").setBase(base);
+        assertEquals(1, registry.compressIdleBases(0));
+        registry.get("b").setBase(base.clone());
+        registry.get("c").setBase(base.clone());
+        assertEquals(1, registry.getEvictionCount());
+        assertEquals(0, registry.getRetainedBytes("a"));
+        assertEquals(0, registry.getColdBytes());
+        assertEquals(2 * base.length, registry.getHotBytes());
+    }
+
+    @Test
+    public void incompressibleBasesAreLeftAsTheyAre() throws IOException {
+        byte[] base = new byte[4096];
+        new Random(23).nextBytes(base);
+        DecoderRegistry<VcdiffDecoder> registry = DecoderRegistry.forVcdiffDecoders(Long.MAX_VALUE);
+        registry.get("a").setBase(base);
+        registry.get("b");
+        assertEquals(0, registry.compressIdleBases(0));
+        assertEquals(base.length, registry.getHotBytes());
+        assertEquals(0, registry.getColdBytes());
+    }
+
+    @Test
+    public void compressedBasesKeepTheirBaseIdAndStorage() throws IOException, SequenceContinuityException {
+        Random random = new Random(24);
+        byte[] base = NativeVcdiffEngineTest.randomText(random, 8192);
+        byte[] target = NativeVcdiffEngineTest.mutate(random, base);
+        DirectBaseStorage storage = new DirectBaseStorage();
+        DecoderRegistry<CheckedVcdiffDecoder> registry = DecoderRegistry.forCheckedVcdiffDecoders(Long.MAX_VALUE);
+        CheckedVcdiffDecoder decoder = registry.get("a");
+        decoder.setBaseStorage(storage);
+        decoder.setBase(base, "1");
+        assertEquals(1, registry.compressIdleBases(0));
+        assertEquals(0, storage.getUsedBytes());
+
+        assertArrayEquals(target, decoder.applyDelta(NativeVcdiffEngineTest.encode(base, target), "2", "1").asByteArray());
+        assertTrue(storage.getUsedBytes() > 0);
+        assertEquals(0, registry.getColdBytes());
+    }
+
+    @Test
+    public void compressIdleBasesThrowsIllegalArgumentExceptionWhenIdleTimeIsNegative() {
+        thrown.expect(IllegalArgumentException.class);
+        DecoderRegistry.forVcdiffDecoders(1024).compressIdleBases(-1);
+    }
+
+    @Test
+    public void getThrowsIllegalArgumentExceptionWhenChannelIdIsNull() {
+        thrown.expect(IllegalArgumentException.class);
+        DecoderRegistry.forVcdiffDecoders(1024).get(null);
+    }
+
+    private static byte[] json(Random random, int records) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < records; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":").append(i)
+                    .append(",\"name\":\"item-").append(random.nextInt(1000))
+                    .append("\",\"price\":").append(random.nextInt(10000) / 100.0)
+                    .append(",\"available\":").append(random.nextBoolean()).append('}');
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
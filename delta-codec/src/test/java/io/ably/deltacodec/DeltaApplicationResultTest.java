@@ -0,0 +1,74 @@
+package io.ably.deltacodec;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DeltaApplicationResultTest {
+    @Test
+    public void asUtf8StringIsDecodedOnce() throws IOException {
+        VcdiffDecoder decoder = new VcdiffDecoder();
+        decoder.setBase(DeltaFixtures.BASE);
+        DeltaApplicationResult result = decoder.applyDelta(DeltaFixtures.DELTA);
+        String string = result.asUtf8String();
+        assertEquals(new String(DeltaFixtures.EXPECTED_RESULT, StandardCharsets.UTF_8), string);
+        assertSame(string, result.asUtf8String());
+        assertSame(string, result.asCharSequence());
+    }
+
+    @Test
+    public void asciiResultsAreViewedWithoutDecoding() {
+        String text = "{\"name\":\"Lorem ipsum dolor sit amet\"}";
+        DeltaApplicationResult result = new DeltaApplicationResult(text.getBytes(StandardCharsets.UTF_8));
+        assertTrue(result.isAscii());
+        CharSequence view = result.asCharSequence();
+        assertFalse(view instanceof String);
+        assertEquals(text, view.toString());
+        assertEquals("Lorem", view.subSequence(9, 14).toString());
+        assertEquals(text, result.asUtf8String());
+    }
+
+    @Test
+    public void nonAsciiResultsAreDecodedAsUtf8() {
+        for (int length = 0; length < 20; length++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < length; i++) {
+                text.append('a');
+            }
+            String ascii = text.toString();
+            assertTrue(new DeltaApplicationResult(ascii.getBytes(StandardCharsets.UTF_8)).isAscii());
+            // The non-ASCII character lands in every position of the 8 byte blocks
+            String nonAscii = text.append("\u00e9").toString();
+            DeltaApplicationResult result = new DeltaApplicationResult(nonAscii.getBytes(StandardCharsets.UTF_8));
+            assertFalse(result.isAscii());
+            assertEquals(nonAscii, result.asUtf8String());
+            assertEquals(nonAscii, result.asCharSequence().toString());
+        }
+    }
+
+    @Test
+    public void asReaderDecodesTheResult() throws IOException {
+        String text = "caf\u00e9 \u2013 \ud83d\ude00 " + DeltaFixtures.STRING_BASE;
+        DeltaApplicationResult result = new DeltaApplicationResult(text.getBytes(StandardCharsets.UTF_8));
+        assertEquals(text, read(result.asReader()));
+        result.asUtf8String();
+        assertEquals(text, read(result.asReader()));
+    }
+
+    private static String read(Reader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[7];
+        int read;
+        while ((read = reader.read(buffer)) >= 0) {
+            text.append(buffer, 0, read);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,130 @@
+package io.ably.deltacodec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DeltaComposerTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void composeMergesTheFixtureDeltas() throws IOException {
+        byte[] composed = new DeltaComposer().compose(Arrays.asList(DeltaFixtures.DELTA, DeltaFixtures.SECOND_DELTA));
+        assertArrayEquals(DeltaFixtures.SECOND_EXPECTED_RESULT, VcdiffEncoderTest.decode(DecodingEngine.NATIVE, DeltaFixtures.BASE, composed));
+        assertArrayEquals(DeltaFixtures.SECOND_EXPECTED_RESULT, VcdiffEncoderTest.decode(DecodingEngine.VCDIFF_JAVA, DeltaFixtures.BASE, composed));
+    }
+
+    @Test
+    public void composeMergesLongChainsOfEncodedDeltas() throws IOException {
+        Random random = new Random(5);
+        byte[] base = NativeVcdiffEngineTest.randomText(random, 8192);
+        DeltaComposer composer = new DeltaComposer();
+        VcdiffEncoder encoder = new VcdiffEncoder();
+        encoder.setBase(base);
+        List<byte[]> deltas = new ArrayList<>();
+        byte[] document = base;
+        for (int i = 0; i < 50; i++) {
+            document = NativeVcdiffEngineTest.mutate(random, document);
+            deltas.add(encoder.encodeNext(document));
+            byte[] composed = composer.compose(deltas);
+            assertArrayEquals(document, VcdiffEncoderTest.decode(DecodingEngine.NATIVE, base, composed));
+        }
+        assertArrayEquals(document, VcdiffEncoderTest.decode(DecodingEngine.VCDIFF_JAVA, base, composer.compose(deltas)));
+    }
+
+    @Test
+    public void composeResolvesOverlappingTargetCopiesAndRuns() throws IOException {
+        Random random = new Random(9);
+        byte[] base = NativeVcdiffEngineTest.randomText(random, 1024);
+        List<byte[]> deltas = new ArrayList<>();
+        byte[] document = base;
+        for (int i = 0; i < 10; i++) {
+            byte[] run = new byte[100 + random.nextInt(300)];
+            Arrays.fill(run, (byte)('a' + i));
+            byte[] repeated = NativeVcdiffEngineTest.randomText(random, 1 + random.nextInt(8));
+            byte[] next = NativeVcdiffEngineTest.concat(NativeVcdiffEngineTest.mutate(random, document), run,
+                    repeated, repeated, repeated, repeated, repeated, repeated, repeated, repeated);
+            // vcdiff-java emits RUN instructions and COPY instructions overlapping the bytes they produce
+            deltas.add(NativeVcdiffEngineTest.encode(document, next));
+            document = next;
+        }
+        byte[] composed = new DeltaComposer().compose(deltas);
+        assertArrayEquals(document, VcdiffEncoderTest.decode(DecodingEngine.NATIVE, base, composed));
+        assertArrayEquals(document, VcdiffEncoderTest.decode(DecodingEngine.VCDIFF_JAVA, base, composed));
+    }
+
+    @Test
+    public void composedDeltaDependsOnTheFinalTargetOnly() throws IOException {
+        Random random = new Random(13);
+        byte[] base = NativeVcdiffEngineTest.randomText(random, 4096);
+        VcdiffEncoder encoder = new VcdiffEncoder();
+        encoder.setBase(base);
+        List<byte[]> deltas = new ArrayList<>();
+        int totalLength = 0;
+        byte[] document = base;
+        for (int i = 0; i < 20; i++) {
+            // Rewrite the same region again and again, so the intermediate payloads are superseded
+            byte[] region = NativeVcdiffEngineTest.randomText(random, 256);
+            document = NativeVcdiffEngineTest.concat(Arrays.copyOf(base, 1024), region, Arrays.copyOfRange(base, 1280, 4096));
+            byte[] delta = encoder.encodeNext(document);
+            deltas.add(delta);
+            totalLength += delta.length;
+        }
+        byte[] composed = new DeltaComposer().compose(deltas);
+        assertTrue(composed.length < 2 * deltas.get(deltas.size() - 1).length);
+        assertTrue(composed.length < totalLength / 10);
+        assertArrayEquals(document, VcdiffEncoderTest.decode(DecodingEngine.NATIVE, base, composed));
+    }
+
+    @Test
+    public void composeReturnsASingleDeltaAsItIs() throws IOException {
+        assertSame(DeltaFixtures.DELTA, new DeltaComposer().compose(Collections.singletonList(DeltaFixtures.DELTA)));
+    }
+
+    @Test
+    public void applyDeltasAppliesTheChain() throws IOException {
+        VcdiffDecoder decoder = new VcdiffDecoder();
+        decoder.setBase(DeltaFixtures.BASE);
+        assertArrayEquals(DeltaFixtures.SECOND_EXPECTED_RESULT,
+                decoder.applyDeltas(Arrays.asList(DeltaFixtures.DELTA, DeltaFixtures.SECOND_DELTA)).asByteArray());
+    }
+
+    @Test
+    public void applyDeltasThrowsIllegalStateExceptionWhenBaseIsNotSet() throws IOException {
+        thrown.expect(IllegalStateException.class);
+        new VcdiffDecoder().applyDeltas(Arrays.asList(DeltaFixtures.DELTA, DeltaFixtures.SECOND_DELTA));
+    }
+
+    @Test
+    public void composeThrowsIllegalArgumentExceptionWhenDeltasAreEmpty() throws IOException {
+        thrown.expect(IllegalArgumentException.class);
+        new DeltaComposer().compose(Collections.<byte[]>emptyList());
+    }
+
+    @Test
+    public void composeThrowsIllegalArgumentExceptionWhenADeltaIsNotAVcdiff() throws IOException {
+        thrown.expect(IllegalArgumentException.class);
+        new DeltaComposer().compose(Arrays.asList(DeltaFixtures.DELTA, DeltaFixtures.BASE));
+    }
+
+    @Test
+    public void composeThrowsIOExceptionWhenADeltaDoesNotApplyToThePreviousTarget() throws IOException {
+        Random random = new Random(17);
+        byte[] base = NativeVcdiffEngineTest.randomText(random, 4096);
+        byte[] delta = NativeVcdiffEngineTest.encode(base, NativeVcdiffEngineTest.mutate(random, base));
+        thrown.expect(IOException.class);
+        new DeltaComposer().compose(Arrays.asList(DeltaFixtures.DELTA, delta));
+    }
+}
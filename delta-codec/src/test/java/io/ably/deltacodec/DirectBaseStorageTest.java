@@ -0,0 +1,99 @@
+package io.ably.deltacodec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DirectBaseStorageTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void allocateCutsSlabsIntoSizeClassesAndReusesChunks() {
+        DirectBaseStorage storage = new DirectBaseStorage(1024);
+        ByteBuffer buffer = storage.allocate(100);
+        assertTrue(buffer.isDirect());
+        assertEquals(0, buffer.position());
+        assertEquals(100, buffer.limit());
+        assertEquals(128, buffer.capacity());
+        assertEquals(1024, storage.getAllocatedBytes());
+        assertEquals(128, storage.getUsedBytes());
+
+        storage.release(buffer);
+        assertEquals(0, storage.getUsedBytes());
+        assertSame(buffer, storage.allocate(65));
+        assertEquals(1024, storage.getAllocatedBytes());
+    }
+
+    @Test
+    public void basesLongerThanASlabGetABufferOfTheirOwn() {
+        DirectBaseStorage storage = new DirectBaseStorage(1024);
+        ByteBuffer buffer = storage.allocate(3000);
+        assertEquals(3000, buffer.capacity());
+        assertEquals(3000, storage.getAllocatedBytes());
+        storage.release(buffer);
+        assertEquals(0, storage.getAllocatedBytes());
+        assertEquals(0, storage.getUsedBytes());
+    }
+
+    @Test
+    public void decoderKeepsItsBaseInTheStorage() throws IOException {
+        DirectBaseStorage storage = new DirectBaseStorage(1024);
+        VcdiffDecoder decoder = new VcdiffDecoder();
+        decoder.setBaseStorage(storage);
+        decoder.setBase(DeltaFixtures.BASE);
+        assertEquals(64, storage.getUsedBytes());
+        assertEquals(64, decoder.getRetainedBytes());
+
+        assertArrayEquals(DeltaFixtures.EXPECTED_RESULT, decoder.applyDelta(DeltaFixtures.DELTA).asByteArray());
+        assertArrayEquals(DeltaFixtures.SECOND_EXPECTED_RESULT, decoder.applyDelta(DeltaFixtures.SECOND_DELTA).asByteArray());
+        assertEquals(decoder.getRetainedBytes(), storage.getUsedBytes());
+
+        decoder.clearBase();
+        assertEquals(0, storage.getUsedBytes());
+    }
+
+    @Test
+    public void setBaseStorageMovesTheCurrentBase() throws IOException {
+        DirectBaseStorage storage = new DirectBaseStorage(1024);
+        VcdiffDecoder decoder = new VcdiffDecoder();
+        decoder.setBase(DeltaFixtures.BASE);
+        decoder.setBaseStorage(storage);
+        assertEquals(64, storage.getUsedBytes());
+        assertArrayEquals(DeltaFixtures.EXPECTED_RESULT, decoder.applyDelta(DeltaFixtures.DELTA).asByteArray());
+
+        decoder.setBaseStorage(null);
+        assertEquals(0, storage.getUsedBytes());
+        assertArrayEquals(DeltaFixtures.SECOND_EXPECTED_RESULT, decoder.applyDelta(DeltaFixtures.SECOND_DELTA).asByteArray());
+    }
+
+    @Test
+    public void bothEnginesCopyFromStoredBases() throws IOException {
+        Random random = new Random(3);
+        byte[] base = NativeVcdiffEngineTest.randomText(random, 8192);
+        VcdiffEncoder encoder = new VcdiffEncoder();
+        encoder.setBase(base);
+        for (DecodingEngine engine : DecodingEngine.values()) {
+            VcdiffDecoder decoder = new VcdiffDecoder(engine);
+            decoder.setBaseStorage(new DirectBaseStorage(4096));
+            decoder.setBase(base);
+            byte[] target = NativeVcdiffEngineTest.mutate(random, base);
+            assertArrayEquals(target, decoder.applyDelta(encoder.encode(target)).asByteArray());
+        }
+    }
+
+    @Test
+    public void constructorThrowsIllegalArgumentExceptionWhenSlabSizeIsNotPositive() {
+        thrown.expect(IllegalArgumentException.class);
+        new DirectBaseStorage(0);
+    }
+}
@@ -0,0 +1,11 @@
+package io.ably.deltacodec;
+
+public class DirectBaseStorageVcdiffDecoderTest extends VcdiffDecoderTest {
+    @Override
+    protected VcdiffDecoder createDecoder() {
+        VcdiffDecoder decoder = new VcdiffDecoder();
+        decoder.setBaseStorage(new DirectBaseStorage(256));
+        decoder.setBufferPool(new SharedBufferPool(1024));
+        return decoder;
+    }
+}
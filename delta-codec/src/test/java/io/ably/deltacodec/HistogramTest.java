@@ -0,0 +1,84 @@
+package io.ably.deltacodec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void smallValuesAreCountedExactly() {
+        Histogram histogram = new Histogram();
+        for (int value = 1; value <= 50; value++) {
+            histogram.record(value);
+        }
+        assertEquals(50, histogram.getCount());
+        assertEquals(50, histogram.getMax());
+        assertEquals(25.5, histogram.getMean(), 0);
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        assertEquals(25, histogram.getValueAtPercentile(50));
+        assertEquals(45, histogram.getValueAtPercentile(90));
+        assertEquals(50, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void percentilesAreWithinThreePercentOfTheValues() {
+        Random random = new Random(1);
+        long[] values = new long[10000];
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < values.length; i++) {
+            // Spread the values over many orders of magnitude
+            values[i] = (long)Math.pow(10, random.nextDouble() * 12);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double percentile : new double[] { 1, 10, 50, 90, 99, 99.9 }) {
+            long expected = values[(int)Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = histogram.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + actual + " " + expected, actual >= expected && actual <= expected + expected / 32);
+        }
+        assertEquals(values[values.length - 1], histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void bucketsCoverEveryLongValue() {
+        long[] values = new long[] { 0, 63, 64, 65, 127, 128, 1000, Integer.MAX_VALUE, Long.MAX_VALUE / 3, Long.MAX_VALUE };
+        int previousIndex = -1;
+        for (long value : values) {
+            int index = Histogram.bucketIndex(value);
+            assertTrue(index >= previousIndex);
+            assertTrue(Histogram.highestValueInBucket(index) >= value);
+            if (index > 0) {
+                assertTrue(Histogram.highestValueInBucket(index - 1) < value);
+            }
+            previousIndex = index;
+        }
+        Histogram histogram = new Histogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void resetDropsTheValues() {
+        Histogram histogram = new Histogram();
+        histogram.record(100);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void getValueAtPercentileThrowsIllegalArgumentExceptionWhenPercentileIsOutOfRange() {
+        thrown.expect(IllegalArgumentException.class);
+        new Histogram().getValueAtPercentile(101);
+    }
+}
@@ -0,0 +1,310 @@
+package io.ably.deltacodec;
+
+import com.davidehrmann.vcdiff.VCDiffEncoderBuilder;
+import com.davidehrmann.vcdiff.VCDiffStreamingEncoder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class NativeVcdiffEngineTest {
+    private static final byte[] header = new byte[] { (byte)0xd6, (byte)0xc3, (byte)0xc4, 0, 0 };
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void decodeMatchesVcdiffJavaEngineForGeneratedDeltas() throws IOException {
+        Random random = new Random(42);
+        NativeVcdiffEngine nativeEngine = new NativeVcdiffEngine();
+        VcdiffJavaEngine vcdiffJavaEngine = new VcdiffJavaEngine();
+        for (int i = 0; i < 200; i++) {
+            byte[] base = randomText(random, 1 + random.nextInt(4096));
+            byte[] target = mutate(random, base);
+            byte[] delta = encode(base, target);
+            assertArrayEquals(target, decode(nativeEngine, base, delta));
+            assertArrayEquals(decode(vcdiffJavaEngine, base, delta), decode(nativeEngine, base, delta));
+        }
+    }
+
+    @Test
+    public void decodeSupportsRunTargetSegmentsAndOverlappingCopies() throws IOException {
+        byte[] source = "abcdefgh".getBytes(StandardCharsets.UTF_8);
+        byte[] delta = concat(header,
+                // VCD_SOURCE window: COPY 8 from source, RUN 4 of 'x'
+                new byte[] { 0x01, 0x08, 0x00, 0x0a, 0x0c, 0x00, 0x01, 0x03, 0x01, 'x', 0x18, 0x00, 0x04, 0x00 },
+                // VCD_TARGET window over "ghxx": COPY 4 from the segment, COPY 6 straddling the segment end (HERE mode),
+                // COPY 5 overlapping the bytes being produced
+                new byte[] { 0x02, 0x04, 0x06, 0x0b, 0x0f, 0x00, 0x00, 0x03, 0x03, 0x14, 0x26, 0x15, 0x00, 0x06, 0x0c });
+        byte[] result = decode(new NativeVcdiffEngine(), source, delta);
+        assertArrayEquals("abcdefghxxxxghxxxxghxxxxxxx".getBytes(StandardCharsets.UTF_8), result);
+    }
+
+    @Test
+    public void decodeThrowsIOExceptionWhenDeltaIsTruncated() throws IOException {
+        byte[] base = "Lorem ipsum dolor sit amet".getBytes(StandardCharsets.UTF_8);
+        byte[] delta = encode(base, "Lorem ipsum dolor sit amet, consectetur adipiscing elit.".getBytes(StandardCharsets.UTF_8));
+        thrown.expect(IOException.class);
+        decode(new NativeVcdiffEngine(), base, Arrays.copyOf(delta, delta.length - 1));
+    }
+
+    @Test
+    public void decodeThrowsIOExceptionWhenCopyAddressIsOutOfBounds() throws IOException {
+        thrown.expect(IOException.class);
+        thrown.expectMessage("COPY address is out of bounds");
+        // COPY 4 from address 8 of a 4 byte source segment
+        decode(new NativeVcdiffEngine(), new byte[4], concat(header,
+                new byte[] { 0x01, 0x04, 0x00, 0x07, 0x04, 0x00, 0x00, 0x01, 0x01, 0x14, 0x08 }));
+    }
+
+    @Test
+    public void decodeThrowsIOExceptionWhenSecondaryCompressionIsUsed() throws IOException {
+        thrown.expect(IOException.class);
+        thrown.expectMessage("secondary compression is not supported");
+        decode(new NativeVcdiffEngine(), new byte[0], new byte[] { (byte)0xd6, (byte)0xc3, (byte)0xc4, 0, 0x01, 0x10 });
+    }
+
+    @Test
+    public void streamingDecodeMatchesArrayDecode() throws IOException {
+        Random random = new Random(7);
+        NativeVcdiffEngine nativeEngine = new NativeVcdiffEngine();
+        VcdiffJavaEngine vcdiffJavaEngine = new VcdiffJavaEngine();
+        for (int i = 0; i < 50; i++) {
+            byte[] base = randomText(random, 1 + random.nextInt(4096));
+            byte[] delta = encode(base, mutate(random, base));
+            byte[] expected = decode(nativeEngine, base, delta);
+            assertArrayEquals(expected, decodeStream(nativeEngine, base, delta));
+            assertArrayEquals(expected, decodeStream(vcdiffJavaEngine, base, delta));
+        }
+    }
+
+    @Test
+    public void streamingDecodeWritesEachWindowBeforeReadingTheNext() throws IOException {
+        byte[] source = "abcdefgh".getBytes(StandardCharsets.UTF_8);
+        byte[] firstWindow = new byte[] { 0x01, 0x08, 0x00, 0x0a, 0x0c, 0x00, 0x01, 0x03, 0x01, 'x', 0x18, 0x00, 0x04, 0x00 };
+        final byte[] delta = concat(header, firstWindow,
+                new byte[] { 0x02, 0x04, 0x06, 0x0b, 0x0f, 0x00, 0x00, 0x03, 0x03, 0x14, 0x26, 0x15, 0x00, 0x06, 0x0c });
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final int firstWindowEnd = header.length + firstWindow.length;
+        // Fails once the second window is read, one byte at a time
+        InputStream in = new FilterInputStream(new ByteArrayInputStream(delta, header.length, delta.length - header.length)) {
+            private int position = header.length;
+
+            @Override
+            public int read() throws IOException {
+                if (this.position++ > firstWindowEnd) {
+                    throw new IOException("connection lost");
+                }
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                int value = this.read();
+                if (value < 0) {
+                    return -1;
+                }
+                b[off] = (byte)value;
+                return 1;
+            }
+        };
+        try {
+            new NativeVcdiffEngine().decode(ByteBuffer.wrap(source), header, in, output, new TargetBuffer(null));
+        } catch (IOException e) {
+            assertEquals("connection lost", e.getMessage());
+            assertArrayEquals("abcdefghxxxx".getBytes(StandardCharsets.UTF_8), output.toByteArray());
+            return;
+        }
+        throw new AssertionError("IOException expected");
+    }
+
+    @Test
+    public void streamingDecodeThrowsIOExceptionWhenDeltaIsTruncated() throws IOException {
+        byte[] base = "Lorem ipsum dolor sit amet".getBytes(StandardCharsets.UTF_8);
+        byte[] delta = encode(base, "Lorem ipsum dolor sit amet, consectetur adipiscing elit.".getBytes(StandardCharsets.UTF_8));
+        thrown.expect(IOException.class);
+        decodeStream(new NativeVcdiffEngine(), base, Arrays.copyOf(delta, delta.length - 1));
+    }
+
+    @Test
+    public void parallelDecodeMatchesSequentialDecode() throws IOException {
+        Random random = new Random(23);
+        byte[] base = randomText(random, 2 * NativeVcdiffEngine.PARALLEL_THRESHOLD);
+        byte[] target = mutate(random, base);
+        // Every chunk is encoded as a window of its own
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VCDiffStreamingEncoder<java.io.OutputStream> encoder = VCDiffEncoderBuilder.builder()
+                .withDictionary(base)
+                .withTargetMatches(true)
+                .buildStreaming();
+        encoder.startEncoding(out);
+        for (int position = 0; position < target.length; position += 128 * 1024) {
+            encoder.encodeChunk(target, position, Math.min(128 * 1024, target.length - position), out);
+        }
+        encoder.finishEncoding(out);
+        byte[] delta = out.toByteArray();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            NativeVcdiffEngine engine = new NativeVcdiffEngine();
+            engine.setForkJoinPool(pool);
+            assertArrayEquals(target, decode(engine, base, delta));
+            assertArrayEquals(target, decode(engine, base, delta));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelDecodeWaitsForTheTargetCopiedByALaterWindow() throws IOException {
+        Random random = new Random(29);
+        byte[] base = randomText(random, NativeVcdiffEngine.PARALLEL_THRESHOLD / 2);
+        TargetBuffer delta = new TargetBuffer(null);
+        VcdiffWindowWriter.writeHeader(delta);
+        VcdiffWindowWriter writer = new VcdiffWindowWriter();
+        writeSourceWindow(writer, delta, base, 0);
+        writeSourceWindow(writer, delta, base, 1000);
+        byte[] first = concat(base, "0".getBytes(StandardCharsets.UTF_8));
+        byte[] second = concat(Arrays.copyOfRange(base, 1000, base.length), "1000".getBytes(StandardCharsets.UTF_8));
+        // The third window repeats the first two, copying them from the target
+        int repeated = first.length + second.length;
+        writer.start(repeated);
+        writer.copy(0, repeated);
+        int indicator = delta.length();
+        writer.finish(delta);
+        delta.array()[indicator] = VcdiffFormat.VCD_TARGET;
+        writeSourceWindow(writer, delta, base, 2000);
+        writeSourceWindow(writer, delta, base, 3000);
+
+        byte[] expected = concat(first, second, first, second,
+                concat(Arrays.copyOfRange(base, 2000, base.length), "2000".getBytes(StandardCharsets.UTF_8)),
+                concat(Arrays.copyOfRange(base, 3000, base.length), "3000".getBytes(StandardCharsets.UTF_8)));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            NativeVcdiffEngine engine = new NativeVcdiffEngine();
+            engine.setForkJoinPool(pool);
+            assertArrayEquals(expected, decode(engine, base, Arrays.copyOf(delta.array(), delta.length())));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelDecodeThrowsIOExceptionWhenAWindowIsInvalid() throws IOException {
+        byte[] base = randomText(new Random(31), NativeVcdiffEngine.PARALLEL_THRESHOLD);
+        TargetBuffer delta = new TargetBuffer(null);
+        VcdiffWindowWriter.writeHeader(delta);
+        VcdiffWindowWriter writer = new VcdiffWindowWriter();
+        writeSourceWindow(writer, delta, base, 0);
+        // The source segment of the second window exceeds the base
+        writer.start(base.length + 1);
+        writer.copy(1, base.length);
+        writer.finish(delta);
+        byte[] bytes = Arrays.copyOf(delta.array(), delta.length());
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            NativeVcdiffEngine engine = new NativeVcdiffEngine();
+            engine.setForkJoinPool(pool);
+            byte[] target = new byte[VcdiffFormat.targetLength(bytes, 0, bytes.length)];
+            thrown.expect(IOException.class);
+            engine.decode(ByteBuffer.wrap(base), bytes, 0, bytes.length, target, target.length);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void writeSourceWindow(VcdiffWindowWriter writer, TargetBuffer delta, byte[] base, int from) {
+        writer.start(base.length);
+        writer.copy(from, base.length - from);
+        byte[] suffix = String.valueOf(from).getBytes(StandardCharsets.UTF_8);
+        writer.add(suffix, 0, suffix.length);
+        writer.finish(delta);
+    }
+
+    static byte[] decodeStream(VcdiffEngine engine, byte[] source, byte[] delta) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        TargetBuffer target = new TargetBuffer(null);
+        engine.decode(ByteBuffer.wrap(source), Arrays.copyOf(delta, header.length),
+                new ByteArrayInputStream(delta, header.length, delta.length - header.length), output, target);
+        assertArrayEquals(output.toByteArray(), Arrays.copyOf(target.array(), target.length()));
+        return output.toByteArray();
+    }
+
+    static byte[] decode(VcdiffEngine engine, byte[] source, byte[] delta) throws IOException {
+        byte[] target = new byte[VcdiffFormat.targetLength(delta, 0, delta.length)];
+        engine.decode(ByteBuffer.wrap(source), delta, 0, delta.length, target, target.length);
+        return target;
+    }
+
+    static byte[] encode(byte[] base, byte[] target) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VCDiffEncoderBuilder.builder()
+                .withDictionary(base)
+                .withTargetMatches(true)
+                .buildSimple()
+                .encode(target, out);
+        return out.toByteArray();
+    }
+
+    static byte[] randomText(Random random, int length) {
+        byte[] text = new byte[length];
+        for (int i = 0; i < length; i++) {
+            text[i] = (byte)('a' + random.nextInt(random.nextBoolean() ? 4 : 26));
+        }
+        return text;
+    }
+
+    static byte[] mutate(Random random, byte[] base) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int position = 0;
+        while (position < base.length) {
+            int length = Math.min(base.length - position, 1 + random.nextInt(64));
+            switch (random.nextInt(4)) {
+                case 0:
+                    // keep
+                    out.write(base, position, length);
+                    break;
+                case 1:
+                    // replace
+                    byte[] text = randomText(random, 1 + random.nextInt(32));
+                    out.write(text, 0, text.length);
+                    break;
+                case 2:
+                    // repeat
+                    for (int i = 0; i < 1 + random.nextInt(3); i++) {
+                        out.write(base, position, length);
+                    }
+                    break;
+                default:
+                    // delete
+                    break;
+            }
+            position += length;
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,10 @@
+package io.ably.deltacodec;
+
+public class PooledVcdiffDecoderTest extends VcdiffDecoderTest {
+    @Override
+    protected VcdiffDecoder createDecoder() {
+        VcdiffDecoder decoder = new VcdiffDecoder();
+        decoder.setBufferPool(new SharedBufferPool(1024));
+        return decoder;
+    }
+}
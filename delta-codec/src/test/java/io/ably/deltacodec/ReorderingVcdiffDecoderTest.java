@@ -0,0 +1,145 @@
+package io.ably.deltacodec;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ReorderingVcdiffDecoderTest {
+    private byte[] base;
+    private final List<byte[]> documents = new ArrayList<>();
+    private final List<byte[]> deltas = new ArrayList<>();
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Before
+    public void setUp() {
+        Random random = new Random(19);
+        this.base = NativeVcdiffEngineTest.randomText(random, 1024);
+        VcdiffEncoder encoder = new VcdiffEncoder();
+        encoder.setBase(this.base);
+        byte[] document = this.base;
+        for (int i = 0; i < 8; i++) {
+            document = NativeVcdiffEngineTest.mutate(random, document);
+            this.documents.add(document);
+            // Delta i turns document "i" into document "i + 1"
+            this.deltas.add(encoder.encodeNext(document));
+        }
+    }
+
+    @Test
+    public void deltasInOrderAreAppliedImmediately() throws IOException, SequenceContinuityException {
+        ReorderingVcdiffDecoder decoder = new ReorderingVcdiffDecoder(4, 1000);
+        decoder.setBase(this.base, "0");
+        for (int i = 0; i < this.deltas.size(); i++) {
+            this.assertApplied(decoder.applyDelta(this.deltas.get(i), id(i + 1), id(i)), i + 1);
+        }
+    }
+
+    @Test
+    public void earlyDeltasAreAppliedOnceTheirBaseArrives() throws IOException, SequenceContinuityException {
+        ReorderingVcdiffDecoder decoder = new ReorderingVcdiffDecoder(4, 1000);
+        decoder.setBase(this.base, "0");
+        assertEquals(0, decoder.applyDelta(this.deltas.get(2), "3", "2").size());
+        assertEquals(0, decoder.applyDelta(this.deltas.get(1), "2", "1").size());
+        assertEquals(2, decoder.getPendingDeltaCount());
+        this.assertApplied(decoder.applyDelta(this.deltas.get(0), "1", "0"), 1, 2, 3);
+        assertEquals(0, decoder.getPendingDeltaCount());
+        this.assertApplied(decoder.applyBase64Delta(Base64Coder.encodeToString(this.deltas.get(3)), "4", "3"), 4);
+    }
+
+    @Test
+    public void base64DeltasCanBeHeldBack() throws IOException, SequenceContinuityException {
+        ReorderingVcdiffDecoder decoder = new ReorderingVcdiffDecoder(4, 1000);
+        decoder.setBase64Base(Base64Coder.encodeToString(this.base), "0");
+        assertEquals(0, decoder.applyBase64Delta(Base64Coder.encodeToString(this.deltas.get(1)), "2", "1").size());
+        this.assertApplied(decoder.applyDelta(this.deltas.get(0), "1", "0"), 1, 2);
+    }
+
+    @Test
+    public void setBaseAppliesTheHeldDeltasFollowingIt() throws IOException, SequenceContinuityException {
+        ReorderingVcdiffDecoder decoder = new ReorderingVcdiffDecoder(4, 1000);
+        decoder.setBase(this.base, "0");
+        decoder.applyDelta(this.deltas.get(3), "4", "3");
+        decoder.applyDelta(this.deltas.get(6), "7", "6");
+        this.assertApplied(decoder.setBase(this.documents.get(2), "3"), 4);
+        assertEquals(0, decoder.getPendingDeltaCount());
+    }
+
+    @Test
+    public void fullWindowThrowsSequenceContinuityException() throws IOException, SequenceContinuityException {
+        ReorderingVcdiffDecoder decoder = new ReorderingVcdiffDecoder(2, 1000);
+        decoder.setBase(this.base, "0");
+        decoder.applyDelta(this.deltas.get(1), "2", "1");
+        decoder.applyDelta(this.deltas.get(2), "3", "2");
+        try {
+            decoder.applyDelta(this.deltas.get(3), "4", "3");
+            throw new AssertionError("The window should be full");
+        } catch (SequenceContinuityException e) {
+            assertEquals(0, decoder.getPendingDeltaCount());
+        }
+        this.assertApplied(decoder.setBase(this.documents.get(2), "3"));
+        this.assertApplied(decoder.applyDelta(this.deltas.get(3), "4", "3"), 4);
+    }
+
+    @Test
+    public void emptyWindowFailsLikeCheckedVcdiffDecoder() throws IOException, SequenceContinuityException {
+        ReorderingVcdiffDecoder decoder = new ReorderingVcdiffDecoder(0, 1000);
+        decoder.setBase(this.base, "0");
+        thrown.expect(SequenceContinuityException.class);
+        decoder.applyDelta(this.deltas.get(1), "2", "1");
+    }
+
+    @Test
+    public void expiredDeltasThrowSequenceContinuityException() throws Exception {
+        HistogramDecoderMetrics metrics = new HistogramDecoderMetrics();
+        ReorderingVcdiffDecoder decoder = new ReorderingVcdiffDecoder(4, 1);
+        decoder.setMetrics(metrics);
+        decoder.setBase(this.base, "0");
+        decoder.applyDelta(this.deltas.get(1), "2", "1");
+        decoder.checkPendingDeltas();
+        Thread.sleep(20);
+        try {
+            decoder.checkPendingDeltas();
+            throw new AssertionError("The held delta should have expired");
+        } catch (SequenceContinuityException e) {
+            assertEquals(0, decoder.getPendingDeltaCount());
+            assertEquals(1, metrics.getFailureCount(DecoderMetrics.Failure.SEQUENCE_DISCONTINUITY));
+        }
+    }
+
+    @Test
+    public void invalidDeltasAreNotHeldBack() throws IOException, SequenceContinuityException {
+        ReorderingVcdiffDecoder decoder = new ReorderingVcdiffDecoder(4, 1000);
+        decoder.setBase(this.base, "0");
+        thrown.expect(IllegalArgumentException.class);
+        decoder.applyDelta(this.base, "2", "1");
+    }
+
+    @Test
+    public void constructorThrowsIllegalArgumentExceptionWhenMaxPendingDeltasIsNegative() {
+        thrown.expect(IllegalArgumentException.class);
+        new ReorderingVcdiffDecoder(-1, 1000);
+    }
+
+    private void assertApplied(List<ReorderingVcdiffDecoder.AppliedDelta> applied, int... documents) {
+        assertEquals(documents.length, applied.size());
+        for (int i = 0; i < documents.length; i++) {
+            assertEquals(id(documents[i]), applied.get(i).getDeltaId());
+            assertArrayEquals(this.documents.get(documents[i] - 1), applied.get(i).getResult().asByteArray());
+        }
+    }
+
+    private static String id(int index) {
+        return String.valueOf(index);
+    }
+}
@@ -0,0 +1,154 @@
+package io.ably.deltacodec;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class SharedBasePoolTest {
+    @Test
+    public void identicalBasesAreSharedByDecoders() {
+        SharedBasePool pool = new SharedBasePool();
+        VcdiffDecoder[] decoders = decoders(pool, 5);
+        for (VcdiffDecoder decoder : decoders) {
+            decoder.setBase(DeltaFixtures.BASE.clone());
+        }
+        assertEquals(1, pool.getBaseCount());
+        assertEquals(DeltaFixtures.BASE.length, pool.getRetainedBytes());
+
+        decoders[0].setBase(DeltaFixtures.EXPECTED_RESULT);
+        assertEquals(2, pool.getBaseCount());
+    }
+
+    @Test
+    public void sameDeltaAppliedToSameBaseIsDecodedOnce() throws IOException {
+        Random random = new Random(31);
+        byte[] base = NativeVcdiffEngineTest.randomText(random, 8192);
+        byte[] target = NativeVcdiffEngineTest.mutate(random, base);
+        byte[] delta = NativeVcdiffEngineTest.encode(base, target);
+        SharedBasePool pool = new SharedBasePool();
+        VcdiffDecoder[] decoders = decoders(pool, 4);
+        for (VcdiffDecoder decoder : decoders) {
+            decoder.setBase(base);
+        }
+        for (VcdiffDecoder decoder : decoders) {
+            assertArrayEquals(target, decoder.applyDelta(delta.clone()).asByteArray());
+        }
+        assertEquals(3, pool.getTargetCacheHitCount());
+        assertEquals(1, pool.getBaseCount());
+        assertEquals(target.length, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void base64DeltasAreDecodedOnce() throws IOException {
+        SharedBasePool pool = new SharedBasePool();
+        VcdiffDecoder[] decoders = decoders(pool, 3);
+        for (VcdiffDecoder decoder : decoders) {
+            decoder.setBase64Base(DeltaFixtures.BASE64_BASE);
+        }
+        for (VcdiffDecoder decoder : decoders) {
+            assertArrayEquals(DeltaFixtures.EXPECTED_RESULT, decoder.applyBase64Delta(DeltaFixtures.BASE64_DELTA).asByteArray());
+        }
+        for (VcdiffDecoder decoder : decoders) {
+            assertArrayEquals(DeltaFixtures.SECOND_EXPECTED_RESULT, decoder.applyBase64Delta(DeltaFixtures.BASE64_SECOND_DELTA).asByteArray());
+        }
+        assertEquals(4, pool.getTargetCacheHitCount());
+        assertEquals(1, pool.getBaseCount());
+    }
+
+    @Test
+    public void differentDeltasAreDecodedSeparately() throws IOException {
+        Random random = new Random(32);
+        byte[] base = NativeVcdiffEngineTest.randomText(random, 4096);
+        byte[] first = NativeVcdiffEngineTest.mutate(random, base);
+        byte[] second = NativeVcdiffEngineTest.mutate(random, base);
+        SharedBasePool pool = new SharedBasePool();
+        VcdiffDecoder[] decoders = decoders(pool, 2);
+        decoders[0].setBase(base);
+        decoders[1].setBase(base);
+        assertArrayEquals(first, decoders[0].applyDelta(NativeVcdiffEngineTest.encode(base, first)).asByteArray());
+        assertArrayEquals(second, decoders[1].applyDelta(NativeVcdiffEngineTest.encode(base, second)).asByteArray());
+        assertEquals(0, pool.getTargetCacheHitCount());
+        assertEquals(2, pool.getBaseCount());
+        assertEquals(first.length + second.length, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void basesAreDroppedOnceNoDecoderRetainsThem() {
+        SharedBasePool pool = new SharedBasePool();
+        VcdiffDecoder[] decoders = decoders(pool, 2);
+        decoders[0].setBase(DeltaFixtures.BASE);
+        decoders[1].setBase(DeltaFixtures.BASE);
+        decoders[0].setSharedBasePool(null);
+        assertEquals(1, pool.getBaseCount());
+        decoders[1].setBase(DeltaFixtures.EXPECTED_RESULT);
+        assertEquals(1, pool.getBaseCount());
+        assertEquals(DeltaFixtures.EXPECTED_RESULT.length, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void cachedTargetsAreDroppedOnceNoDecoderRetainsThem() throws IOException {
+        SharedBasePool pool = new SharedBasePool();
+        VcdiffDecoder[] decoders = decoders(pool, 2);
+        decoders[0].setBase(DeltaFixtures.BASE);
+        decoders[1].setBase(DeltaFixtures.BASE);
+        decoders[0].applyDelta(DeltaFixtures.DELTA);
+        // The delta is remembered with the base it was applied to
+        assertEquals(DeltaFixtures.BASE.length + DeltaFixtures.EXPECTED_RESULT.length + DeltaFixtures.DELTA.length, pool.getRetainedBytes());
+        decoders[0].setBase(DeltaFixtures.SECOND_EXPECTED_RESULT);
+        assertEquals(DeltaFixtures.BASE.length + DeltaFixtures.SECOND_EXPECTED_RESULT.length, pool.getRetainedBytes());
+        assertArrayEquals(DeltaFixtures.EXPECTED_RESULT, decoders[1].applyDelta(DeltaFixtures.DELTA).asByteArray());
+        assertEquals(0, pool.getTargetCacheHitCount());
+    }
+
+    @Test
+    public void sharedResultsStayValidWhenOtherDecodersMoveOn() throws IOException {
+        SharedBasePool pool = new SharedBasePool();
+        VcdiffDecoder[] decoders = decoders(pool, 2);
+        for (VcdiffDecoder decoder : decoders) {
+            decoder.setBufferOwnership(BufferOwnership.SHARE);
+            decoder.setBase(DeltaFixtures.BASE);
+        }
+        DeltaApplicationResult first = decoders[0].applyDelta(DeltaFixtures.DELTA);
+        DeltaApplicationResult second = decoders[1].applyDelta(DeltaFixtures.DELTA);
+        decoders[0].applyDelta(DeltaFixtures.SECOND_DELTA);
+        assertArrayEquals(DeltaFixtures.EXPECTED_RESULT, first.asByteArray());
+        assertArrayEquals(DeltaFixtures.EXPECTED_RESULT, second.asByteArray());
+    }
+
+    @Test
+    public void checkedDecodersRecoverFromSharedHistoricBases() throws IOException, SequenceContinuityException {
+        SharedBasePool pool = new SharedBasePool();
+        CheckedVcdiffDecoder decoder = new CheckedVcdiffDecoder();
+        decoder.setSharedBasePool(pool);
+        decoder.setBaseHistorySize(1);
+        decoder.setBase(DeltaFixtures.BASE, "1");
+        decoder.applyDelta(DeltaFixtures.DELTA, "2", "1");
+        assertArrayEquals(DeltaFixtures.EXPECTED_RESULT, decoder.applyDelta(DeltaFixtures.DELTA, "2", "1").asByteArray());
+        assertArrayEquals(DeltaFixtures.SECOND_EXPECTED_RESULT, decoder.applyDelta(DeltaFixtures.SECOND_DELTA, "3", "2").asByteArray());
+    }
+
+    @Test
+    public void hashDependsOnContentsAndLength() {
+        byte[] data = "0123456789abcdef".getBytes();
+        assertEquals(SharedBasePool.hash(data, 16), SharedBasePool.hash(data.clone(), 16));
+        assertNotEquals(SharedBasePool.hash(data, 16), SharedBasePool.hash(data, 15));
+        assertNotEquals(SharedBasePool.hash(new byte[8], 8), SharedBasePool.hash(new byte[9], 9));
+        byte[] changed = data.clone();
+        changed[3] ^= 1;
+        assertNotEquals(SharedBasePool.hash(data, 16), SharedBasePool.hash(changed, 16));
+    }
+
+    private static VcdiffDecoder[] decoders(SharedBasePool pool, int count) {
+        VcdiffDecoder[] decoders = new VcdiffDecoder[count];
+        for (int i = 0; i < count; i++) {
+            decoders[i] = new VcdiffDecoder();
+            decoders[i].setSharedBasePool(pool);
+        }
+        return decoders;
+    }
+}
@@ -0,0 +1,10 @@
+package io.ably.deltacodec;
+
+public class SharedOwnershipVcdiffDecoderTest extends VcdiffDecoderTest {
+    @Override
+    protected VcdiffDecoder createDecoder() {
+        VcdiffDecoder decoder = new VcdiffDecoder();
+        decoder.setBufferOwnership(BufferOwnership.SHARE);
+        return decoder;
+    }
+}
@@ -4,13 +4,20 @@ import org.junit.After;
 import org.junit.Before;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 public class VcdiffDecoderTest extends BaseVcdiffDecoderTests {
     private VcdiffDecoder decoder;
 
     @Before
     public void createVcdiffDecoderInstance() {
-        this.decoder = new VcdiffDecoder();
+        this.decoder = this.createDecoder();
+    }
+
+    protected VcdiffDecoder createDecoder() {
+        return new VcdiffDecoder();
     }
 
     @After
@@ -23,16 +30,56 @@ public class VcdiffDecoderTest extends BaseVcdiffDecoderTests {
         return this.decoder.applyDelta(delta);
     }
 
+    @Override
+    protected DeltaApplicationResult applyDelta(ByteBuffer delta) throws IOException {
+        return this.decoder.applyDelta(delta);
+    }
+
+    @Override
+    protected int applyDelta(ByteBuffer delta, ByteBuffer target) throws IOException {
+        return this.decoder.applyDelta(delta, target);
+    }
+
+    @Override
+    protected int applyDelta(InputStream delta, OutputStream target) throws IOException {
+        return this.decoder.applyDelta(delta, target);
+    }
+
     @Override
     protected DeltaApplicationResult applyBase64Delta(String delta) throws IOException {
         return this.decoder.applyBase64Delta(delta);
     }
 
+    @Override
+    protected DeltaApplicationResult applyBase64Delta(char[] delta, int offset, int length) throws IOException {
+        return this.decoder.applyBase64Delta(delta, offset, length);
+    }
+
+    @Override
+    protected DeltaApplicationResult applyBase64Delta(CharSequence delta, int offset, int length) throws IOException {
+        return this.decoder.applyBase64Delta(delta, offset, length);
+    }
+
+    @Override
+    protected DeltaApplicationResult applyBase64Delta(byte[] delta, int offset, int length) throws IOException {
+        return this.decoder.applyBase64Delta(delta, offset, length);
+    }
+
+    @Override
+    protected DeltaApplicationResult applyBase64Delta(ByteBuffer delta, int offset, int length) throws IOException {
+        return this.decoder.applyBase64Delta(delta, offset, length);
+    }
+
     @Override
     protected void setBase(byte[] newBase) {
         this.decoder.setBase(newBase);
     }
 
+    @Override
+    protected void setBase(ByteBuffer newBase) {
+        this.decoder.setBase(newBase);
+    }
+
     @Override
     protected void setBase(String newBase) {
         this.decoder.setBase(newBase);
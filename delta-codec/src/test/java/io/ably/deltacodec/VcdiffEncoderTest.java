@@ -0,0 +1,133 @@
+package io.ably.deltacodec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VcdiffEncoderTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void encodeProducesTheDeltasTheDecoderTestsExpect() {
+        VcdiffEncoder encoder = new VcdiffEncoder();
+        encoder.setBase(DeltaFixtures.BASE);
+        assertArrayEquals(DeltaFixtures.DELTA, encoder.encode(DeltaFixtures.EXPECTED_RESULT));
+        encoder.setBase(DeltaFixtures.EXPECTED_RESULT);
+        assertArrayEquals(DeltaFixtures.SECOND_DELTA, encoder.encode(DeltaFixtures.SECOND_EXPECTED_RESULT));
+    }
+
+    @Test
+    public void encodeReusesTheBaseIndexForManyTargets() throws IOException {
+        Random random = new Random(42);
+        byte[] base = NativeVcdiffEngineTest.randomText(random, 16384);
+        VcdiffEncoder encoder = new VcdiffEncoder();
+        encoder.setBase(base);
+        for (int i = 0; i < 100; i++) {
+            byte[] target = NativeVcdiffEngineTest.mutate(random, base);
+            byte[] delta = encoder.encode(target);
+            assertArrayEquals(target, decode(DecodingEngine.NATIVE, base, delta));
+            assertArrayEquals(target, decode(DecodingEngine.VCDIFF_JAVA, base, delta));
+        }
+    }
+
+    @Test
+    public void encodeMatchesRepeatedBlocksWithinTheTarget() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            builder.append("{\"name\":\"repeated\",\"value\":").append(i % 10).append("}");
+        }
+        byte[] target = builder.toString().getBytes(StandardCharsets.UTF_8);
+        VcdiffEncoder encoder = new VcdiffEncoder();
+        encoder.setBase(new byte[0]);
+        byte[] delta = encoder.encode(target);
+        assertTrue(delta.length < target.length / 10);
+        assertArrayEquals(target, decode(DecodingEngine.NATIVE, new byte[0], delta));
+        assertArrayEquals(target, decode(DecodingEngine.VCDIFF_JAVA, new byte[0], delta));
+    }
+
+    @Test
+    public void encodeHandlesEmptyAndShortTargets() throws IOException {
+        VcdiffEncoder encoder = new VcdiffEncoder();
+        encoder.setBase(DeltaFixtures.STRING_BASE);
+        for (String target : new String[] { "", "L", "Lorem ipsum" }) {
+            byte[] expected = target.getBytes(StandardCharsets.UTF_8);
+            assertArrayEquals(expected, decode(DecodingEngine.NATIVE, DeltaFixtures.BASE, encoder.encode(target)));
+        }
+    }
+
+    @Test
+    public void encodeNextAdvancesTheBaseLikeTheDecoder() throws IOException {
+        Random random = new Random(7);
+        byte[] document = NativeVcdiffEngineTest.randomText(random, 65536);
+        VcdiffEncoder encoder = new VcdiffEncoder();
+        encoder.setBase(document);
+        VcdiffDecoder decoder = new VcdiffDecoder();
+        decoder.setBase(document);
+        for (int i = 0; i < 200; i++) {
+            document = edit(random, document);
+            byte[] delta = encoder.encodeNext(document);
+            assertTrue(delta.length < 256);
+            assertArrayEquals(document, decoder.applyDelta(delta).asByteArray());
+        }
+    }
+
+    @Test
+    public void encodeNextKeepsIndexingMovedAndEditedBlocks() throws IOException {
+        Random random = new Random(11);
+        byte[] base = NativeVcdiffEngineTest.randomText(random, 4096);
+        VcdiffEncoder encoder = new VcdiffEncoder();
+        encoder.setBase(base);
+        // Insert in the middle, so the second half moves
+        byte[] inserted = NativeVcdiffEngineTest.randomText(random, 100);
+        byte[] next = NativeVcdiffEngineTest.concat(Arrays.copyOf(base, 2000), inserted, Arrays.copyOfRange(base, 2000, 4096));
+        encoder.encodeNext(next);
+        // Reorder the document so every part has to be found through the index
+        byte[] reordered = NativeVcdiffEngineTest.concat(Arrays.copyOfRange(next, 3000, 4196), inserted, Arrays.copyOf(next, 3000));
+        byte[] delta = encoder.encode(reordered);
+        assertTrue(delta.length < 64);
+        assertArrayEquals(reordered, decode(DecodingEngine.NATIVE, next, delta));
+    }
+
+    @Test
+    public void encodeThrowsIllegalStateExceptionWhenBaseIsNotSet() {
+        thrown.expect(IllegalStateException.class);
+        new VcdiffEncoder().encode(DeltaFixtures.EXPECTED_RESULT);
+    }
+
+    @Test
+    public void encodeThrowsIllegalArgumentExceptionWhenTargetIsNull() {
+        VcdiffEncoder encoder = new VcdiffEncoder();
+        encoder.setBase(DeltaFixtures.BASE);
+        thrown.expect(IllegalArgumentException.class);
+        encoder.encode((byte[])null);
+    }
+
+    @Test
+    public void setBaseThrowsIllegalArgumentExceptionWhenBaseIsNull() {
+        thrown.expect(IllegalArgumentException.class);
+        new VcdiffEncoder().setBase((byte[])null);
+    }
+
+    private static byte[] edit(Random random, byte[] document) {
+        int position = random.nextInt(document.length);
+        int removed = Math.min(document.length - position, random.nextInt(32));
+        byte[] inserted = NativeVcdiffEngineTest.randomText(random, random.nextInt(32));
+        return NativeVcdiffEngineTest.concat(Arrays.copyOf(document, position), inserted,
+                Arrays.copyOfRange(document, position + removed, document.length));
+    }
+
+    static byte[] decode(DecodingEngine engine, byte[] base, byte[] delta) throws IOException {
+        VcdiffDecoder decoder = new VcdiffDecoder(engine);
+        decoder.setBase(base);
+        return decoder.applyDelta(delta).asByteArray();
+    }
+}
@@ -0,0 +1,8 @@
+package io.ably.deltacodec;
+
+public class VcdiffJavaEngineVcdiffDecoderTest extends VcdiffDecoderTest {
+    @Override
+    protected VcdiffDecoder createDecoder() {
+        return new VcdiffDecoder(DecodingEngine.VCDIFF_JAVA);
+    }
+}
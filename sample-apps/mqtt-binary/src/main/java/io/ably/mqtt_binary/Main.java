@@ -4,7 +4,7 @@ import com.hivemq.client.mqtt.datatypes.MqttQos;
 import com.hivemq.client.mqtt.mqtt3.Mqtt3AsyncClient;
 import com.hivemq.client.mqtt.mqtt3.Mqtt3Client;
 import com.hivemq.client.mqtt.mqtt3.message.auth.Mqtt3SimpleAuth;
-import io.ably.deltacodec.VcdiffDecoder;
+import io.ably.deltacodec.async.AsyncVcdiffDecoder;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
@@ -14,26 +14,21 @@ public class Main {
     public static void main(String[] args) {
         final String channelName = "sample-app-mqtt";
         final Mqtt3AsyncClient client = createClient();
-        final VcdiffDecoder channelDecoder = new VcdiffDecoder();
+        /* Decodes off the MQTT callback thread, in the order the payloads are received */
+        final AsyncVcdiffDecoder channelDecoder = new AsyncVcdiffDecoder();
 
         connect(client, () -> {
             subscribe(client, "[?delta=vcdiff]" + channelName, (payload) -> {
-                byte[] data;
-                try {
-                    if (VcdiffDecoder.isDelta(payload)) {
-                        data = channelDecoder.applyDelta(payload).asByteArray();
-                    } else {
-                        data = payload;
-                        channelDecoder.setBase(data);
+                channelDecoder.decodeAsync(payload).whenComplete((result, error) -> {
+                    if (error != null) {
+                        /* Delta decoder error */
+                        System.out.println(error.getMessage());
+                        return;
                     }
-                } catch (Throwable error) {
-                    /* Delta decoder error */
-                    System.out.println(error.getMessage());
-                    return;
-                }
 
-                /* Process decoded data */
-                System.out.println(Arrays.toString(data));
+                    /* Process decoded data */
+                    System.out.println(Arrays.toString(result));
+                });
             });
         });
     }